@@ -0,0 +1,76 @@
+package com.mybot.eod_bot.bench;
+
+import com.mybot.eod_bot.model.Distributor;
+import com.mybot.eod_bot.repository.DistributorRepository;
+import com.mybot.eod_bot.repository.LapuSimRepository;
+import com.mybot.eod_bot.service.ClusterCoordinator;
+import com.mybot.eod_bot.service.PricingSnapshot;
+import com.mybot.eod_bot.service.SimRoutingIndex;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Distributors, SIM routing and pricing without a database: the repositories the services load
+ * from are stubbed once during setup, so nothing of it is on the measured path.
+ */
+final class BenchFixtures {
+
+    static final int DISTRIBUTORS = 8;
+    // Share of the generated SIMs that are assigned to a distributor; the rest show up as unassigned
+    static final double ROUTED_SHARE = 0.95;
+
+    private BenchFixtures() {}
+
+    static List<Distributor> distributors() {
+        List<Distributor> distributors = new ArrayList<>();
+        for (long id = 1; id <= DISTRIBUTORS; id++) {
+            Distributor dist = new Distributor();
+            dist.setId(id);
+            dist.setName("Distributor " + id);
+            dist.setBaseGet(515);
+            dist.setBasePay(500 + id);
+            distributors.add(dist);
+        }
+        return distributors;
+    }
+
+    /** Routes the first {@link #ROUTED_SHARE} of {@code sims} SIMs round-robin to the distributors. */
+    static SimRoutingIndex routing(int sims) {
+        DistributorRepository distributorRepository = Mockito.mock(DistributorRepository.class);
+        Mockito.when(distributorRepository.findAll()).thenReturn(distributors());
+
+        List<LapuSimRepository.SimAssignment> assignments = new ArrayList<>();
+        int routed = (int) (sims * ROUTED_SHARE);
+        for (int i = 0; i < routed; i++) {
+            String lapuNo = Long.toString(StatementGenerator.FIRST_SIM + i);
+            long distributorId = 1 + (i % DISTRIBUTORS);
+            assignments.add(new LapuSimRepository.SimAssignment() {
+                public String getLapuNo() { return lapuNo; }
+                public Long getDistributorId() { return distributorId; }
+            });
+        }
+        LapuSimRepository lapuSimRepository = Mockito.mock(LapuSimRepository.class);
+        Mockito.when(lapuSimRepository.findAllAssignments()).thenReturn(assignments);
+
+        SimRoutingIndex index = new SimRoutingIndex(lapuSimRepository, distributorRepository, Mockito.mock(ClusterCoordinator.class));
+        index.rebuild();
+        return index;
+    }
+
+    /** Pricing for the fixture distributors and for vendors 1..vendors at a 2.5% discount. */
+    static PricingSnapshot pricing(int vendors) {
+        Map<Long, PricingSnapshot.Rate> distributorRates = new HashMap<>();
+        for (Distributor dist : distributors()) {
+            distributorRates.put(dist.getId(), new PricingSnapshot.Rate(dist.getName(), dist.getBasePay() / dist.getBaseGet()));
+        }
+        Map<Long, PricingSnapshot.Rate> vendorRates = new HashMap<>();
+        for (long id = 1; id <= vendors; id++) {
+            vendorRates.put(id, new PricingSnapshot.Rate("Vendor " + id, 0.975));
+        }
+        return new PricingSnapshot(1, distributorRates, vendorRates);
+    }
+}
@@ -0,0 +1,138 @@
+package com.mybot.eod_bot.bench;
+
+import com.mybot.eod_bot.model.DailyReport;
+import com.mybot.eod_bot.model.MonthlyDistributorRollup;
+import com.mybot.eod_bot.model.MonthlyRollup;
+import com.mybot.eod_bot.model.MonthlyVendorRollup;
+import com.mybot.eod_bot.repository.DailyPurchaseReportRepository;
+import com.mybot.eod_bot.repository.DailyVendorReportRepository;
+import com.mybot.eod_bot.service.CsvReportService;
+import com.mybot.eod_bot.service.MonthlyRollupService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The monthly report's CPU work: what each day of a month contributes to the rollups (taken
+ * before and after every save), and rendering the month's CSV from the rollups.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MonthlyReportBenchmark {
+
+    private static final int DAYS = 30;
+
+    @Param({"50", "500"})
+    int vendors;
+
+    private final List<DailyReport> days = new ArrayList<>();
+    private final List<List<DailyVendorReportRepository.VendorLine>> vendorLines = new ArrayList<>();
+    private final List<List<DailyPurchaseReportRepository.PurchaseLine>> purchaseLines = new ArrayList<>();
+    private MonthlyRollupService.MonthlyView month;
+    private CsvReportService csvReportService;
+
+    private record VendorRow(String vendorName, double grossRevenue, double totalLoadSold, double cogs, double netProfit)
+            implements DailyVendorReportRepository.VendorLine {
+        public String getVendorName() { return vendorName; }
+        public double getGrossRevenue() { return grossRevenue; }
+        public double getTotalLoadSold() { return totalLoadSold; }
+        public double getCogs() { return cogs; }
+        public double getNetProfit() { return netProfit; }
+    }
+
+    private record PurchaseRow(String distributorName, double totalLoadReceived, double totalCostPayable)
+            implements DailyPurchaseReportRepository.PurchaseLine {
+        public String getDistributorName() { return distributorName; }
+        public double getTotalLoadReceived() { return totalLoadReceived; }
+        public double getTotalCostPayable() { return totalCostPayable; }
+    }
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        LocalDate first = LocalDate.of(2025, 10, 1);
+        for (int d = 0; d < DAYS; d++) {
+            DailyReport report = new DailyReport(first.plusDays(d));
+            report.setHasPurchaseData(true);
+            report.setHasSalesData(true);
+            days.add(report);
+
+            List<DailyVendorReportRepository.VendorLine> vl = new ArrayList<>();
+            for (int v = 1; v <= vendors; v++) {
+                double gross = random.nextInt(20_000);
+                double load = Math.round(gross / 0.975);
+                double cogs = Math.round(load * 0.98);
+                vl.add(new VendorRow("Vendor " + v, gross, load, cogs, gross - cogs));
+            }
+            vendorLines.add(vl);
+
+            List<DailyPurchaseReportRepository.PurchaseLine> pl = new ArrayList<>();
+            for (int p = 1; p <= BenchFixtures.DISTRIBUTORS; p++) {
+                double load = random.nextInt(2_000_000);
+                pl.add(new PurchaseRow("Distributor " + p, load, load * 0.98));
+            }
+            purchaseLines.add(pl);
+        }
+
+        String id = "2025-10";
+        MonthlyRollup totals = new MonthlyRollup(id);
+        List<MonthlyVendorRollup> vendorRollups = new ArrayList<>();
+        for (int v = 1; v <= vendors; v++) {
+            MonthlyVendorRollup rollup = new MonthlyVendorRollup(id, "Vendor " + v);
+            rollup.setNetProfit(random.nextInt(100_000));
+            vendorRollups.add(rollup);
+        }
+        List<MonthlyDistributorRollup> distributorRollups = new ArrayList<>();
+        for (int p = 1; p <= BenchFixtures.DISTRIBUTORS; p++) {
+            MonthlyDistributorRollup rollup = new MonthlyDistributorRollup(id, "Distributor " + p);
+            rollup.setTotalCostPayable(random.nextInt(50_000_000));
+            distributorRollups.add(rollup);
+        }
+        month = new MonthlyRollupService.MonthlyView(totals, vendorRollups, distributorRollups);
+        // Only the in-memory renderers are used, so no repositories or transactions
+        csvReportService = new CsvReportService(null, null, null, null, Duration.ofMinutes(10));
+    }
+
+    @TearDown
+    public void tearDown() {
+        csvReportService.shutdown();
+    }
+
+    @Benchmark
+    public List<MonthlyRollupService.DayContribution> dayContributions() {
+        List<MonthlyRollupService.DayContribution> contributions = new ArrayList<>(DAYS);
+        for (int d = 0; d < DAYS; d++) {
+            contributions.add(MonthlyRollupService.DayContribution.of(days.get(d), vendorLines.get(d), purchaseLines.get(d)));
+        }
+        return contributions;
+    }
+
+    @Benchmark
+    public byte[] monthlyCsv() throws IOException {
+        try (InputStream csv = csvReportService.monthlyReportCsv(month, "2025-10")) {
+            return csv.readAllBytes();
+        }
+    }
+}
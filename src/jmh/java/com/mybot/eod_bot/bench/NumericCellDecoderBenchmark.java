@@ -0,0 +1,71 @@
+package com.mybot.eod_bot.bench;
+
+import com.mybot.eod_bot.service.NumericCellDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of single statement cells, the innermost loop of every parse. Times are per cell.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NumericCellDecoderBenchmark {
+
+    private static final int CELLS = 1024;
+
+    private final String[] amounts = new String[CELLS];
+    private final String[] lapuNos = new String[CELLS];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < CELLS; i++) {
+            // Mostly grouped amounts, some small or blank, and the odd garbled cell
+            amounts[i] = switch (random.nextInt(20)) {
+                case 0 -> "";
+                case 1 -> "N/A";
+                case 2, 3 -> Integer.toString(random.nextInt(1000));
+                default -> StatementGenerator.amount(random.nextInt(10_000_000));
+            };
+            lapuNos[i] = " " + (StatementGenerator.FIRST_SIM + random.nextInt(100_000)) + ".0 ";
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CELLS)
+    public long decodeLong() {
+        NumericCellDecoder decoder = new NumericCellDecoder();
+        long sum = 0;
+        for (String amount : amounts) {
+            sum += decoder.decodeLong(amount);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CELLS)
+    public int decodeLapuNo() {
+        NumericCellDecoder decoder = new NumericCellDecoder();
+        int length = 0;
+        for (String lapuNo : lapuNos) {
+            length += decoder.decodeLapuNo(lapuNo).length();
+        }
+        return length;
+    }
+}
@@ -0,0 +1,66 @@
+package com.mybot.eod_bot.bench;
+
+import com.mybot.eod_bot.service.ExcelParserService;
+import com.mybot.eod_bot.service.PricingSnapshot;
+import com.mybot.eod_bot.service.SimRoutingIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A whole statement upload as far as the parser goes: reading the file, decoding every row,
+ * routing it to a distributor and costing the totals.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int rows;
+
+    @Param({"STREAM", "DOM"})
+    ExcelParserService.ParseMode mode;
+
+    private File statement;
+    private ExcelParserService parser;
+    private SimRoutingIndex routing;
+    private PricingSnapshot pricing;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // Roughly one SIM per ten rows, as in real statements
+        int sims = Math.max(100, rows / 10);
+        statement = new StatementGenerator(42, sims).write(rows);
+        routing = BenchFixtures.routing(sims);
+        pricing = BenchFixtures.pricing(0);
+        parser = new ExcelParserService();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        parser.shutdown();
+        statement.delete();
+    }
+
+    @Benchmark
+    public ExcelParserService.PurchaseParseResult parse() throws Exception {
+        return parser.parse(statement, routing, pricing, mode);
+    }
+}
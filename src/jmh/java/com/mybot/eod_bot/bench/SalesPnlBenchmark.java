@@ -0,0 +1,99 @@
+package com.mybot.eod_bot.bench;
+
+import com.mybot.eod_bot.model.DailyVendorReport;
+import com.mybot.eod_bot.model.Vendor;
+import com.mybot.eod_bot.service.PricingSnapshot;
+import com.mybot.eod_bot.service.ReportService;
+import com.mybot.eod_bot.service.SalesEntryService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The in-memory part of a day's P&amp;L: reading a /bulk_sales paste, computing every vendor's line
+ * and totals, and re-costing the lines when a later statement moves the cost factor.
+ * The services are built without repositories; none of these paths touch them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SalesPnlBenchmark {
+
+    @Param({"50", "500"})
+    int vendors;
+
+    private ReportService reportService;
+    private SalesEntryService salesEntryService;
+    private PricingSnapshot pricing;
+    private final List<Vendor> vendorList = new ArrayList<>();
+    private double[][] balances; // prev, topup, end per vendor
+    private List<DailyVendorReport> lines;
+    private String paste;
+
+    @Setup
+    public void setUp() {
+        reportService = new ReportService(null, null, null, null, null, null, null, null);
+        salesEntryService = new SalesEntryService(null, reportService, null, null);
+        pricing = BenchFixtures.pricing(vendors);
+
+        Random random = new Random(42);
+        balances = new double[vendors][];
+        StringBuilder sb = new StringBuilder("vendor, prev, topup, end\n");
+        for (int i = 0; i < vendors; i++) {
+            Vendor vendor = new Vendor();
+            vendor.setId((long) i + 1);
+            vendor.setName("Vendor " + (i + 1));
+            vendor.setDiscountPercent(2.5);
+            vendorList.add(vendor);
+
+            double prev = random.nextInt(50_000);
+            double topup = random.nextInt(20_000);
+            double end = random.nextInt((int) (prev + topup) + 1);
+            balances[i] = new double[] {prev, topup, end};
+            sb.append(vendor.getName()).append(", ").append(prev).append(", ").append(topup).append(", ").append(end).append('\n');
+        }
+        paste = sb.toString();
+        lines = enterDay();
+    }
+
+    @Benchmark
+    public List<DailyVendorReport> enterDay() {
+        List<DailyVendorReport> reports = new ArrayList<>(vendors);
+        for (int i = 0; i < vendors; i++) {
+            double[] b = balances[i];
+            reports.add(salesEntryService.computeSale(vendorList.get(i), pricing, b[0], b[1], b[2], 0.9806));
+        }
+        return reports;
+    }
+
+    @Benchmark
+    public double recostDay() {
+        double netProfit = 0;
+        for (DailyVendorReport vr : lines) {
+            reportService.applyCostFactor(vr, 0.9812);
+            netProfit += vr.getNetProfit();
+        }
+        return netProfit;
+    }
+
+    @Benchmark
+    public SalesEntryService.ParsedBatch parseBulkPaste() {
+        return salesEntryService.parseText(paste);
+    }
+}
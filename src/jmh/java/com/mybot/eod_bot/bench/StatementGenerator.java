@@ -0,0 +1,87 @@
+package com.mybot.eod_bot.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Writes synthetic LAPU statements in the format the operator portal exports: an HTML table saved
+ * as .xls, with LAPU NO, DESC, OPEN BAL, TOTAL AMOUNT and CLOSE BAL columns and Indian-grouped
+ * amounts. The same seed always gives the same file.
+ */
+public final class StatementGenerator {
+
+    /** SIM numbers are FIRST_SIM, FIRST_SIM + 1, ... */
+    public static final long FIRST_SIM = 9_000_000_000L;
+
+    private final Random random;
+    private final int sims;
+
+    /**
+     * @param sims how many distinct SIMs rows are drawn from; some fall outside the routed range
+     *             (see {@link BenchFixtures#ROUTED_SHARE}) and come out as unassigned
+     */
+    public StatementGenerator(long seed, int sims) {
+        this.random = new Random(seed);
+        this.sims = sims;
+    }
+
+    /** Writes a statement of {@code rows} data rows to a temp file; the caller deletes it. */
+    public File write(int rows) throws IOException {
+        File file = File.createTempFile("bench-statement-", ".xls");
+        try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            out.write("<html><head><meta charset=\"UTF-8\"></head><body>\n");
+            out.write("<table border=\"1\">\n");
+            out.write("<tr><th>LAPU NO</th><th>DESC</th><th>OPEN BAL</th><th>TOTAL AMOUNT</th><th>CLOSE BAL</th></tr>\n");
+            for (int i = 0; i < rows; i++) {
+                row(out, i);
+            }
+            out.write("</table>\n</body></html>\n");
+        }
+        return file;
+    }
+
+    private void row(BufferedWriter out, int i) throws IOException {
+        long sim = FIRST_SIM + random.nextInt(sims);
+        long open = random.nextInt(200_000);
+        long spent = random.nextInt(50_000);
+        long topup = (random.nextInt(4) == 0) ? 0 : random.nextInt(100_000); // Some SIMs load nothing that day
+        long close = open - spent + topup;
+
+        out.write("<tr><td>");
+        out.write(Long.toString(sim));
+        out.write(".0</td><td>RETAILER ");
+        out.write(Integer.toString(i % 997));
+        out.write("</td><td>");
+        out.write(amount(open));
+        out.write("</td><td>");
+        out.write(amount(spent));
+        out.write("</td><td>");
+        // About one row in a thousand has a cell the portal garbled
+        out.write((random.nextInt(1000) == 0) ? "N/A" : amount(close));
+        out.write("</td></tr>\n");
+    }
+
+    /** Formats rupees the way the portal does, e.g. 1,23,456.00 */
+    public static String amount(long rupees) {
+        String digits = Long.toString(Math.abs(rupees));
+        StringBuilder sb = new StringBuilder(digits.length() + 8);
+        if (rupees < 0) sb.append('-');
+        int head = digits.length() - 3;
+        if (head <= 0) {
+            sb.append(digits);
+        } else {
+            // Lakh grouping: the last three digits, then pairs
+            int first = (head % 2 == 0) ? 2 : 1;
+            sb.append(digits, 0, first);
+            for (int i = first; i < head; i += 2) {
+                sb.append(',').append(digits, i, i + 2);
+            }
+            sb.append(',').append(digits, head, digits.length());
+        }
+        return sb.append(".00").toString();
+    }
+}
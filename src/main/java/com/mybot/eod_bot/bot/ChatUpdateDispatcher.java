@@ -0,0 +1,95 @@
+package com.mybot.eod_bot.bot;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spreads incoming updates over a fixed number of ordered lanes, keyed by chat ID.
+ * Each lane has one thread, so a chat's AWAIT_* flow always sees its messages in order,
+ * while different chats are handled in parallel.
+ * When a lane's queue is full the caller (the polling thread) blocks until there is room.
+ */
+@Slf4j
+@Component
+public class ChatUpdateDispatcher {
+
+    private final Lane[] lanes;
+
+    public ChatUpdateDispatcher(@Value("${eodbot.dispatcher.lanes:4}") int laneCount,
+                                @Value("${eodbot.dispatcher.lane-capacity:100}") int laneCapacity) {
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane(i, laneCapacity);
+            lanes[i].start();
+        }
+        log.info("Update dispatcher started with {} lane(s), {} update(s) per lane", laneCount, laneCapacity);
+    }
+
+    /** Queues a task on the chat's lane, waiting for room if the lane is full. */
+    public void dispatch(long chatId, Runnable task) throws InterruptedException {
+        Lane lane = laneFor(chatId);
+        if (!lane.queue.offer(task)) {
+            log.warn("Lane {} is full ({} queued); waiting before accepting chat {}", lane.index, lane.queue.size(), chatId);
+            lane.queue.put(task);
+        }
+    }
+
+    /** Current queue length of each lane, in lane order. */
+    public int[] laneDepths() {
+        int[] depths = new int[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            depths[i] = lanes[i].queue.size();
+        }
+        return depths;
+    }
+
+    private Lane laneFor(long chatId) {
+        // Mix the bits so neighbouring chat IDs don't all land on the same lane
+        long mixed = chatId * 0x9E3779B97F4A7C15L;
+        return lanes[Math.floorMod((int) (mixed ^ (mixed >>> 32)), lanes.length)];
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        for (Lane lane : lanes) lane.interrupt();
+        for (Lane lane : lanes) lane.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    private static class Lane extends Thread {
+        private final int index;
+        private final BlockingQueue<Runnable> queue;
+
+        Lane(int index, int capacity) {
+            super("chat-lane-" + index);
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!isInterrupted()) {
+                Runnable task;
+                try {
+                    task = queue.take();
+                } catch (InterruptedException e) {
+                    break;
+                }
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.error("Unhandled error on lane {}: {}", index, e.getMessage(), e);
+                }
+            }
+            if (!queue.isEmpty()) {
+                log.warn("Lane {} stopped with {} update(s) still queued", index, queue.size());
+            }
+        }
+    }
+}
@@ -11,29 +11,38 @@ import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
 import org.telegram.telegrambots.meta.api.methods.GetFile;
-import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
-import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
 import org.telegram.telegrambots.meta.api.objects.Document;
-import org.telegram.telegrambots.meta.api.objects.InputFile;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
 import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.time.LocalDate;
 import java.time.YearMonth;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -49,10 +58,52 @@ public class MyEodBot extends TelegramLongPollingBot {
     private final ExcelParserService excelParserService;
     private final CsvReportService csvReportService;
     private final BotOperationsService botOperationsService; // <-- NEW SERVICE
+    private final SimRoutingIndex simRoutingIndex;
+    private final UploadJobQueue uploadJobQueue;
+    private final MonthlyRollupService monthlyRollupService;
+    private final ChatUpdateDispatcher updateDispatcher;
+    private final RangeReportService rangeReportService;
+    private final SalesEntryService salesEntryService;
+    private final UploadLedgerService uploadLedgerService;
+    private final RecentUpdateFilter recentUpdateFilter;
+    private final PurchaseBackfillService purchaseBackfillService;
+    private final PricingService pricingService;
+    private final BotMetrics botMetrics;
+    private final OutboundSender outboundSender;
+    private final TelegramFileDownloader fileDownloader;
+    private final ClusterCoordinator clusterCoordinator;
+    private final BusinessClock businessClock;
+
+    // Longest breakdown shown in chat; a year by day would not fit in one message
+    private static final int MAX_REPORT_LINES = 50;
+
+    // Commands tagged by name in the update metrics; anything else a user types counts as "other"
+    private static final Set<String> COMMANDS = Set.of("/start", "/cancel", "/done",
+            "/add_distributor", "/list_distributors", "/delete_distributor",
+            "/add_vendor", "/list_vendors", "/delete_vendor",
+            "/assign_sim", "/unassign_sim", "/list_sims",
+            "/run_purchases", "/backfill_purchases", "/run_sales", "/bulk_sales", "/upload_status",
+            "/get_daily_report", "/get_monthly_report", "/report", "/export_csv");
 
     @Value("${telegram.bot.username}")
     private String botUsername;
 
+    // polling: this instance asks Telegram for updates; webhook: Telegram pushes them to TelegramWebhookController
+    @Value("${eodbot.receive-mode:polling}")
+    private String receiveMode;
+
+    @Value("${eodbot.webhook.public-url:}")
+    private String webhookPublicUrl;
+
+    @Value("${eodbot.webhook.path:/telegram/webhook}")
+    private String webhookPath;
+
+    @Value("${eodbot.webhook.secret-token:}")
+    private String webhookSecretToken;
+
+    @Value("${eodbot.webhook.max-connections:40}")
+    private int webhookMaxConnections;
+
     // --- UPDATED CONSTRUCTOR ---
     public MyEodBot(@Value("${telegram.bot.token}") String botToken,
                     DistributorRepository distributorRepository,
@@ -63,7 +114,22 @@ public class MyEodBot extends TelegramLongPollingBot {
                     ReportService reportService,
                     ExcelParserService excelParserService,
                     CsvReportService csvReportService,
-                    BotOperationsService botOperationsService) { // <-- NEW SERVICE
+                    BotOperationsService botOperationsService, // <-- NEW SERVICE
+                    SimRoutingIndex simRoutingIndex,
+                    UploadJobQueue uploadJobQueue,
+                    MonthlyRollupService monthlyRollupService,
+                    ChatUpdateDispatcher updateDispatcher,
+                    RangeReportService rangeReportService,
+                    SalesEntryService salesEntryService,
+                    UploadLedgerService uploadLedgerService,
+                    RecentUpdateFilter recentUpdateFilter,
+                    PurchaseBackfillService purchaseBackfillService,
+                    PricingService pricingService,
+                    BotMetrics botMetrics,
+                    OutboundSender outboundSender,
+                    TelegramFileDownloader fileDownloader,
+                    ClusterCoordinator clusterCoordinator,
+                    BusinessClock businessClock) {
         super(botToken);
         this.distributorRepository = distributorRepository;
         this.vendorRepository = vendorRepository;
@@ -74,45 +140,133 @@ public class MyEodBot extends TelegramLongPollingBot {
         this.excelParserService = excelParserService;
         this.csvReportService = csvReportService;
         this.botOperationsService = botOperationsService; // <-- NEW SERVICE
+        this.simRoutingIndex = simRoutingIndex;
+        this.uploadJobQueue = uploadJobQueue;
+        this.monthlyRollupService = monthlyRollupService;
+        this.updateDispatcher = updateDispatcher;
+        this.rangeReportService = rangeReportService;
+        this.salesEntryService = salesEntryService;
+        this.uploadLedgerService = uploadLedgerService;
+        this.recentUpdateFilter = recentUpdateFilter;
+        this.purchaseBackfillService = purchaseBackfillService;
+        this.pricingService = pricingService;
+        this.botMetrics = botMetrics;
+        this.outboundSender = outboundSender;
+        this.fileDownloader = fileDownloader;
+        this.clusterCoordinator = clusterCoordinator;
+        this.businessClock = businessClock;
+
+        botMetrics.gauge("eodbot.updates.queued", "Updates waiting on the dispatcher lanes",
+                () -> Arrays.stream(updateDispatcher.laneDepths()).sum());
+        botMetrics.gauge("eodbot.updates.redelivered", "Updates dropped as already handled", recentUpdateFilter::dropped);
     }
 
     @PostConstruct
     public void registerBot() {
         try {
-            TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
-            botsApi.registerBot(this);
+            if ("webhook".equalsIgnoreCase(receiveMode)) {
+                registerWebhook();
+            } else {
+                // Also deletes any webhook left from running in webhook mode
+                TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
+                botsApi.registerBot(this);
+            }
             log.info("===================================================================");
-            log.info(">>> BOT IS ONLINE AND REGISTERED SUCCESSFULLY: @{} <<<", getBotUsername());
+            log.info(">>> BOT IS ONLINE AND REGISTERED SUCCESSFULLY: @{} ({}) <<<", getBotUsername(), receiveMode);
             log.info("===================================================================");
         } catch (TelegramApiException e) {
             log.error("!!!!!!!! FAILED TO REGISTER BOT !!!!!!!!", e);
         }
     }
 
+    /** Points Telegram at this app's webhook endpoint; no polling thread is started. */
+    private void registerWebhook() throws TelegramApiException {
+        if (webhookPublicUrl.isBlank()) {
+            throw new IllegalStateException("eodbot.webhook.public-url must be set in webhook mode");
+        }
+        SetWebhook setWebhook = SetWebhook.builder()
+                .url(webhookPublicUrl.replaceAll("/+$", "") + webhookPath)
+                .secretToken(webhookSecretToken)
+                .maxConnections(webhookMaxConnections)
+                .allowedUpdates(List.of("message", "callback_query")) // All this bot handles
+                .build();
+        telegram("setWebhook", () -> execute(setWebhook));
+        log.info("Webhook set to {}{}", webhookPublicUrl, webhookPath);
+    }
+
 
     @Override
     public String getBotUsername() { return botUsername; }
 
+    /** Entry point for every update, whether polled or pushed to the webhook. */
     @Override
     public void onUpdateReceived(Update update) {
+        if (!recentUpdateFilter.firstDelivery(update.getUpdateId())) {
+            return;
+        }
+        // Hand off to the chat's lane: same chat in order, other chats in parallel
+        try {
+            updateDispatcher.dispatch(chatIdOf(update), () -> handleUpdate(update));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while queueing update {}; dropped", update.getUpdateId());
+        }
+    }
+
+    private long chatIdOf(Update update) {
+        if (update.hasMessage()) return update.getMessage().getChatId();
+        if (update.hasCallbackQuery() && update.getCallbackQuery().getMessage() != null) {
+            return update.getCallbackQuery().getMessage().getChatId();
+        }
+        return 0L; // Update types we don't handle share one lane
+    }
+
+    private void handleUpdate(Update update) {
+        long started = System.nanoTime();
+        boolean ok = false;
+        try {
+            // In a cluster another node may be handling this chat's previous update
+            ok = clusterCoordinator.withChatLock(chatIdOf(update), () -> processUpdate(update));
+        } finally {
+            String type = updateType(update);
+            String command = "none";
+            if (type.equals("command")) {
+                String cmd = update.getMessage().getText().trim().split("\\s+")[0].toLowerCase();
+                command = COMMANDS.contains(cmd) ? cmd : "other";
+            }
+            botMetrics.update(type, command, ok, System.nanoTime() - started);
+        }
+    }
+
+    private static String updateType(Update update) {
+        if (update.hasMessage() && update.getMessage().hasText()) {
+            return update.getMessage().getText().trim().startsWith("/") ? "command" : "message";
+        }
+        if (update.hasCallbackQuery()) return "callback";
+        if (update.hasMessage() && update.getMessage().hasDocument()) return "document";
+        return "other";
+    }
+
+    /** @return false if handling the update failed */
+    private boolean processUpdate(Update update) {
 
         // --- HARDENED /cancel check ---
         if (update.hasMessage() && update.getMessage().hasText() && "/cancel".equalsIgnoreCase(update.getMessage().getText().trim())) {
             long chatId = update.getMessage().getChatId();
             conversationService.clearState(chatId);
             sendText(chatId, "Operation cancelled.");
-            return; // Stop processing
+            return true; // Stop processing
         }
 
         try {
             if (update.hasMessage() && update.getMessage().hasText()) {
                 long chatId = update.getMessage().getChatId();
                 String text = update.getMessage().getText();
-                String state = conversationService.getState(chatId);
+                ChatSession session = conversationService.get(chatId);
 
-                log.info("Received message: '{}' from chat ID: {} with state: {}", text, chatId, state);
+                log.info("Received message: '{}' from chat ID: {} with state: {}", text, chatId, session == null ? null : session.getState());
 
-                if (state != null) handleConversation(chatId, text, state);
+                if (session != null) handleConversation(chatId, text, session);
                 else if (text.startsWith("/")) handleCommand(chatId, text);
 
             } else if (update.hasCallbackQuery()) {
@@ -121,9 +275,11 @@ public class MyEodBot extends TelegramLongPollingBot {
             } else if (update.hasMessage() && update.getMessage().hasDocument()) {
                 handleDocument(update.getMessage().getChatId(), update.getMessage().getDocument());
             }
+            return true;
         } catch (Exception e) {
             log.error("Error processing update: {}", e.getMessage(), e);
             if (update.hasMessage()) sendText(update.getMessage().getChatId(), "An error occurred: " + e.getMessage());
+            return false;
         }
     }
 
@@ -148,18 +304,22 @@ public class MyEodBot extends TelegramLongPollingBot {
                         "  <code>/unassign_sim</code>\n" +
                         "  <code>/list_sims</code> (e.g. /list_sims Jio Rakesh)\n\n" +
                         "<b>Daily Use:</b>\n" +
-                        "  <code>/run_purchases</code> - Upload .xls file\n" +
-                        "  <code>/run_sales</code> - Enter vendor sales\n\n" +
+                        "  <code>/run_purchases</code> - Upload .xls file (add a date to file it under a past day, <code>force</code> to re-process a file already sent)\n" +
+                        "  <code>/backfill_purchases</code> - File statements for several past days (ZIP or several files)\n" +
+                        "  <code>/run_sales</code> - Enter vendor sales\n" +
+                        "  <code>/bulk_sales</code> - Paste or upload all vendor sales at once\n" +
+                        "  <code>/upload_status</code> - Upload queue status\n\n" +
                         "<b>Reporting:</b>\n" +
                         "  <code>/get_daily_report</code> (e.g. /get_daily_report 2025-10-30)\n" +
-                        "  <code>/get_monthly_report</code> (e.g. /get_monthly_report 2025-10)\n\n" +
+                        "  <code>/get_monthly_report</code> (e.g. /get_monthly_report 2025-10)\n" +
+                        "  <code>/report</code> (e.g. /report 2025-01-01 2025-03-31 vendor, /report ytd month)\n" +
+                        "  <code>/export_csv</code> (e.g. /export_csv 2025-01-01 2025-12-31)\n\n" +
                         "<b>Other:</b>\n" +
                         "  <code>/cancel</code> - Cancel current operation");
                 break;
             // --- Distributor Commands ---
             case "/add_distributor":
-                conversationService.setTempData(chatId, new Distributor());
-                conversationService.setState(chatId, "AWAIT_DIST_NAME");
+                conversationService.save(chatId, new ChatSession(ChatState.AWAIT_DIST_NAME));
                 sendText(chatId, "What is the Distributor's Name?");
                 break;
             case "/list_distributors":
@@ -171,8 +331,7 @@ public class MyEodBot extends TelegramLongPollingBot {
 
             // --- Vendor Commands ---
             case "/add_vendor":
-                conversationService.setTempData(chatId, new Vendor());
-                conversationService.setState(chatId, "AWAIT_VENDOR_NAME");
+                conversationService.save(chatId, new ChatSession(ChatState.AWAIT_VENDOR_NAME));
                 sendText(chatId, "What is the Vendor's Name?");
                 break;
             case "/list_vendors":
@@ -187,7 +346,7 @@ public class MyEodBot extends TelegramLongPollingBot {
                 sendDistributorList(chatId, "assign_sim_dist_");
                 break;
             case "/unassign_sim":
-                conversationService.setState(chatId, "AWAIT_SIM_FOR_UNASSIGN");
+                conversationService.save(chatId, new ChatSession(ChatState.AWAIT_SIM_FOR_UNASSIGN));
                 sendText(chatId, "Please enter the LAPU SIM Number to unassign:");
                 break;
             case "/list_sims":
@@ -196,12 +355,28 @@ public class MyEodBot extends TelegramLongPollingBot {
 
             // --- Daily Use ---
             case "/run_purchases":
-                conversationService.setState(chatId, "AWAIT_STAT_FILE");
-                sendText(chatId, "Please upload your <code>.xls</code> file from mrobotics.");
+                startPurchases(chatId, parts);
+                break;
+            case "/backfill_purchases":
+                conversationService.save(chatId, new ChatSession(ChatState.AWAIT_BACKFILL_FILES));
+                sendText(chatId, "Send a <code>.zip</code> of statements, or the <code>.xls</code> statements themselves " +
+                        "(several at once is fine) and then <code>/done</code>.\n" +
+                        "Each file name must contain its date, e.g. <code>statement_2025-10-30.xls</code> or <code>30-10-2025.xls</code>.");
                 break;
             case "/run_sales":
                 startSalesFlow(chatId);
                 break;
+            case "/bulk_sales":
+                conversationService.save(chatId, new ChatSession(ChatState.AWAIT_BULK_SALES));
+                sendText(chatId, "Paste one line per vendor: <code>vendor, prev, topup, end</code>\n" +
+                        "(commas, semicolons or tabs between fields; no thousands separators)\n" +
+                        "Leave prev out to carry over the vendor's last end balance.\n" +
+                        "e.g.\n<code>Ramesh, 1200, 5000, 900\nSuresh, 3000, 650</code>\n\n" +
+                        "Or upload a <code>.csv</code> file with those four columns.");
+                break;
+            case "/upload_status":
+                sendUploadStatus(chatId);
+                break;
 
             // --- Reporting ---
             case "/get_daily_report":
@@ -210,6 +385,12 @@ public class MyEodBot extends TelegramLongPollingBot {
             case "/get_monthly_report":
                 getMonthlyReport(chatId, parts);
                 break;
+            case "/report":
+                getRangeReport(chatId, parts);
+                break;
+            case "/export_csv":
+                exportCsv(chatId, parts);
+                break;
 
             default:
                 sendText(chatId, "Unknown command. Try /start");
@@ -218,23 +399,23 @@ public class MyEodBot extends TelegramLongPollingBot {
 
 
     // --- 2. State-Based Conversation Handling ---
-    private void handleConversation(long chatId, String text, String state) {
+    private void handleConversation(long chatId, String text, ChatSession session) {
         try {
-            switch (state) {
-                case "AWAIT_DIST_NAME":
-                    Distributor dist = conversationService.getTempData(chatId, Distributor.class);
-                    dist.setName(text);
-                    conversationService.setState(chatId, "AWAIT_DIST_GET");
+            switch (session.getState()) {
+                case AWAIT_DIST_NAME:
+                    session.setName(text);
+                    conversationService.moveTo(chatId, session, ChatState.AWAIT_DIST_GET);
                     sendText(chatId, "What is the 'base get' amount? (e.g., 515)");
                     break;
-                case "AWAIT_DIST_GET":
-                    dist = conversationService.getTempData(chatId, Distributor.class);
-                    dist.setBaseGet(Double.parseDouble(text));
-                    conversationService.setState(chatId, "AWAIT_DIST_PAY");
+                case AWAIT_DIST_GET:
+                    session.setBaseGet(Double.parseDouble(text));
+                    conversationService.moveTo(chatId, session, ChatState.AWAIT_DIST_PAY);
                     sendText(chatId, "What is the 'base pay' amount? (e.g., 505)");
                     break;
-                case "AWAIT_DIST_PAY":
-                    dist = conversationService.getTempData(chatId, Distributor.class);
+                case AWAIT_DIST_PAY:
+                    Distributor dist = new Distributor();
+                    dist.setName(session.getName());
+                    dist.setBaseGet(session.getBaseGet());
                     dist.setBasePay(Double.parseDouble(text));
                     // --- UPDATED: Use the service ---
                     botOperationsService.saveNewDistributor(dist);
@@ -242,14 +423,14 @@ public class MyEodBot extends TelegramLongPollingBot {
                     sendText(chatId, "✅ Distributor '<b>" + dist.getName() + "</b>' saved!");
                     break;
 
-                case "AWAIT_VENDOR_NAME":
-                    Vendor vendor = conversationService.getTempData(chatId, Vendor.class);
-                    vendor.setName(text);
-                    conversationService.setState(chatId, "AWAIT_VENDOR_DISCOUNT");
+                case AWAIT_VENDOR_NAME:
+                    session.setName(text);
+                    conversationService.moveTo(chatId, session, ChatState.AWAIT_VENDOR_DISCOUNT);
                     sendText(chatId, "What is their discount percent? (e.g., 1.5)");
                     break;
-                case "AWAIT_VENDOR_DISCOUNT":
-                    vendor = conversationService.getTempData(chatId, Vendor.class);
+                case AWAIT_VENDOR_DISCOUNT:
+                    Vendor vendor = new Vendor();
+                    vendor.setName(session.getName());
                     vendor.setDiscountPercent(Double.parseDouble(text));
                     // --- UPDATED: Use the service ---
                     botOperationsService.saveNewVendor(vendor);
@@ -258,32 +439,35 @@ public class MyEodBot extends TelegramLongPollingBot {
                     break;
 
                 // --- UPDATED: BATCH SIM ASSIGNMENT ---
-                case "AWAIT_BULK_SIM_NO":
-                    Long distId = conversationService.getTempData(chatId, Long.class);
-                    Distributor assignedDist = distributorRepository.findById(distId)
+                case AWAIT_BULK_SIM_NO:
+                    Distributor assignedDist = distributorRepository.findById(session.getTargetId())
                             .orElseThrow(() -> new RuntimeException("Distributor not found"));
 
                     // Split by space, comma, semicolon, or newline
                     String[] simNumbers = text.split("[\\s,;\\n]+");
 
                     // --- UPDATED: Use the service ---
-                    List<LapuSim> savedSims = botOperationsService.saveBatchSims(assignedDist, simNumbers);
+                    BulkWriteRepository.Result saved = botOperationsService.saveBatchSims(assignedDist, simNumbers);
 
                     conversationService.clearState(chatId);
-                    sendText(chatId, "✅ <b>" + savedSims.size() + "</b> SIM(s) are now assigned to '<b>" + assignedDist.getName() + "</b>'.");
+                    sendText(chatId, "✅ <b>" + saved.written() + "</b> SIM(s) are now assigned to '<b>" + assignedDist.getName() + "</b>'.\n" +
+                            "(New: " + saved.inserted() + ", moved from another distributor: " + saved.updated() +
+                            ", already assigned or repeated: " + saved.skipped() + ")");
                     break;
 
-                case "AWAIT_SIM_FOR_UNASSIGN":
+                case AWAIT_SIM_FOR_UNASSIGN:
                     // --- UPDATED: Use the service ---
                     botOperationsService.unassignSim(text.trim());
                     sendText(chatId, "✅ SIM <code>" + text.trim() + "</code> has been unassigned.");
                     conversationService.clearState(chatId);
                     break;
 
-                case "AWAIT_DIST_DELETE_CONFIRM":
+                case AWAIT_DIST_DELETE_CONFIRM:
                     // --- UPDATED: Use the service ---
                     if ("YES".equals(text.trim())) {
-                        Distributor distToDel = conversationService.getTempData(chatId, Distributor.class);
+                        // Only the ID is kept in the session; load the distributor as it is now
+                        Distributor distToDel = distributorRepository.findById(session.getTargetId())
+                                .orElseThrow(() -> new RuntimeException("Distributor not found"));
                         botOperationsService.confirmDeleteDistributor(distToDel);
                         sendText(chatId, "✅ Distributor '<b>" + distToDel.getName() + "</b>' and all associated SIMs have been deleted.");
                     } else {
@@ -291,10 +475,11 @@ public class MyEodBot extends TelegramLongPollingBot {
                     }
                     conversationService.clearState(chatId);
                     break;
-                case "AWAIT_VENDOR_DELETE_CONFIRM":
+                case AWAIT_VENDOR_DELETE_CONFIRM:
                     // --- UPDATED: Use the service ---
                     if ("YES".equals(text.trim())) {
-                        Vendor vendorToDel = conversationService.getTempData(chatId, Vendor.class);
+                        Vendor vendorToDel = vendorRepository.findById(session.getTargetId())
+                                .orElseThrow(() -> new RuntimeException("Vendor not found"));
                         botOperationsService.confirmDeleteVendor(vendorToDel);
                         sendText(chatId, "✅ Vendor '<b>" + vendorToDel.getName() + "</b>' has been deleted.");
                     } else {
@@ -304,22 +489,43 @@ public class MyEodBot extends TelegramLongPollingBot {
                     break;
 
                 // Sales entry flow
-                case "AWAIT_VENDOR_PREV_BAL":
-                    Map<String, Object> reportData = conversationService.getTempData(chatId, Map.class);
-                    reportData.put("current_prev_bal", Double.parseDouble(text));
-                    conversationService.setState(chatId, "AWAIT_VENDOR_TOPUP");
+                case AWAIT_VENDOR_PREV_BAL:
+                    session.getPrevBalances()[session.getVendorIndex()] = Double.parseDouble(text);
+                    conversationService.moveTo(chatId, session, ChatState.AWAIT_VENDOR_TOPUP);
                     sendText(chatId, "2. Enter TODAY'S Total Top-Ups:");
                     break;
-                case "AWAIT_VENDOR_TOPUP":
-                    reportData = conversationService.getTempData(chatId, Map.class);
-                    reportData.put("current_topup", Double.parseDouble(text));
-                    conversationService.setState(chatId, "AWAIT_VENDOR_END_BAL");
+                case AWAIT_VENDOR_TOPUP:
+                    if (text.trim().toLowerCase().startsWith("prev")) {
+                        // Override the carried-over opening balance
+                        session.getPrevBalances()[session.getVendorIndex()] = Double.parseDouble(text.trim().substring(4).trim());
+                        conversationService.save(chatId, session);
+                        sendText(chatId, String.format("Opening balance set to %.2f.\n2. Enter TODAY'S Total Top-Ups:",
+                                session.getPrevBalances()[session.getVendorIndex()]));
+                        break;
+                    }
+                    session.getTopups()[session.getVendorIndex()] = Double.parseDouble(text);
+                    conversationService.moveTo(chatId, session, ChatState.AWAIT_VENDOR_END_BAL);
                     sendText(chatId, "3. Enter TODAY'S End Balance:");
                     break;
-                case "AWAIT_VENDOR_END_BAL":
-                    reportData = conversationService.getTempData(chatId, Map.class);
-                    reportData.put("current_end_bal", Double.parseDouble(text));
-                    processVendorSale(chatId);
+                case AWAIT_VENDOR_END_BAL:
+                    session.getEndBalances()[session.getVendorIndex()] = Double.parseDouble(text);
+                    processVendorSale(chatId, session);
+                    break;
+
+                case AWAIT_BULK_SALES:
+                    submitBulkSales(chatId, salesEntryService.parseText(text));
+                    break;
+
+                case AWAIT_BACKFILL_FILES:
+                    if ("/done".equalsIgnoreCase(text.trim()) || "done".equalsIgnoreCase(text.trim())) {
+                        startBackfill(chatId, session);
+                    } else {
+                        sendText(chatId, "Send the statements (or a ZIP of them), then <code>/done</code>. Use /cancel to stop.");
+                    }
+                    break;
+
+                default:
+                    // e.g. AWAIT_STAT_FILE: the bot is waiting for a document, not text
                     break;
             }
         } catch (NumberFormatException e) {
@@ -334,9 +540,9 @@ public class MyEodBot extends TelegramLongPollingBot {
     private void handleCallbackQuery(long chatId, String data, int messageId) {
         // --- UPDATED: BATCH SIM ASSIGNMENT ---
         if (data.startsWith("assign_sim_dist_")) {
-            Long distId = Long.parseLong(data.substring("assign_sim_dist_".length()));
-            conversationService.setTempData(chatId, distId);
-            conversationService.setState(chatId, "AWAIT_BULK_SIM_NO"); // Changed from AWAIT_SIM_NO
+            ChatSession session = new ChatSession(ChatState.AWAIT_BULK_SIM_NO); // Changed from AWAIT_SIM_NO
+            session.setTargetId(Long.parseLong(data.substring("assign_sim_dist_".length())));
+            conversationService.save(chatId, session);
             sendText(chatId, "Please enter all LAPU SIM Numbers (<code>Lapu No</code>).\n" +
                     "You can paste a list separated by spaces, commas, or new lines.");
         }
@@ -347,8 +553,9 @@ public class MyEodBot extends TelegramLongPollingBot {
                 sendText(chatId, "Error: Distributor not found.");
                 return;
             }
-            conversationService.setTempData(chatId, dist);
-            conversationService.setState(chatId, "AWAIT_DIST_DELETE_CONFIRM");
+            ChatSession session = new ChatSession(ChatState.AWAIT_DIST_DELETE_CONFIRM);
+            session.setTargetId(distId);
+            conversationService.save(chatId, session);
             sendText(chatId, "⚠️ Are you sure you want to delete distributor '<b>" + dist.getName() + "</b>'?\n" +
                     "This will also delete all SIMs assigned to them.\n" +
                     "Type <code>YES</code> to confirm.");
@@ -360,8 +567,9 @@ public class MyEodBot extends TelegramLongPollingBot {
                 sendText(chatId, "Error: Vendor not found.");
                 return;
             }
-            conversationService.setTempData(chatId, vendor);
-            conversationService.setState(chatId, "AWAIT_VENDOR_DELETE_CONFIRM");
+            ChatSession session = new ChatSession(ChatState.AWAIT_VENDOR_DELETE_CONFIRM);
+            session.setTargetId(vendorId);
+            conversationService.save(chatId, session);
             sendText(chatId, "⚠️ Are you sure you want to delete vendor '<b>" + vendor.getName() + "</b>'?\n" +
                     "Type <code>YES</code> to confirm.");
         }
@@ -369,8 +577,17 @@ public class MyEodBot extends TelegramLongPollingBot {
 
     // --- 4. Document Upload Handling (Excel) ---
     private void handleDocument(long chatId, Document document) {
-        String state = conversationService.getState(chatId);
-        if (!"AWAIT_STAT_FILE".equals(state)) {
+        ChatSession session = conversationService.get(chatId);
+        ChatState state = (session == null) ? null : session.getState();
+        if (state == ChatState.AWAIT_BULK_SALES) {
+            handleBulkSalesFile(chatId, document);
+            return;
+        }
+        if (state == ChatState.AWAIT_BACKFILL_FILES) {
+            handleBackfillDocument(chatId, session, document);
+            return;
+        }
+        if (state != ChatState.AWAIT_STAT_FILE) {
             sendText(chatId, "I wasn't expecting a file. Please start a command like <code>/run_purchases</code> first.");
             return;
         }
@@ -380,28 +597,113 @@ public class MyEodBot extends TelegramLongPollingBot {
             sendText(chatId, "Invalid file type. Please upload an <code>.xls</code> file.");
             return;
         }
+        if (document.getFileSize() != null && document.getFileSize() > fileDownloader.maxBytes()) {
+            sendText(chatId, "This file is too large. Statements up to " + (fileDownloader.maxBytes() >> 20) + " MB can be processed.");
+            return;
+        }
 
-        sendText(chatId, "File received! Parsing Excel file (<code>.xls</code>)...");
-        File localFile = null;
-        try {
-            localFile = downloadTelegramFile(document.getFileId());
-
-            Map<String, LapuSim> simMap = lapuSimRepository.findAll().stream()
-                    .collect(Collectors.toMap(LapuSim::getLapuNo, sim -> sim));
+        if (simRoutingIndex.isEmpty()) {
+            sendText(chatId, "Error: No SIMs found in database. Please <code>/assign_sim</code> first.");
+            conversationService.clearState(chatId);
+            return;
+        }
 
-            if (simMap.isEmpty()) {
-                sendText(chatId, "Error: No SIMs found in database. Please <code>/assign_sim</code> first.");
+        // The heavy lifting happens on the upload queue so this thread can serve other chats.
+        // The day is fixed now (or was given with /run_purchases), so a job that waits past midnight
+        // still lands on the intended day.
+        LocalDate reportDate = (session.getReportDate() != null) ? session.getReportDate() : businessClock.today();
+        boolean reprocess = session.isReprocess();
+        String fileUniqueId = document.getFileUniqueId();
+
+        // The same file again: answer from the ledger without downloading anything
+        if (!reprocess) {
+            ProcessedUpload done = uploadLedgerService.findByFile(fileUniqueId, reportDate);
+            if (done != null) {
                 conversationService.clearState(chatId);
+                sendText(chatId, alreadyProcessed(done));
                 return;
             }
+        }
+        if (!uploadLedgerService.begin(fileUniqueId, reportDate)) {
+            conversationService.clearState(chatId);
+            sendText(chatId, "⏳ This file is already being processed for " + reportDate + "; the result will follow.");
+            return;
+        }
 
-            ExcelParserService.PurchaseParseResult parseResult = excelParserService.parse(localFile, simMap);
+        try {
+            int ahead = uploadJobQueue.submit(chatId, fileName, () -> processStatement(chatId, document, reportDate, reprocess));
+            conversationService.clearState(chatId);
+            if (ahead == 0) {
+                sendText(chatId, "📥 File received! Queued for processing...");
+            } else {
+                sendText(chatId, "📥 File received! Queued behind " + ahead + " earlier upload(s) from this chat.");
+            }
+        } catch (RejectedExecutionException e) {
+            uploadLedgerService.finish(fileUniqueId, reportDate);
+            sendText(chatId, "⚠️ Too many uploads are being processed right now. Please send the file again in a minute.");
+        }
+    }
+
+    private void startPurchases(long chatId, String[] parts) {
+        ChatSession session = new ChatSession(ChatState.AWAIT_STAT_FILE);
+        for (int i = 1; i < parts.length; i++) {
+            if (parts[i].isBlank()) continue;
+            if ("force".equalsIgnoreCase(parts[i])) {
+                session.setReprocess(true);
+                continue;
+            }
+            try {
+                session.setReportDate(LocalDate.parse(parts[i])); // e.g. /run_purchases 2025-10-30
+            } catch (DateTimeParseException e) {
+                sendText(chatId, "Invalid date format. Please use YYYY-MM-DD, e.g. <code>/run_purchases 2025-10-30</code>.");
+                return;
+            }
+        }
+        if (session.getReportDate() != null && session.getReportDate().isAfter(businessClock.today())) {
+            sendText(chatId, "Purchases can't be filed under a future date.");
+            return;
+        }
+        conversationService.save(chatId, session);
+        sendText(chatId, "Please upload your <code>.xls</code> file from mrobotics." +
+                (session.getReportDate() == null ? "" : " It will be filed under <b>" + session.getReportDate() + "</b>."));
+    }
+
+    private static String alreadyProcessed(ProcessedUpload done) {
+        return "♻️ This statement was already processed for " + done.getReportDate() + " (<code>" +
+                escapeHtml(String.valueOf(done.getFileName())) + "</code>); nothing was changed. Earlier result:\n\n" +
+                done.getResult() + "\n\n<i>Use <code>/run_purchases force</code> to process it again.</i>";
+    }
+
+    // Runs on an upload worker thread
+    private void processStatement(long chatId, Document document, LocalDate reportDate, boolean reprocess) {
+        sendText(chatId, "⏳ Downloading and parsing <code>" + document.getFileName() + "</code>...");
+        try {
+            // Parsed as it downloads, and hashed on the way so a re-sent copy of the same bytes is caught before saving
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            PricingSnapshot pricing = pricingService.current();
+            ExcelParserService.PurchaseParseResult parseResult;
+            try (InputStream in = new DigestInputStream(openTelegramFile(document.getFileId()), sha256)) {
+                parseResult = botMetrics.parse(() -> excelParserService.parse(in, document.getFileName(), simRoutingIndex, pricing));
+                in.transferTo(OutputStream.nullOutputStream()); // Whatever follows the table, for the hash
+            }
+            String contentHash = HexFormat.of().formatHex(sha256.digest());
+            if (!reprocess) {
+                ProcessedUpload same = uploadLedgerService.findByContent(contentHash, reportDate);
+                if (same != null) {
+                    // Remember this copy too, so the next resend is answered without a download
+                    uploadLedgerService.record(document.getFileUniqueId(), reportDate, contentHash, document.getFileName(), same.getResult());
+                    sendText(chatId, alreadyProcessed(same));
+                    return;
+                }
+            }
+
+            sendText(chatId, "⏳ Parsed " + parseResult.purchaseReportsMap.size() + " distributor(s). Saving...");
 
-            DailyReport dailyReport = reportService.getOrCreateDailyReport(LocalDate.now());
             String pnlStatus = reportService.updatePurchases(
-                    dailyReport,
+                    reportDate,
                     new ArrayList<>(parseResult.purchaseReportsMap.values()),
-                    parseResult.masterCostFactor
+                    parseResult.masterCostFactor,
+                    parseResult.pricingVersion
             );
 
             // Per-distributor breakdown
@@ -418,7 +720,7 @@ public class MyEodBot extends TelegramLongPollingBot {
             sb.append("\n<b>Overall Totals:</b>\n");
             sb.append(String.format("- Total Load: %.2f INR\n", parseResult.totalLoadReceived));
             sb.append(String.format("- Total Cost: %.2f INR\n", parseResult.totalCostPayable));
-            sb.append(String.format("- Daily Cost Factor: %.6f\n\n", parseResult.masterCostFactor));
+            sb.append(String.format("- Daily Cost Factor: %.6f (pricing v%d)\n\n", parseResult.masterCostFactor, parseResult.pricingVersion));
 
             if (!parseResult.unassignedSims.isEmpty()) {
                 sb.append("<b>(!) Unassigned SIMs found:</b>\n");
@@ -427,24 +729,146 @@ public class MyEodBot extends TelegramLongPollingBot {
                 sb.append("<i>Use /assign_sim to fix.</i>\n\n");
             }
 
+            if (parseResult.skippedRows > 0 || parseResult.malformedCells > 0) {
+                sb.append(String.format("<b>(!) Skipped %d row(s); %d unreadable amount(s) counted as 0.</b>\n\n",
+                        parseResult.skippedRows, parseResult.malformedCells));
+            }
+
             sb.append(pnlStatus);
+            uploadLedgerService.record(document.getFileUniqueId(), reportDate, contentHash, document.getFileName(), sb.toString());
             sendText(chatId, sb.toString());
-            conversationService.clearState(chatId);
 
         } catch (Exception e) {
             log.error("File processing failed: {}", e.getMessage(), e);
             sendText(chatId, "Error processing file: " + e.getMessage());
+        } finally {
+            uploadLedgerService.finish(document.getFileUniqueId(), reportDate);
+        }
+    }
+
+    // --- Purchase backfill: a ZIP of statements, or several .xls files followed by /done ---
+    private void handleBackfillDocument(long chatId, ChatSession session, Document document) {
+        String fileName = (document.getFileName() == null) ? "" : document.getFileName();
+        String lower = fileName.toLowerCase();
+        if (lower.endsWith(".zip")) {
+            session.getPendingFiles().add(new ChatSession.PendingFile(document.getFileId(), document.getFileUniqueId(), fileName));
+            startBackfill(chatId, session);
+        } else if (lower.endsWith(".xls")) {
+            LocalDate date = PurchaseBackfillService.dateFromFileName(fileName);
+            if (date == null) {
+                sendText(chatId, "⚠️ No date in the name <code>" + escapeHtml(fileName) + "</code>. " +
+                        "Rename it like <code>statement_2025-10-30.xls</code> and send it again.");
+                return;
+            }
+            session.getPendingFiles().add(new ChatSession.PendingFile(document.getFileId(), document.getFileUniqueId(), fileName));
+            conversationService.save(chatId, session);
+            sendText(chatId, "Added <code>" + escapeHtml(fileName) + "</code> for " + date + " (" +
+                    session.getPendingFiles().size() + " file(s) so far). Send more, or <code>/done</code> to start.");
+        } else {
+            sendText(chatId, "Invalid file type. Please send <code>.xls</code> statements or a <code>.zip</code> of them.");
+        }
+    }
+
+    private void startBackfill(long chatId, ChatSession session) {
+        List<ChatSession.PendingFile> files = List.copyOf(session.getPendingFiles());
+        if (files.isEmpty()) {
+            sendText(chatId, "No statements received yet. Send a <code>.zip</code> or <code>.xls</code> files first.");
+            return;
+        }
+        if (simRoutingIndex.isEmpty()) {
+            sendText(chatId, "Error: No SIMs found in database. Please <code>/assign_sim</code> first.");
             conversationService.clearState(chatId);
+            return;
+        }
+        try {
+            int ahead = uploadJobQueue.submit(chatId, "backfill of " + files.size() + " file(s)", () -> processBackfill(chatId, files));
+            conversationService.clearState(chatId);
+            sendText(chatId, "📥 Backfill of " + files.size() + " file(s) queued" +
+                    (ahead == 0 ? "." : " behind " + ahead + " earlier upload(s) from this chat."));
+        } catch (RejectedExecutionException e) {
+            // Keep the session, so /done can simply be sent again
+            conversationService.save(chatId, session);
+            sendText(chatId, "⚠️ Too many uploads are being processed right now. Please send <code>/done</code> again in a minute.");
+        }
+    }
+
+    // Runs on an upload worker thread
+    private void processBackfill(long chatId, List<ChatSession.PendingFile> files) {
+        sendText(chatId, "⏳ Downloading " + files.size() + " file(s)...");
+        List<File> downloads = new ArrayList<>();
+        List<PurchaseBackfillService.Statement> statements = new ArrayList<>();
+        List<PurchaseBackfillService.DayResult> problems = new ArrayList<>();
+        try {
+            for (ChatSession.PendingFile pending : files) {
+                MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+                File file = downloadTelegramFile(pending.fileId(), sha256);
+                downloads.add(file);
+                if (pending.fileName().toLowerCase().endsWith(".zip")) {
+                    statements.addAll(purchaseBackfillService.unzip(file, pending.fileUniqueId(), problems));
+                } else {
+                    statements.add(new PurchaseBackfillService.Statement(pending.fileName(), pending.fileUniqueId(),
+                            PurchaseBackfillService.dateFromFileName(pending.fileName()), file, HexFormat.of().formatHex(sha256.digest())));
+                }
+            }
+            sendText(chatId, "⏳ Parsing and saving " + statements.size() + " statement(s)...");
+            PurchaseBackfillService.BatchResult result = purchaseBackfillService.run(statements);
+            sendText(chatId, backfillSummary(result, problems));
+        } catch (Exception e) {
+            log.error("Backfill failed: {}", e.getMessage(), e);
+            sendText(chatId, "Error during backfill: " + escapeHtml(String.valueOf(e.getMessage())) +
+                    ". Days saved before the error stay saved.");
         } finally {
-            if (localFile != null) {
-                localFile.delete();
+            downloads.forEach(File::delete);
+            statements.forEach(s -> s.file().delete());
+        }
+    }
+
+    private String backfillSummary(PurchaseBackfillService.BatchResult result, List<PurchaseBackfillService.DayResult> problems) {
+        List<PurchaseBackfillService.DayResult> lines = new ArrayList<>(problems);
+        lines.addAll(result.days());
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("✅ <b>Backfill done:</b> %d of %d statement(s) saved.\n\n", result.saved(), lines.size()));
+        for (int i = 0; i < lines.size() && i < MAX_REPORT_LINES; i++) {
+            PurchaseBackfillService.DayResult day = lines.get(i);
+            if (day.error() == null) {
+                sb.append(String.format("- <b>%s</b>: %d distributor(s), load %.2f INR, cost factor %.6f\n",
+                        day.date(), day.distributors(), day.totalLoad(), day.costFactor()));
+            } else {
+                sb.append("- ").append(day.date() == null ? "" : "<b>" + day.date() + "</b> ")
+                        .append("<code>").append(escapeHtml(day.name())).append("</code>: ⚠️ ")
+                        .append(escapeHtml(String.valueOf(day.error()))).append("\n");
             }
         }
+        if (lines.size() > MAX_REPORT_LINES) {
+            sb.append("...and ").append(lines.size() - MAX_REPORT_LINES).append(" more.\n");
+        }
+        if (!result.rebuiltMonths().isEmpty()) {
+            sb.append("\nMonthly totals recalculated for: ").append(result.rebuiltMonths().stream()
+                    .map(Object::toString).collect(Collectors.joining(", ")));
+        }
+        return sb.toString();
+    }
+
+    private void sendUploadStatus(long chatId) {
+        UploadJobQueue.Stats stats = uploadJobQueue.stats();
+        ConversationStateStore.Stats conversations = conversationService.stats();
+        sendText(chatId, "<b>Upload Queue:</b>\n" +
+                "- Running: " + stats.running() + "\n" +
+                "- Waiting: " + stats.pending() + "\n" +
+                "- Completed: " + stats.completed() + " (failed: " + stats.failed() + ")\n" +
+                "- Avg wait: " + stats.avgWaitMillis() + " ms\n" +
+                "- Avg run: " + stats.avgRunMillis() + " ms (max " + stats.maxRunMillis() + " ms)\n" +
+                "- Duplicate uploads answered: " + uploadLedgerService.duplicates() + "\n" +
+                "- Redelivered updates dropped: " + recentUpdateFilter.dropped() + "\n\n" +
+                "<b>Conversations:</b>\n" +
+                "- Open: " + conversations.size() + "\n" +
+                "- Hits: " + conversations.hits() + ", misses: " + conversations.misses() + "\n" +
+                "- Expired or dropped: " + conversations.evictions());
     }
 
     // --- 5. P&L Sales Entry Flow ---
     private void startSalesFlow(long chatId) {
-        DailyReport dailyReport = reportService.getOrCreateDailyReport(LocalDate.now());
+        DailyReport dailyReport = reportService.getOrCreateDailyReport(businessClock.today());
         if (!dailyReport.isHasPurchaseData()) {
             sendText(chatId, "Warning: You haven't run <code>/run_purchases</code> yet.\n" +
                     "I can't calculate your <b>true</b> profit until I know today's cost factor.\n" +
@@ -457,63 +881,120 @@ public class MyEodBot extends TelegramLongPollingBot {
             return;
         }
 
-        Map<String, Object> reportData = new HashMap<>();
-        reportData.put("vendors", vendors);
-        reportData.put("vendorIndex", 0);
-        reportData.put("vendorReports", new ArrayList<DailyVendorReport>());
-
-        conversationService.setTempData(chatId, reportData);
-        askForVendorBalance(chatId, vendors.get(0));
+        // The session keeps only vendor IDs and the numbers entered, one slot per vendor
+        long[] vendorIds = vendors.stream().mapToLong(Vendor::getId).toArray();
+        askForVendorBalance(chatId, ChatSession.forSales(vendorIds, dailyReport.getMasterCostFactor()), vendors.get(0));
     }
 
-    private void askForVendorBalance(long chatId, Vendor vendor) {
-        conversationService.setState(chatId, "AWAIT_VENDOR_PREV_BAL");
-        Map<String, Object> reportData = conversationService.getTempData(chatId, Map.class);
-        reportData.put("currentVendor", vendor);
-        sendText(chatId, "--- Processing Vendor: <b>" + vendor.getName() + " (" + vendor.getDiscountPercent() + "%)</b> ---\n" +
-                "1. Enter YESTERDAY'S End Balance:");
+    /**
+     * Starts the current vendor's entry. When its last end balance is known it becomes the opening
+     * balance and only the top-ups and end balance are asked for.
+     */
+    private void askForVendorBalance(long chatId, ChatSession session, Vendor vendor) {
+        String header = "--- Processing Vendor: <b>" + vendor.getName() + " (" + vendor.getDiscountPercent() + "%)</b> ---\n";
+        VendorBalanceCache.Closing opening = salesEntryService.openingBalance(vendor.getId(), businessClock.today());
+        if (opening == null) {
+            conversationService.moveTo(chatId, session, ChatState.AWAIT_VENDOR_PREV_BAL);
+            sendText(chatId, header + "1. Enter YESTERDAY'S End Balance:");
+            return;
+        }
+        session.getPrevBalances()[session.getVendorIndex()] = opening.endBalance();
+        conversationService.moveTo(chatId, session, ChatState.AWAIT_VENDOR_TOPUP);
+        sendText(chatId, header + String.format("1. Opening balance: <b>%.2f</b> (end of %s)\n", opening.endBalance(), opening.date()) +
+                "   (send <code>prev &lt;amount&gt;</code> to change it)\n" +
+                "2. Enter TODAY'S Total Top-Ups:");
     }
 
-    private void processVendorSale(long chatId) {
-        Map<String, Object> reportData = conversationService.getTempData(chatId, Map.class);
-        DailyReport dailyReport = reportService.getOrCreateDailyReport(LocalDate.now());
-
-        Vendor vendor = (Vendor) reportData.get("currentVendor");
-        double prevBal = (Double) reportData.get("current_prev_bal");
-        double topup = (Double) reportData.get("current_topup");
-        double endBal = (Double) reportData.get("current_end_bal");
-        double costFactor = dailyReport.getMasterCostFactor();
-        List<DailyVendorReport> vendorReports = (List<DailyVendorReport>) reportData.get("vendorReports");
+    private void processVendorSale(long chatId, ChatSession session) {
+        double costFactor = session.getCostFactor(); // Read once when entry started
 
-        double grossRevenue = (prevBal + topup) - endBal;
-        double discountFactor = 1 - (vendor.getDiscountPercent() / 100);
-        double totalLoadSold = (discountFactor == 0) ? 0 : (grossRevenue / discountFactor);
-        double cogs = totalLoadSold * costFactor;
-        double netProfit = grossRevenue - cogs;
-
-        DailyVendorReport vr = new DailyVendorReport();
-        vr.setVendorName(vendor.getName());
-        vr.setGrossRevenue(reportService.round(grossRevenue));
-        vr.setTotalLoadSold(reportService.round(totalLoadSold));
-        vr.setCogs(reportService.round(cogs));
-        vr.setNetProfit(reportService.round(netProfit));
-        vendorReports.add(vr);
-
-        sendText(chatId, String.format("✅ %s Logged. (Profit: %.2f)", vendor.getName(), vr.getNetProfit()));
+        Vendor vendor = vendorRepository.findById(session.currentVendorId()).orElse(null);
+        if (vendor != null) {
+            DailyVendorReport vr = vendorSale(vendor, pricingService.current(), session, session.getVendorIndex(), costFactor);
+            sendText(chatId, String.format("✅ %s Logged. (Profit: %.2f)", vendor.getName(), vr.getNetProfit()));
+        } else {
+            sendText(chatId, "⚠️ That vendor was deleted in the meantime; skipping it.");
+        }
 
-        int index = (Integer) reportData.get("vendorIndex") + 1;
-        List<Vendor> vendors = (List<Vendor>) reportData.get("vendors");
+        // Move on to the next vendor that still exists
+        Vendor next = null;
+        while (next == null && session.hasNextVendor()) {
+            session.setVendorIndex(session.getVendorIndex() + 1);
+            next = vendorRepository.findById(session.currentVendorId()).orElse(null);
+        }
 
-        if (index < vendors.size()) {
-            reportData.put("vendorIndex", index);
-            askForVendorBalance(chatId, vendors.get(index));
+        if (next != null) {
+            askForVendorBalance(chatId, session, next);
         } else {
-            String pnlStatus = reportService.updateSales(dailyReport, vendorReports);
+            // Build every vendor's line from the entered numbers, in the order they were asked
+            Map<Long, Vendor> vendorsById = new HashMap<>();
+            vendorRepository.findAllById(Arrays.stream(session.getVendorIds()).boxed().toList())
+                    .forEach(v -> vendorsById.put(v.getId(), v));
+            PricingSnapshot pricing = pricingService.current();
+            List<DailyVendorReport> vendorReports = new ArrayList<>();
+            for (int i = 0; i < session.getVendorIds().length; i++) {
+                Vendor v = vendorsById.get(session.getVendorIds()[i]);
+                if (v != null) vendorReports.add(vendorSale(v, pricing, session, i, costFactor));
+            }
+
+            String pnlStatus = reportService.updateSales(businessClock.today(), vendorReports, pricing.version());
             sendText(chatId, "✅ <b>All vendor sales logged!</b>\n" + pnlStatus);
             conversationService.clearState(chatId);
         }
     }
 
+    private DailyVendorReport vendorSale(Vendor vendor, PricingSnapshot pricing, ChatSession session, int i, double costFactor) {
+        return salesEntryService.computeSale(vendor, pricing, session.getPrevBalances()[i], session.getTopups()[i],
+                session.getEndBalances()[i], costFactor);
+    }
+
+    private void handleBulkSalesFile(long chatId, Document document) {
+        String fileName = document.getFileName();
+        if (fileName == null || !fileName.toLowerCase().endsWith(".csv")) {
+            sendText(chatId, "Invalid file type. Please upload a <code>.csv</code> file, or paste the lines as a message.");
+            return;
+        }
+        try {
+            SalesEntryService.ParsedBatch batch;
+            try (Reader reader = new InputStreamReader(openTelegramFile(document.getFileId()), StandardCharsets.UTF_8)) {
+                batch = salesEntryService.parseCsv(reader);
+            }
+            submitBulkSales(chatId, batch);
+        } catch (Exception e) {
+            log.error("Bulk sales file failed: {}", e.getMessage(), e);
+            sendText(chatId, "Error reading file: " + e.getMessage() + ". Use /cancel to stop.");
+        }
+    }
+
+    // Validates and saves the whole batch at once; on errors nothing is saved and the chat can try again
+    private void submitBulkSales(long chatId, SalesEntryService.ParsedBatch batch) {
+        SalesEntryService.BatchResult result = salesEntryService.submit(businessClock.today(), batch);
+        if (!result.saved()) {
+            StringBuilder sb = new StringBuilder("⚠️ <b>Nothing was saved.</b> Please fix these and send the whole list again:\n");
+            result.errors().stream().limit(20).forEach(err -> sb.append("- ").append(escapeHtml(err)).append("\n"));
+            if (result.errors().size() > 20) sb.append("...and ").append(result.errors().size() - 20).append(" more.\n");
+            sb.append("\nUse /cancel to stop.");
+            sendText(chatId, sb.toString());
+            return;
+        }
+
+        conversationService.clearState(chatId);
+        StringBuilder sb = new StringBuilder("✅ <b>Sales logged for ").append(result.reports().size()).append(" vendor(s):</b>\n");
+        for (DailyVendorReport vr : result.reports()) {
+            sb.append(String.format("- %s: %.2f INR\n", vr.getVendorName(), vr.getNetProfit()));
+        }
+        if (!result.missingVendors().isEmpty()) {
+            sb.append("\n<b>(!) Not in the list (no sales recorded today):</b> ")
+                    .append(escapeHtml(String.join(", ", result.missingVendors()))).append("\n");
+        }
+        sb.append("\n").append(result.pnlStatus());
+        sendText(chatId, sb.toString());
+    }
+
+    private static String escapeHtml(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
     // --- 6. NEW/UPDATED Helper & CRUD Methods ---
 
     private void listDistributors(long chatId) {
@@ -560,15 +1041,15 @@ public class MyEodBot extends TelegramLongPollingBot {
             return;
         }
 
-        List<LapuSim> sims = lapuSimRepository.findByDistributor(dist);
+        List<String> sims = lapuSimRepository.findLapuNosByDistributorId(dist.getId());
         if (sims.isEmpty()) {
             sendText(chatId, "No SIMs assigned to '<b>" + dist.getName() + "</b>'.");
             return;
         }
 
         StringBuilder sb = new StringBuilder("<b>SIMs for " + dist.getName() + ":</b>\n");
-        for (LapuSim sim : sims) {
-            sb.append("- <code>").append(sim.getLapuNo()).append("</code>\n");
+        for (String lapuNo : sims) {
+            sb.append("- <code>").append(lapuNo).append("</code>\n");
         }
         sendText(chatId, sb.toString());
     }
@@ -620,25 +1101,28 @@ public class MyEodBot extends TelegramLongPollingBot {
             if (parts.length > 1) {
                 date = LocalDate.parse(parts[1]); // e.g., /get_daily_report 2025-10-30
             } else {
-                date = LocalDate.now(); // default to today
+                date = businessClock.today(); // default to today
             }
         } catch (DateTimeParseException e) {
             sendText(chatId, "Invalid date format. Please use YYYY-MM-DD.");
             return;
         }
 
-        DailyReport report = reportService.getOrCreateDailyReport(date);
+        // Read-only: looking at a day no longer creates an empty report row for it
+        ReportService.DailyView view = reportService.getDailyView(date);
         StringBuilder sb = new StringBuilder();
         sb.append("📈 <b>Daily Report for ").append(date).append("</b> 📈\n\n");
 
-        if (!report.isHasPurchaseData() && !report.isHasSalesData()) {
+        if (view == null || (!view.summary().getHasPurchaseData() && !view.summary().getHasSalesData())) {
             sb.append("No data found for this day.");
             sendText(chatId, sb.toString());
             return;
         }
 
+        DailyReportRepository.DailySummary report = view.summary();
+
         // --- P&L Summary ---
-        if (report.isHasPurchaseData() && report.isHasSalesData()) {
+        if (report.getHasPurchaseData() && report.getHasSalesData()) {
             sb.append("<b>P&L Summary:</b>\n");
             sb.append(String.format("- Gross Revenue: %.2f INR\n", report.getTotalGrossRevenue()));
             sb.append(String.format("- Cost of Sales: %.2f INR\n", report.getTotalCogs()));
@@ -648,18 +1132,18 @@ public class MyEodBot extends TelegramLongPollingBot {
         }
 
         // --- Vendor Profit Summary ---
-        if (report.isHasSalesData()) {
+        if (report.getHasSalesData()) {
             sb.append("<b>Vendor Profits:</b>\n");
-            report.getVendorReports().forEach(vr ->
+            view.vendorLines().forEach(vr ->
                     sb.append(String.format("- %s: %.2f INR\n", vr.getVendorName(), vr.getNetProfit()))
             );
             sb.append("\n");
         }
 
         // --- Distributor Cost Summary ---
-        if (report.isHasPurchaseData()) {
+        if (report.getHasPurchaseData()) {
             sb.append("<b>Distributor Costs:</b>\n");
-            report.getPurchaseReports().forEach(pr ->
+            view.purchaseLines().forEach(pr ->
                     sb.append(String.format("- %s: %.2f INR\n", pr.getDistributorName(), pr.getTotalCostPayable()))
             );
         }
@@ -667,13 +1151,7 @@ public class MyEodBot extends TelegramLongPollingBot {
         sendText(chatId, sb.toString());
 
         // --- Send CSV File ---
-        try {
-            File csvFile = csvReportService.generateDailyReportCsv(report);
-            sendDocument(chatId, new InputFile(csvFile), "daily_report_" + date + ".csv");
-        } catch (IOException e) {
-            log.error("Failed to generate daily CSV report: {}", e.getMessage(), e);
-            sendText(chatId, "Could not generate CSV file.");
-        }
+        sendCsv(chatId, "daily_report_" + date + ".csv", () -> csvReportService.dailyReportCsv(view));
     }
 
     private void getMonthlyReport(long chatId, String[] parts) {
@@ -684,125 +1162,201 @@ public class MyEodBot extends TelegramLongPollingBot {
                 // Validate format
                 YearMonth.parse(month);
             } else {
-                month = YearMonth.now().toString(); // default to current month
+                month = businessClock.thisMonth().toString(); // default to current month
             }
         } catch (DateTimeParseException e) {
             sendText(chatId, "Invalid month format. Please use YYYY-MM (e.g., 2025-10).");
             return;
         }
 
-        LocalDate startDate = LocalDate.parse(month + "-01");
-        LocalDate endDate = startDate.plusMonths(1).minusDays(1);
-
-        List<DailyReport> reports = dailyReportRepository.findByDateBetween(startDate, endDate);
+        // One read of the pre-aggregated month instead of loading every day
+        MonthlyRollupService.MonthlyView view = monthlyRollupService.getMonth(YearMonth.parse(month));
 
-        if (reports.isEmpty()) {
+        if (view == null) {
             sendText(chatId, "No data found for " + month);
             return;
         }
 
-        // Aggregate data
-        double totalProfit = 0, totalRevenue = 0, totalCogs = 0;
-        Map<String, Double> vendorProfits = new HashMap<>();
-        Map<String, Double> distCosts = new HashMap<>();
-
-        for (DailyReport report : reports) {
-            if (report.isHasPurchaseData() && report.isHasSalesData()) {
-                totalProfit += report.getTotalNetProfit();
-                totalRevenue += report.getTotalGrossRevenue();
-                totalCogs += report.getTotalCogs();
-
-                report.getVendorReports().forEach(vr ->
-                        vendorProfits.merge(vr.getVendorName(), vr.getNetProfit(), Double::sum)
-                );
-                report.getPurchaseReports().forEach(pr ->
-                        distCosts.merge(pr.getDistributorName(), pr.getTotalCostPayable(), Double::sum)
-                );
-            }
-        }
+        MonthlyRollup totals = view.totals();
+        double totalProfit = totals.getTotalNetProfit();
+        double totalRevenue = totals.getTotalGrossRevenue();
+        double totalCogs = totals.getTotalCogs();
 
         // Build and send chat summary
         StringBuilder sb = new StringBuilder();
         sb.append("📈 <b>Monthly Report: ").append(month).append("</b> 📈\n\n");
-        sb.append("<b>Overall P&L (from completed days):</b>\n");
+        sb.append("<b>Overall P&L (from ").append(totals.getCompletedDays()).append(" completed days):</b>\n");
         sb.append(String.format("- Total Net Profit: %.2f INR\n", totalProfit));
         sb.append(String.format("- Total Gross Revenue: %.2f INR\n", totalRevenue));
         sb.append(String.format("- Total COGS: %.2f INR\n\n", totalCogs));
 
         sb.append("<b>Top Vendors (by Profit):</b>\n");
-        vendorProfits.entrySet().stream()
-                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
-                .forEach(entry -> sb.append(String.format("- %s: %.2f INR\n", entry.getKey(), reportService.round(entry.getValue()))));
+        view.vendors().stream()
+                .sorted(Comparator.comparingDouble(MonthlyVendorRollup::getNetProfit).reversed())
+                .forEach(vr -> sb.append(String.format("- %s: %.2f INR\n", vr.getVendorName(), reportService.round(vr.getNetProfit()))));
 
         sb.append("\n<b>Total Distributor Costs:</b>\n");
-        distCosts.entrySet().stream()
-                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
-                .forEach(entry -> sb.append(String.format("- %s: %.2f INR\n", entry.getKey(), reportService.round(entry.getValue()))));
+        view.distributors().stream()
+                .sorted(Comparator.comparingDouble(MonthlyDistributorRollup::getTotalCostPayable).reversed())
+                .forEach(dr -> sb.append(String.format("- %s: %.2f INR\n", dr.getDistributorName(), reportService.round(dr.getTotalCostPayable()))));
 
         sendText(chatId, sb.toString());
 
         // --- Send CSV File ---
+        sendCsv(chatId, "monthly_report_" + month + ".csv", () -> csvReportService.monthlyReportCsv(view, month));
+    }
+
+    private void getRangeReport(long chatId, String[] parts) {
+        String usage = "Usage: <code>/report &lt;from&gt; &lt;to&gt; [day|week|month|vendor|distributor]</code>\n" +
+                "or <code>/report ytd [day|week|month|vendor|distributor]</code>";
+        LocalDate from, to;
+        int groupingArg;
         try {
-            File csvFile = csvReportService.generateMonthlyReportCsv(reports, month);
-            sendDocument(chatId, new InputFile(csvFile), "monthly_report_" + month + ".csv");
-        } catch (IOException e) {
-            log.error("Failed to generate monthly CSV report: {}", e.getMessage(), e);
-            sendText(chatId, "Could not generate CSV file.");
+            if (parts.length > 1 && parts[1].equalsIgnoreCase("ytd")) {
+                to = businessClock.today();
+                from = to.withDayOfYear(1);
+                groupingArg = 2;
+            } else if (parts.length > 2) {
+                from = LocalDate.parse(parts[1]);
+                to = LocalDate.parse(parts[2]);
+                groupingArg = 3;
+            } else {
+                sendText(chatId, usage);
+                return;
+            }
+        } catch (DateTimeParseException e) {
+            sendText(chatId, "Invalid date format. Please use YYYY-MM-DD.");
+            return;
+        }
+        if (to.isBefore(from)) {
+            sendText(chatId, "The end date must not be before the start date.");
+            return;
+        }
+
+        RangeReportService.Grouping grouping = null;
+        if (parts.length > groupingArg) {
+            try {
+                grouping = RangeReportService.Grouping.parse(parts[groupingArg]);
+            } catch (IllegalArgumentException e) {
+                sendText(chatId, usage);
+                return;
+            }
+        }
+
+        RangeReportService.RangeReport report = rangeReportService.report(from, to, grouping);
+        RangeReportService.Row totals = report.totals();
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("📊 <b>Report: ").append(from).append(" to ").append(to).append("</b> 📊\n\n");
+        if (totals.days() == 0) {
+            sb.append("No completed days in this range.");
+            sendText(chatId, sb.toString());
+            return;
+        }
+        sb.append("<b>Overall P&L (from ").append(totals.days()).append(" completed days):</b>\n");
+        sb.append(String.format("- Total Net Profit: %.2f INR\n", totals.netProfit()));
+        sb.append(String.format("- Total Gross Revenue: %.2f INR\n", totals.grossRevenue()));
+        sb.append(String.format("- Total COGS: %.2f INR\n", totals.cost()));
+
+        if (grouping != null) {
+            sb.append("\n<b>By ").append(grouping.name().toLowerCase()).append(":</b>\n");
+            List<RangeReportService.Row> rows = report.rows();
+            for (RangeReportService.Row row : rows.subList(0, Math.min(rows.size(), MAX_REPORT_LINES))) {
+                if (grouping == RangeReportService.Grouping.DISTRIBUTOR) {
+                    sb.append(String.format("- %s: %.2f INR (%d days)\n", row.label(), reportService.round(row.cost()), row.days()));
+                } else {
+                    sb.append(String.format("- %s: %.2f INR (%d days)\n", row.label(), reportService.round(row.netProfit()), row.days()));
+                }
+            }
+            if (rows.size() > MAX_REPORT_LINES) {
+                sb.append("... and ").append(rows.size() - MAX_REPORT_LINES).append(" more. Use /export_csv for the full data.\n");
+            }
+        }
+
+        sendText(chatId, sb.toString());
+    }
+
+    private void exportCsv(long chatId, String[] parts) {
+        LocalDate from, to;
+        try {
+            if (parts.length < 3) {
+                sendText(chatId, "Usage: <code>/export_csv 2025-01-01 2025-12-31</code>");
+                return;
+            }
+            from = LocalDate.parse(parts[1]);
+            to = LocalDate.parse(parts[2]);
+        } catch (DateTimeParseException e) {
+            sendText(chatId, "Invalid date format. Please use YYYY-MM-DD.");
+            return;
         }
+        if (to.isBefore(from)) {
+            sendText(chatId, "The end date must not be before the start date.");
+            return;
+        }
+
+        // Streamed from the database while it uploads, however long the range
+        sendCsv(chatId, "export_" + from + "_" + to + ".csv", () -> csvReportService.rangeExportCsv(from, to));
     }
 
 
     // --- 8. Core Helper Methods ---
 
-    private File downloadTelegramFile(String fileId) throws TelegramApiException, IOException {
+    /** Opens a file sent to the bot; it is read as it downloads, with the downloader's time and size limits. */
+    private InputStream openTelegramFile(String fileId) throws TelegramApiException, IOException {
         GetFile getFile = new GetFile(fileId);
-        org.telegram.telegrambots.meta.api.objects.File telegramFile = execute(getFile);
+        org.telegram.telegrambots.meta.api.objects.File telegramFile = telegram("getFile", () -> execute(getFile));
+        return fileDownloader.open(telegramFile.getFilePath());
+    }
 
+    /**
+     * Downloads a file to a temp file, for when it has to be read more than once (a backfill's statements
+     * are parsed later, in parallel). Feeds its bytes through {@code digest} on the way if one is given.
+     */
+    private File downloadTelegramFile(String fileId, MessageDigest digest) throws TelegramApiException, IOException {
         File localFile = File.createTempFile("telegram-", ".download");
+        try (InputStream in = openTelegramFile(fileId)) {
+            InputStream source = (digest == null) ? in : new DigestInputStream(in, digest);
+            Files.copy(source, localFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return localFile;
+        } catch (TelegramApiException | IOException | RuntimeException e) {
+            localFile.delete();
+            throw e;
+        }
+    }
+
+    private interface TelegramCall<T> {
+        T execute() throws TelegramApiException;
+    }
 
-        try (InputStream in = new URL(telegramFile.getFileUrl(getBotToken())).openStream()) {
-            Files.copy(in, localFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    /** Makes a Bot API call, recording its latency and whether Telegram throttled (429) or failed it. */
+    private <T> T telegram(String method, TelegramCall<T> call) throws TelegramApiException {
+        long started = System.nanoTime();
+        String outcome = "error";
+        try {
+            T result = call.execute();
+            outcome = "ok";
+            return result;
+        } catch (TelegramApiRequestException e) {
+            if (e.getErrorCode() != null && e.getErrorCode() == 429) outcome = "throttled";
+            throw e;
+        } finally {
+            botMetrics.telegramCall(method, outcome, System.nanoTime() - started);
         }
-        return localFile;
     }
 
+    // Everything sent to a chat goes through the outbound queue, which paces it within Telegram's limits
+
     private void sendText(long chatId, String text) {
-        SendMessage message = SendMessage.builder()
-                .chatId(chatId)
-                .text(text)
-                .parseMode("HTML") // <-- UPDATED TO HTML
-                .build();
-        executeMessage(message);
+        outboundSender.sendText(chatId, text, "HTML");
     }
 
     private void sendReplyMarkup(long chatId, String text, InlineKeyboardMarkup markup) {
-        SendMessage message = SendMessage.builder()
-                .chatId(chatId)
-                .text(text)
-                .replyMarkup(markup)
-                .build();
-        executeMessage(message);
+        outboundSender.sendReplyMarkup(chatId, text, markup);
     }
 
-    private void sendDocument(long chatId, InputFile file, String caption) {
-        SendDocument document = SendDocument.builder()
-                .chatId(chatId)
-                .document(file)
-                .caption(caption)
-                .build();
-        try {
-            execute(document);
-        } catch (TelegramApiException e) {
-            log.error("Failed to send document: {}", e.getMessage(), e);
-        }
-    }
-
-    private void executeMessage(SendMessage message) {
-        try {
-            execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Failed to send message: {}", e.getMessage());
-        }
+    /** Queues a CSV under the given file name; it is generated when its turn to be sent comes. */
+    private void sendCsv(long chatId, String fileName, OutboundSender.DocumentSource csv) {
+        outboundSender.sendDocument(chatId, fileName, fileName, csv,
+                () -> sendText(chatId, "Could not send <code>" + fileName + "</code>. Please try again."));
     }
 }
-
@@ -0,0 +1,479 @@
+package com.mybot.eod_bot.bot;
+
+import com.mybot.eod_bot.service.BotMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.bots.DefaultAbsSender;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
+import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.InputFile;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Queues everything the bot sends and sends it on its own threads, within Telegram's flood
+ * limits: a global token bucket, one per chat, and the retry_after of any 429 reply, which
+ * holds back every chat (the flood limit it reports is the bot's, not just that chat's).
+ * Each chat's messages go out in order, one at a time. Texts still waiting are merged into
+ * one send, and texts longer than Telegram allows are split, so handlers never wait on the network.
+ * Documents (an export can take minutes to upload) get threads of their own, so texts always
+ * have {@code threads} senders free however many documents are going out.
+ */
+@Slf4j
+@Component
+public class OutboundSender {
+
+    static final int MAX_TEXT = 4096; // Telegram's limit per message
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long RETRY_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    /** What actually talks to Telegram. */
+    interface Transport {
+        void send(SendMessage message) throws TelegramApiException;
+
+        void send(SendDocument document) throws TelegramApiException;
+    }
+
+    /** Opens a document's content. Called for each attempt at sending it; the sender closes what it returns. */
+    public interface DocumentSource {
+        InputStream open() throws IOException;
+    }
+
+    /** A text or a document waiting to be sent. */
+    private static final class Outgoing {
+        final String text;
+        final String parseMode;
+        final InlineKeyboardMarkup markup;
+        final String fileName;
+        final DocumentSource document;
+        final Runnable onFailure;   // For documents: tells the chat it did not arrive
+        int attempts = 0;
+
+        private Outgoing(String text, String parseMode, InlineKeyboardMarkup markup, String fileName, DocumentSource document, Runnable onFailure) {
+            this.text = text;
+            this.parseMode = parseMode;
+            this.markup = markup;
+            this.fileName = fileName;
+            this.document = document;
+            this.onFailure = onFailure;
+        }
+
+        boolean mergeable() {
+            return document == null && markup == null;
+        }
+    }
+
+    /** A chat's queue and its share of the rate limit. Guarded by the sender's lock. */
+    private static final class ChatLane {
+        final Deque<Outgoing> pending = new ArrayDeque<>();
+        final TokenBucket bucket;
+        boolean inFlight = false;
+        long blockedUntil = 0; // From retry_after
+
+        ChatLane(TokenBucket bucket) {
+            this.bucket = bucket;
+        }
+    }
+
+    /** Refills at {@code perSecond} tokens a second up to {@code burst}. Not thread-safe. */
+    static final class TokenBucket {
+        private final double perNano;
+        private final double burst;
+        private double tokens;
+        private long refilledAt;
+
+        TokenBucket(double perSecond, double burst, long now) {
+            this.perNano = perSecond / TimeUnit.SECONDS.toNanos(1);
+            this.burst = burst;
+            this.tokens = burst;
+            this.refilledAt = now;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) * perNano);
+            refilledAt = now;
+        }
+
+        boolean available(long now) {
+            refill(now);
+            return tokens >= 1;
+        }
+
+        void take() {
+            tokens -= 1;
+        }
+
+        long nanosUntilAvailable(long now) {
+            refill(now);
+            return (tokens >= 1) ? 0 : (long) Math.ceil((1 - tokens) / perNano);
+        }
+    }
+
+    private final Transport transport;
+    private final BotMetrics metrics;
+    private final double chatPerSecond;
+    private final double chatBurst;
+    private final int maxDocuments;
+    private final ExecutorService senders;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    // Chats with something to send, in the order they get their next turn
+    private final LinkedHashMap<Long, ChatLane> lanes = new LinkedHashMap<>();
+    private final TokenBucket global;
+    private long blockedUntil = 0; // From the retry_after of the latest 429, for all chats
+    private boolean running = true;
+    private int queued = 0;
+    private int documentsInFlight = 0;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    @Autowired
+    public OutboundSender(@Value("${telegram.bot.token}") String botToken,
+                          BotMetrics metrics,
+                          @Value("${eodbot.outbound.threads:2}") int threads,
+                          @Value("${eodbot.outbound.document-threads:1}") int documentThreads,
+                          @Value("${eodbot.outbound.global-per-second:25}") double globalPerSecond,
+                          @Value("${eodbot.outbound.chat-per-second:1}") double chatPerSecond,
+                          @Value("${eodbot.outbound.chat-burst:3}") double chatBurst) {
+        this(telegramTransport(botToken), metrics, threads, documentThreads, globalPerSecond, chatPerSecond, chatBurst);
+    }
+
+    OutboundSender(Transport transport, BotMetrics metrics, int threads, int documentThreads,
+                   double globalPerSecond, double chatPerSecond, double chatBurst) {
+        this.transport = transport;
+        this.metrics = metrics;
+        this.chatPerSecond = chatPerSecond;
+        this.chatBurst = chatBurst;
+        this.maxDocuments = documentThreads;
+        this.global = new TokenBucket(globalPerSecond, globalPerSecond, System.nanoTime());
+        AtomicInteger counter = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(threads + documentThreads, r -> {
+            Thread t = new Thread(r, "telegram-sender-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 0; i < threads + documentThreads; i++) {
+            senders.execute(this::sendLoop);
+        }
+        if (metrics != null) {
+            metrics.gauge("eodbot.outbound.queued", "Messages waiting to be sent to Telegram", this::queued);
+            metrics.gauge("eodbot.outbound.merged", "Texts sent as part of an earlier one", merged::get);
+            metrics.gauge("eodbot.outbound.dropped", "Messages given up on", dropped::get);
+        }
+        log.info("Outbound sender: {} thread(s) plus {} for documents, {}/s overall, {}/s per chat (burst {})",
+                threads, documentThreads, globalPerSecond, chatPerSecond, chatBurst);
+    }
+
+    private static Transport telegramTransport(String botToken) {
+        DefaultAbsSender client = new DefaultAbsSender(new DefaultBotOptions(), botToken) {};
+        return new Transport() {
+            @Override
+            public void send(SendMessage message) throws TelegramApiException {
+                client.execute(message);
+            }
+
+            @Override
+            public void send(SendDocument document) throws TelegramApiException {
+                client.execute(document);
+            }
+        };
+    }
+
+    public record Stats(int queued, long sent, long merged, long throttled, long dropped) {}
+
+    // --- Queueing ---
+
+    /** Queues a text. Longer texts are split at line breaks into messages Telegram accepts. */
+    public void sendText(long chatId, String text, String parseMode) {
+        List<Outgoing> parts = new ArrayList<>();
+        for (String part : split(text)) {
+            parts.add(new Outgoing(part, parseMode, null, null, null, null));
+        }
+        enqueue(chatId, parts);
+    }
+
+    /** Queues a text with inline buttons. Never merged with other texts. */
+    public void sendReplyMarkup(long chatId, String text, InlineKeyboardMarkup markup) {
+        enqueue(chatId, List.of(new Outgoing(text, null, markup, null, null, null)));
+    }
+
+    /**
+     * Queues a document. Its content is opened only when its turn comes, and opened afresh for a
+     * retry, so nothing it reads from is held while it waits; {@code onFailure} runs if it is given up on.
+     */
+    public void sendDocument(long chatId, String fileName, String caption, DocumentSource document, Runnable onFailure) {
+        enqueue(chatId, List.of(new Outgoing(caption, null, null, fileName, document, onFailure)));
+    }
+
+    private void enqueue(long chatId, List<Outgoing> items) {
+        lock.lock();
+        try {
+            if (!running) {
+                log.warn("Sender stopped; dropping {} message(s) to chat {}", items.size(), chatId);
+                dropped.addAndGet(items.size());
+                return;
+            }
+            ChatLane lane = lanes.computeIfAbsent(chatId, id -> new ChatLane(new TokenBucket(chatPerSecond, chatBurst, System.nanoTime())));
+            lane.pending.addAll(items);
+            queued += items.size();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(queued(), sent.get(), merged.get(), throttled.get(), dropped.get());
+    }
+
+    private int queued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Splits a text into pieces of at most {@link #MAX_TEXT} chars, at a line break where there is one. */
+    static List<String> split(String text) {
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        while (text.length() - start > MAX_TEXT) {
+            int cut = text.lastIndexOf('\n', start + MAX_TEXT);
+            if (cut <= start) cut = start + MAX_TEXT; // One very long line
+            parts.add(text.substring(start, cut));
+            start = (cut < text.length() && text.charAt(cut) == '\n') ? cut + 1 : cut;
+        }
+        parts.add(text.substring(start));
+        return parts;
+    }
+
+    // --- Sending ---
+
+    private void sendLoop() {
+        while (true) {
+            long chatId;
+            ChatLane lane;
+            Outgoing next;
+            lock.lock();
+            try {
+                Map.Entry<Long, ChatLane> ready;
+                while ((ready = nextReady()) == null) {
+                    if (!running && queued == 0) return;
+                    long wait = nanosUntilReady();
+                    if (wait > 0) changed.awaitNanos(wait);
+                    else changed.await();
+                }
+                chatId = ready.getKey();
+                lane = ready.getValue();
+                next = takeMerged(lane);
+                lane.inFlight = true;
+                if (next.document != null) documentsInFlight++;
+                lane.bucket.take();
+                global.take();
+                // Other chats go first next time
+                lanes.remove(chatId);
+                lanes.put(chatId, lane);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            Result result = send(chatId, next);
+
+            lock.lock();
+            try {
+                lane.inFlight = false;
+                if (next.document != null) documentsInFlight--;
+                switch (result.kind) {
+                    case SENT -> {
+                        queued--;
+                        sent.incrementAndGet();
+                    }
+                    case RETRY -> {
+                        lane.blockedUntil = System.nanoTime() + result.waitNanos;
+                        lane.pending.addFirst(next);
+                    }
+                    case DROP -> {
+                        queued--;
+                        dropped.incrementAndGet();
+                    }
+                }
+                if (lane.pending.isEmpty()) lanes.remove(chatId);
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (result.kind == ResultKind.DROP && next.onFailure != null) next.onFailure.run();
+        }
+    }
+
+    // A chat that may send now, in turn order; null if none can
+    private Map.Entry<Long, ChatLane> nextReady() {
+        long now = System.nanoTime();
+        if (blockedUntil - now > 0 || !global.available(now)) return null;
+        for (Map.Entry<Long, ChatLane> entry : lanes.entrySet()) {
+            ChatLane lane = entry.getValue();
+            if (!lane.inFlight && !lane.pending.isEmpty() && !waitsForDocumentThread(lane)
+                    && lane.blockedUntil - now <= 0 && lane.bucket.available(now)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    // How long until some chat may send; 0 when only a finished send can change that
+    private long nanosUntilReady() {
+        long now = System.nanoTime();
+        long wait = Long.MAX_VALUE;
+        for (ChatLane lane : lanes.values()) {
+            if (lane.inFlight || lane.pending.isEmpty() || waitsForDocumentThread(lane)) continue;
+            wait = Math.min(wait, Math.max(Math.max(lane.blockedUntil - now, 0), lane.bucket.nanosUntilAvailable(now)));
+        }
+        if (wait == Long.MAX_VALUE) return 0;
+        return Math.max(1, Math.max(wait, Math.max(blockedUntil - now, global.nanosUntilAvailable(now))));
+    }
+
+    // The chat's next message is a document, and as many are already being sent as there are document threads
+    private boolean waitsForDocumentThread(ChatLane lane) {
+        return lane.pending.peekFirst().document != null && documentsInFlight >= maxDocuments;
+    }
+
+    // Takes the chat's next message, merged with the plain texts queued right behind it
+    private Outgoing takeMerged(ChatLane lane) {
+        Outgoing first = lane.pending.pollFirst();
+        if (!first.mergeable() || first.attempts > 0) return first;
+
+        StringBuilder text = new StringBuilder(first.text);
+        int count = 0;
+        for (Iterator<Outgoing> it = lane.pending.iterator(); it.hasNext(); ) {
+            Outgoing o = it.next();
+            if (!o.mergeable() || o.attempts > 0 || !java.util.Objects.equals(o.parseMode, first.parseMode)
+                    || text.length() + 1 + o.text.length() > MAX_TEXT) {
+                break;
+            }
+            text.append('\n').append(o.text);
+            it.remove();
+            count++;
+        }
+        if (count == 0) return first;
+        queued -= count;
+        merged.addAndGet(count);
+        return new Outgoing(text.toString(), first.parseMode, null, null, null, null);
+    }
+
+    private enum ResultKind { SENT, RETRY, DROP }
+
+    private record Result(ResultKind kind, long waitNanos) {
+        static final Result SENT = new Result(ResultKind.SENT, 0);
+        static final Result DROP = new Result(ResultKind.DROP, 0);
+    }
+
+    private Result send(long chatId, Outgoing o) {
+        String method = (o.document != null) ? "sendDocument" : "sendMessage";
+        long started = System.nanoTime();
+        String outcome = "error";
+        o.attempts++;
+        try {
+            if (o.document != null) {
+                try (InputStream content = o.document.open()) {
+                    transport.send(SendDocument.builder().chatId(chatId).document(new InputFile(content, o.fileName)).caption(o.text).build());
+                }
+            } else {
+                transport.send(SendMessage.builder().chatId(chatId).text(o.text).parseMode(o.parseMode).replyMarkup(o.markup).build());
+            }
+            outcome = "ok";
+            return Result.SENT;
+        } catch (TelegramApiRequestException e) {
+            Integer code = e.getErrorCode();
+            if (code != null && code == 429) {
+                outcome = "throttled";
+                Integer retryAfter = (e.getParameters() == null) ? null : e.getParameters().getRetryAfter();
+                long wait = TimeUnit.SECONDS.toNanos(retryAfter == null ? 1 : retryAfter);
+                holdAll(wait);
+                throttled.incrementAndGet();
+                log.warn("Telegram throttled chat {}; retrying in {} s", chatId, TimeUnit.NANOSECONDS.toSeconds(wait));
+                return retry(chatId, o, wait);
+            }
+            if (code != null && code >= 500) {
+                return retry(chatId, o, RETRY_BACKOFF_NANOS * o.attempts);
+            }
+            // 400 (e.g. bad HTML), 403 (bot blocked): sending again would not help
+            log.error("Failed to send {} to chat {}: {}", method, chatId, e.getMessage());
+            return Result.DROP;
+        } catch (TelegramApiException e) {
+            // Network trouble; a document is read again from the start
+            return retry(chatId, o, RETRY_BACKOFF_NANOS * o.attempts);
+        } catch (IOException e) {
+            log.error("Could not read document {} for chat {}: {}", o.fileName, chatId, e.getMessage());
+            return Result.DROP;
+        } finally {
+            if (metrics != null) metrics.telegramCall(method, outcome, System.nanoTime() - started);
+        }
+    }
+
+    // No chat sends again until the wait is over
+    private void holdAll(long waitNanos) {
+        lock.lock();
+        try {
+            long until = System.nanoTime() + waitNanos;
+            if (until - blockedUntil > 0) blockedUntil = until;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Result retry(long chatId, Outgoing o, long waitNanos) {
+        if (o.attempts >= MAX_ATTEMPTS) {
+            log.error("Giving up on a message to chat {} after {} attempts", chatId, o.attempts);
+            return Result.DROP;
+        }
+        return new Result(ResultKind.RETRY, waitNanos);
+    }
+
+    /** Stops taking messages and gives the queue a few seconds to drain. */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        lock.lock();
+        try {
+            running = false;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        senders.shutdown();
+        if (!senders.awaitTermination(5, TimeUnit.SECONDS)) {
+            log.warn("{} message(s) not sent before shutdown", queued());
+            senders.shutdownNow();
+        }
+    }
+}
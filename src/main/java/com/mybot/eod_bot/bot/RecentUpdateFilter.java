@@ -0,0 +1,58 @@
+package com.mybot.eod_bot.bot;
+
+import com.mybot.eod_bot.service.ClusterCoordinator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the IDs of the most recent updates, so an update Telegram delivers twice
+ * (e.g. after a restart before the offset was confirmed) is handled only once.
+ * In a cluster the update is also claimed in the database, since a webhook retry can reach another node.
+ */
+@Slf4j
+@Component
+public class RecentUpdateFilter {
+
+    // Update IDs seen, oldest first. Guarded by this.
+    private final LinkedHashMap<Integer, Boolean> seen;
+    private final AtomicLong dropped = new AtomicLong();
+    private final ClusterCoordinator clusterCoordinator;
+
+    // Telegram keeps an undelivered update for at most a day
+    private static final Duration CLAIM_TTL = Duration.ofDays(1);
+
+    public RecentUpdateFilter(@Value("${eodbot.updates.dedup-window:1000}") int window, ClusterCoordinator clusterCoordinator) {
+        this.clusterCoordinator = clusterCoordinator;
+        this.seen = new LinkedHashMap<>(Math.min(window, 1024), 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest) {
+                return size() > window;
+            }
+        };
+    }
+
+    /** @return true the first time an update ID is seen, false for a redelivery */
+    public boolean firstDelivery(int updateId) {
+        boolean first;
+        synchronized (this) {
+            first = seen.putIfAbsent(updateId, Boolean.TRUE) == null;
+        }
+        if (first && clusterCoordinator.claim("update:" + updateId, CLAIM_TTL)) {
+            return true;
+        }
+        dropped.incrementAndGet();
+        log.info("Dropping redelivered update {}", updateId);
+        return false;
+    }
+
+    /** Redelivered updates dropped since startup. */
+    public long dropped() {
+        return dropped.get();
+    }
+}
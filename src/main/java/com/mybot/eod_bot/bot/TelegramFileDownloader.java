@@ -0,0 +1,212 @@
+package com.mybot.eod_bot.bot;
+
+import com.mybot.eod_bot.service.BotMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams files from Telegram's file server over one shared HTTP client, so connections are reused.
+ * Connecting and every read have a time limit, and a file larger than the limit is refused
+ * (before its body is read when the server sends a Content-Length).
+ */
+@Slf4j
+@Component
+public class TelegramFileDownloader {
+
+    private final HttpClient client;
+    private final String fileUrlPrefix;
+    private final Duration readTimeout;
+    private final long maxBytes;
+    private final BotMetrics metrics;
+
+    // Downloads in progress, checked every second for reads that stalled
+    private final Set<LimitedStream> open = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService watchdog;
+
+    @Autowired
+    public TelegramFileDownloader(@Value("${telegram.bot.token}") String botToken,
+                                  @Value("${eodbot.download.base-url:https://api.telegram.org}") String baseUrl,
+                                  @Value("${eodbot.download.connect-timeout:PT10S}") Duration connectTimeout,
+                                  @Value("${eodbot.download.read-timeout:PT30S}") Duration readTimeout,
+                                  @Value("${eodbot.download.max-size:20MB}") DataSize maxSize,
+                                  BotMetrics metrics) {
+        this(baseUrl + "/file/bot" + botToken + "/", connectTimeout, readTimeout, maxSize.toBytes(), metrics);
+    }
+
+    TelegramFileDownloader(String fileUrlPrefix, Duration connectTimeout, Duration readTimeout, long maxBytes, BotMetrics metrics) {
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.fileUrlPrefix = fileUrlPrefix;
+        this.readTimeout = readTimeout;
+        this.maxBytes = maxBytes;
+        this.metrics = metrics;
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "download-watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+        watchdog.scheduleWithFixedDelay(this::closeStalled, 1, 1, TimeUnit.SECONDS);
+    }
+
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Opens a file by its Telegram {@code file_path} (from getFile). The caller reads and closes the
+     * stream; a read fails once the file passes the size limit or no bytes arrive within the read timeout.
+     */
+    public InputStream open(String filePath) throws IOException {
+        long started = System.nanoTime();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(fileUrlPrefix + filePath))
+                .timeout(readTimeout) // Until the response headers arrive
+                .GET()
+                .build();
+        HttpResponse<InputStream> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Download interrupted", e);
+        } catch (IOException e) {
+            record(0, false, started);
+            throw e;
+        }
+
+        InputStream body = response.body();
+        if (response.statusCode() != 200) {
+            body.close();
+            record(0, false, started);
+            throw new IOException("Telegram file server answered HTTP " + response.statusCode());
+        }
+        long length = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+        if (length > maxBytes) {
+            body.close();
+            record(0, false, started);
+            throw tooLarge();
+        }
+        LimitedStream stream = new LimitedStream(body, started);
+        open.add(stream);
+        return stream;
+    }
+
+    private IOException tooLarge() {
+        return new IOException("File is larger than " + DataSize.ofBytes(maxBytes).toMegabytes() + " MB");
+    }
+
+    private void record(long bytes, boolean ok, long started) {
+        if (metrics != null) metrics.download(bytes, ok, System.nanoTime() - started);
+    }
+
+    private void closeStalled() {
+        long now = System.nanoTime();
+        for (LimitedStream stream : open) {
+            if (now - stream.lastRead > readTimeout.toNanos()) {
+                stream.timedOut = true;
+                stream.abort();
+            }
+        }
+    }
+
+    /** Counts what is read, enforces the size limit and records the download when closed. */
+    private final class LimitedStream extends FilterInputStream {
+        private final long started;
+        private long bytes = 0;
+        private boolean failed = false;
+        private boolean closed = false;
+        volatile long lastRead = System.nanoTime();
+        volatile boolean timedOut = false;
+
+        LimitedStream(InputStream body, long started) {
+            super(body);
+            this.started = started;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return (n == -1) ? -1 : (one[0] & 0xff);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n;
+            try {
+                n = super.read(b, off, len);
+            } catch (IOException e) {
+                failed = true;
+                if (timedOut) throw new HttpTimeoutException("No data from Telegram for " + readTimeout.toSeconds() + " s");
+                throw e;
+            }
+            if (timedOut) {
+                failed = true;
+                throw new HttpTimeoutException("No data from Telegram for " + readTimeout.toSeconds() + " s");
+            }
+            lastRead = System.nanoTime();
+            if (n > 0) {
+                bytes += n;
+                if (bytes > maxBytes) {
+                    failed = true;
+                    throw tooLarge();
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Through read(), so skipped bytes count against the limit too
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            int r;
+            while (skipped < n && (r = read(buffer, 0, (int) Math.min(buffer.length, n - skipped))) > 0) {
+                skipped += r;
+            }
+            return skipped;
+        }
+
+        void abort() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Already broken
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            open.remove(this);
+            record(bytes, !failed && !timedOut, started);
+            super.close();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+    }
+}
@@ -0,0 +1,51 @@
+package com.mybot.eod_bot.bot;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Receives updates pushed by Telegram when {@code eodbot.receive-mode=webhook}. Each update goes to
+ * {@link MyEodBot#onUpdateReceived}, the same entry point long polling uses, and is acknowledged as soon
+ * as it is queued on its chat's lane.
+ */
+@Slf4j
+@RestController
+@ConditionalOnProperty(name = "eodbot.receive-mode", havingValue = "webhook")
+public class TelegramWebhookController {
+
+    static final String SECRET_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+
+    private final MyEodBot bot;
+    private final byte[] secretToken;
+
+    public TelegramWebhookController(MyEodBot bot, @Value("${eodbot.webhook.secret-token:}") String secretToken) {
+        // Telegram allows 1-256 characters: A-Z, a-z, 0-9, _ and -
+        if (!secretToken.matches("[A-Za-z0-9_-]{1,256}")) {
+            throw new IllegalStateException("eodbot.webhook.secret-token must be set (1-256 of A-Z, a-z, 0-9, _ and -) in webhook mode");
+        }
+        this.bot = bot;
+        this.secretToken = secretToken.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @PostMapping(path = "${eodbot.webhook.path:/telegram/webhook}", consumes = "application/json")
+    public ResponseEntity<Void> receive(@RequestHeader(name = SECRET_HEADER, required = false) String token,
+                                        @RequestBody Update update) {
+        // Only Telegram knows the token (it was given in setWebhook); compared in constant time
+        if (token == null || !MessageDigest.isEqual(secretToken, token.getBytes(StandardCharsets.UTF_8))) {
+            log.warn("Rejected a webhook call without the right secret token");
+            return ResponseEntity.status(401).build();
+        }
+        bot.onUpdateReceived(update);
+        return ResponseEntity.ok().build();
+    }
+}
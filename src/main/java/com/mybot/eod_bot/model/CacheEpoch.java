@@ -0,0 +1,23 @@
+package com.mybot.eod_bot.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Counts the changes to data that nodes keep in memory (e.g. the SIM routing index).
+ * It is bumped in the transaction that changes the data; a node whose copy was built at a
+ * lower epoch rebuilds it.
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "cache_epochs")
+public class CacheEpoch {
+
+    @Id
+    private String name;
+
+    @Column(nullable = false)
+    private long epoch;
+}
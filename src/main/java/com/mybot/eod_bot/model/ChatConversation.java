@@ -0,0 +1,29 @@
+package com.mybot.eod_bot.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/** A chat's in-progress conversation (a serialized ChatSession), as kept by the jdbc conversation store. */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "chat_conversations",
+        indexes = @Index(name = "idx_chat_conversations_updated_at", columnList = "updatedAt"))
+public class ChatConversation {
+
+    @Id
+    private Long chatId;
+
+    // Copy of the session's state, readable without parsing the payload
+    private String state;
+
+    // The whole ChatSession as JSON
+    @Column(columnDefinition = "text", nullable = false)
+    private String payload;
+
+    @Column(nullable = false)
+    private Instant updatedAt;
+}
@@ -0,0 +1,71 @@
+package com.mybot.eod_bot.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A chat's multi-step conversation: its state plus the few values the current flow collects.
+ * Only primitives, strings and IDs, so it is small in memory and cheap to serialize.
+ */
+@Data
+@NoArgsConstructor
+public class ChatSession {
+
+    private ChatState state;
+
+    // --- Add distributor / vendor ---
+    private String name;
+    private double baseGet;
+    private double basePay;
+    private double discountPercent;
+
+    // --- Distributor (SIM assignment, delete) or vendor (delete) the flow is about ---
+    private long targetId;
+
+    // --- Purchases: the day to file under (null = today), and whether to process a statement
+    // even if it was already processed for that day ---
+    private LocalDate reportDate;
+    private boolean reprocess;
+
+    // --- Purchase backfill: statements received so far, processed together on /done ---
+    private List<PendingFile> pendingFiles = new ArrayList<>();
+
+    /** A document waiting to be downloaded, by its Telegram IDs. */
+    public record PendingFile(String fileId, String fileUniqueId, String fileName) {}
+
+    // --- Sales entry: one slot per vendor, in the order they are asked ---
+    private long[] vendorIds;
+    private double[] prevBalances;
+    private double[] topups;
+    private double[] endBalances;
+    private int vendorIndex;
+    // The day's cost factor when entry started, for the profit shown after each vendor.
+    // The saved lines are costed again at the day's factor of the moment they are saved.
+    private double costFactor;
+
+    public ChatSession(ChatState state) {
+        this.state = state;
+    }
+
+    public static ChatSession forSales(long[] vendorIds, double costFactor) {
+        ChatSession session = new ChatSession(ChatState.AWAIT_VENDOR_PREV_BAL);
+        session.vendorIds = vendorIds;
+        session.costFactor = costFactor;
+        session.prevBalances = new double[vendorIds.length];
+        session.topups = new double[vendorIds.length];
+        session.endBalances = new double[vendorIds.length];
+        return session;
+    }
+
+    public long currentVendorId() {
+        return vendorIds[vendorIndex];
+    }
+
+    public boolean hasNextVendor() {
+        return vendorIndex + 1 < vendorIds.length;
+    }
+}
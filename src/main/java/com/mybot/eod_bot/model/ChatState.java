@@ -0,0 +1,33 @@
+package com.mybot.eod_bot.model;
+
+/** What the bot is waiting for from a chat in a multi-step conversation. */
+public enum ChatState {
+    // Add distributor
+    AWAIT_DIST_NAME,
+    AWAIT_DIST_GET,
+    AWAIT_DIST_PAY,
+
+    // Add vendor
+    AWAIT_VENDOR_NAME,
+    AWAIT_VENDOR_DISCOUNT,
+
+    // SIMs
+    AWAIT_BULK_SIM_NO,
+    AWAIT_SIM_FOR_UNASSIGN,
+
+    // Delete confirmations
+    AWAIT_DIST_DELETE_CONFIRM,
+    AWAIT_VENDOR_DELETE_CONFIRM,
+
+    // Purchases
+    AWAIT_STAT_FILE,
+    AWAIT_BACKFILL_FILES,
+
+    // Sales entry, asked once per vendor
+    AWAIT_VENDOR_PREV_BAL,
+    AWAIT_VENDOR_TOPUP,
+    AWAIT_VENDOR_END_BAL,
+
+    // Sales entry for all vendors at once (pasted table or CSV file)
+    AWAIT_BULK_SALES
+}
@@ -0,0 +1,29 @@
+package com.mybot.eod_bot.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Something one node of a cluster has taken on (an update it handles, an upload it processes).
+ * A claim past its expiry may be taken over, so a node that dies does not hold it forever.
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "cluster_claims",
+        indexes = @Index(name = "idx_cluster_claims_expires_at", columnList = "expiresAt"))
+public class ClusterClaim {
+
+    // e.g. "update:734190051" or "upload:AgADuBUAAqtWIFQ/2025-10-30"
+    @Id
+    private String claimKey;
+
+    @Column(nullable = false)
+    private String nodeId;
+
+    @Column(nullable = false)
+    private Instant expiresAt;
+}
@@ -7,7 +7,9 @@ import lombok.NoArgsConstructor;
 @Data
 @NoArgsConstructor
 @Entity
-@Table(name = "daily_purchase_reports")
+// Postgres does not index foreign keys by itself; range reports and day rewrites filter on report_id
+@Table(name = "daily_purchase_reports",
+        indexes = @Index(name = "idx_daily_purchase_reports_report_id", columnList = "report_id"))
 public class DailyPurchaseReport {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
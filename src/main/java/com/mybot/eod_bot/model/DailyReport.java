@@ -20,12 +20,21 @@ public class DailyReport {
     @Column(unique = true, nullable = false)
     private LocalDate date;
 
+    // Bumped by every save of the day's purchases or sales; a save made from an older read fails and is retried
+    @Version
+    @Column(columnDefinition = "bigint default 0 not null")
+    private Long version;
+
     // --- Purchase Data ---
     private boolean hasPurchaseData = false;
     private double masterCostFactor = 0;
+    // Pricing version the purchases were costed with (null: saved before versions were kept)
+    private Long purchasePricingVersion;
 
     // --- Sales Data ---
     private boolean hasSalesData = false;
+    // Pricing version the vendor discounts came from
+    private Long salesPricingVersion;
 
     // --- P&L Data (Calculated) ---
     private double totalGrossRevenue = 0;
@@ -33,10 +42,11 @@ public class DailyReport {
     private double totalNetProfit = 0;
 
     // --- Relationships ---
-    @OneToMany(mappedBy = "dailyReport", cascade = CascadeType.ALL, fetch = FetchType.EAGER)
+    // Lazy: only the write paths walk these. Reports read projections instead (see the repositories).
+    @OneToMany(mappedBy = "dailyReport", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<DailyPurchaseReport> purchaseReports = new ArrayList<>();
 
-    @OneToMany(mappedBy = "dailyReport", cascade = CascadeType.ALL, fetch = FetchType.EAGER)
+    @OneToMany(mappedBy = "dailyReport", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<DailyVendorReport> vendorReports = new ArrayList<>();
 
     public DailyReport(LocalDate date) {
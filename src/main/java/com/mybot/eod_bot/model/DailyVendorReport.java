@@ -7,7 +7,13 @@ import lombok.NoArgsConstructor;
 @Data
 @NoArgsConstructor
 @Entity
-@Table(name = "daily_vendor_reports")
+// Postgres does not index foreign keys by itself; range reports and day rewrites filter on report_id,
+// opening balance lookups on vendor_id
+@Table(name = "daily_vendor_reports",
+        indexes = {
+                @Index(name = "idx_daily_vendor_reports_report_id", columnList = "report_id"),
+                @Index(name = "idx_daily_vendor_reports_vendor_id", columnList = "vendor_id")
+        })
 public class DailyVendorReport {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -22,4 +28,10 @@ public class DailyVendorReport {
     private double totalLoadSold;
     private double cogs;
     private double netProfit;
+
+    // --- Raw balances as entered (null on rows saved before they were recorded) ---
+    private Long vendorId;
+    private Double prevBalance;
+    private Double topup;
+    private Double endBalance;
 }
@@ -15,7 +15,7 @@ public class LapuSim {
     private String lapuNo;
 
     // A SIM belongs to one Distributor
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "distributor_id", nullable = false)
     private Distributor distributor;
 }
@@ -0,0 +1,31 @@
+package com.mybot.eod_bot.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "monthly_distributor_rollups",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"month", "distributorName"}))
+public class MonthlyDistributorRollup {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String month; // "YYYY-MM"
+
+    @Column(nullable = false)
+    private String distributorName;
+
+    private int days; // Completed days this distributor appears in; the row is dropped at 0
+    private double totalLoadReceived;
+    private double totalCostPayable;
+
+    public MonthlyDistributorRollup(String month, String distributorName) {
+        this.month = month;
+        this.distributorName = distributorName;
+    }
+}
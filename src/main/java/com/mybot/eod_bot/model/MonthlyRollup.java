@@ -0,0 +1,26 @@
+package com.mybot.eod_bot.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "monthly_rollups")
+public class MonthlyRollup {
+
+    // The ID will be "YYYY-MM"
+    @Id
+    private String id;
+
+    // Only days with both purchase and sales data are counted here
+    private int completedDays = 0;
+    private double totalGrossRevenue = 0;
+    private double totalCogs = 0;
+    private double totalNetProfit = 0;
+
+    public MonthlyRollup(String month) {
+        this.id = month;
+    }
+}
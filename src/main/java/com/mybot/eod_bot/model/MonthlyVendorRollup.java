@@ -0,0 +1,33 @@
+package com.mybot.eod_bot.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "monthly_vendor_rollups",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"month", "vendorName"}))
+public class MonthlyVendorRollup {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String month; // "YYYY-MM"
+
+    @Column(nullable = false)
+    private String vendorName;
+
+    private int days; // Completed days this vendor appears in; the row is dropped at 0
+    private double grossRevenue;
+    private double totalLoadSold;
+    private double cogs;
+    private double netProfit;
+
+    public MonthlyVendorRollup(String month, String vendorName) {
+        this.month = month;
+        this.vendorName = vendorName;
+    }
+}
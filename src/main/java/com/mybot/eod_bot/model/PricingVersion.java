@@ -0,0 +1,32 @@
+package com.mybot.eod_bot.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * One version of the rates in force: every distributor's payable factor and every vendor's
+ * discount factor, as JSON. Never updated; a rate change adds a new version.
+ * Daily reports record the version they were computed with.
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "pricing_versions")
+public class PricingVersion {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long version;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    // What changed, e.g. "added distributor X"
+    private String reason;
+
+    @Column(columnDefinition = "text", nullable = false)
+    private String rates;
+}
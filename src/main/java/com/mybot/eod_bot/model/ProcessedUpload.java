@@ -0,0 +1,45 @@
+package com.mybot.eod_bot.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * A purchase statement that has been processed for a report date, with the reply that was sent.
+ * A file sent again (same Telegram file, or the same bytes) is answered from here.
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "processed_uploads",
+        uniqueConstraints = @UniqueConstraint(name = "uk_processed_uploads_file_date", columnNames = {"fileUniqueId", "reportDate"}),
+        indexes = @Index(name = "idx_processed_uploads_sha256_date", columnList = "contentSha256, reportDate"))
+public class ProcessedUpload {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Telegram's file_unique_id: the same for a file however often it is sent or forwarded
+    @Column(nullable = false)
+    private String fileUniqueId;
+
+    @Column(nullable = false)
+    private LocalDate reportDate;
+
+    // SHA-256 of the file as downloaded, hex
+    @Column(nullable = false, length = 64)
+    private String contentSha256;
+
+    private String fileName;
+
+    // The summary sent when the file was processed
+    @Column(columnDefinition = "text", nullable = false)
+    private String result;
+
+    @Column(nullable = false)
+    private Instant processedAt;
+}
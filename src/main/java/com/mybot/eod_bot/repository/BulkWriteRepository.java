@@ -0,0 +1,306 @@
+package com.mybot.eod_bot.repository;
+
+import com.mybot.eod_bot.model.DailyPurchaseReport;
+import com.mybot.eod_bot.model.DailyVendorReport;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * Plain JDBC batch writes for the tables that get large batches at once.
+ * JPA would issue one statement (or a SELECT plus an INSERT) per row for these.
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class BulkWriteRepository {
+
+    private static final int BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /** Row counts of a bulk write. Skipped rows were duplicates or already up to date. */
+    public record Result(int inserted, int updated, int skipped, int deleted) {
+        public int written() { return inserted + updated + deleted; }
+    }
+
+    /** The figures of a vendor row that depend on the day's cost factor. */
+    public record VendorCost(long id, double totalLoadSold, double grossRevenue, double cogs, double netProfit) {}
+
+    /**
+     * Assigns SIMs to a distributor: new SIMs are inserted, SIMs of other distributors are moved,
+     * and SIMs already on this distributor (or repeated in the input) are skipped.
+     * Costs one lookup query plus one batched upsert, however many SIMs are given.
+     */
+    public Result upsertSims(long distributorId, Collection<String> lapuNos) {
+        Set<String> unique = new LinkedHashSet<>(lapuNos);
+        int skipped = lapuNos.size() - unique.size();
+        if (unique.isEmpty()) return new Result(0, 0, skipped, 0);
+
+        Map<String, Long> current = new HashMap<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("SELECT lapu_no, distributor_id FROM lapu_sims WHERE lapu_no = ANY(?)");
+            Array array = con.createArrayOf("varchar", unique.toArray());
+            ps.setArray(1, array);
+            return ps;
+        }, rs -> {
+            current.put(rs.getString(1), rs.getLong(2));
+        });
+
+        List<String> toWrite = new ArrayList<>();
+        int inserted = 0, updated = 0;
+        for (String lapuNo : unique) {
+            Long owner = current.get(lapuNo);
+            if (owner == null) {
+                inserted++;
+            } else if (owner != distributorId) {
+                updated++;
+            } else {
+                skipped++;
+                continue;
+            }
+            toWrite.add(lapuNo);
+        }
+
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO lapu_sims (lapu_no, distributor_id) VALUES (?, ?) " +
+                        "ON CONFLICT (lapu_no) DO UPDATE SET distributor_id = EXCLUDED.distributor_id",
+                toWrite, BATCH_SIZE, (ps, lapuNo) -> {
+                    ps.setString(1, lapuNo);
+                    ps.setLong(2, distributorId);
+                });
+
+        Result result = new Result(inserted, updated, skipped, 0);
+        log.info("SIM upsert for distributor {}: {}", distributorId, result);
+        return result;
+    }
+
+    /**
+     * Brings a day's purchase rows in line with {@code rows}, matched by distributor name: only new rows
+     * are inserted, changed rows updated and rows no longer present deleted. IDs are set on the given rows.
+     */
+    public Result syncPurchaseRows(String reportId, List<DailyPurchaseReport> rows) {
+        List<DailyPurchaseReport> stored = jdbcTemplate.query("SELECT id, distributor_name, total_load_received, total_cost_payable " +
+                "FROM daily_purchase_reports WHERE report_id = ?", (rs, i) -> {
+            DailyPurchaseReport pr = new DailyPurchaseReport();
+            pr.setId(rs.getLong(1));
+            pr.setDistributorName(rs.getString(2));
+            pr.setTotalLoadReceived(rs.getDouble(3));
+            pr.setTotalCostPayable(rs.getDouble(4));
+            return pr;
+        }, reportId);
+
+        RowChanges<DailyPurchaseReport> changes = diffRows(stored, rows, DailyPurchaseReport::getDistributorName,
+                DailyPurchaseReport::getId, DailyPurchaseReport::setId, BulkWriteRepository::samePurchaseFigures);
+        List<DailyPurchaseReport> updates = changes.updates();
+        List<DailyPurchaseReport> inserts = changes.inserts();
+        int deleted = deleteByIds("daily_purchase_reports", changes.deletedIds());
+
+        jdbcTemplate.batchUpdate("UPDATE daily_purchase_reports SET total_load_received = ?, total_cost_payable = ? WHERE id = ?",
+                updates, BATCH_SIZE, (ps, pr) -> {
+                    ps.setDouble(1, pr.getTotalLoadReceived());
+                    ps.setDouble(2, pr.getTotalCostPayable());
+                    ps.setLong(3, pr.getId());
+                });
+        List<Number> ids = insertReturningIds(
+                "INSERT INTO daily_purchase_reports (report_id, distributor_name, total_load_received, total_cost_payable) VALUES (?, ?, ?, ?)",
+                inserts.size(), (ps, i) -> {
+                    DailyPurchaseReport pr = inserts.get(i);
+                    ps.setString(1, reportId);
+                    ps.setString(2, pr.getDistributorName());
+                    ps.setDouble(3, pr.getTotalLoadReceived());
+                    ps.setDouble(4, pr.getTotalCostPayable());
+                });
+        for (int i = 0; i < inserts.size(); i++) {
+            inserts.get(i).setId(ids.get(i).longValue());
+        }
+
+        Result result = new Result(inserts.size(), updates.size(), changes.skipped(), deleted);
+        log.info("Report {}: purchase rows {}", reportId, result);
+        return result;
+    }
+
+    /**
+     * Brings a day's vendor rows in line with {@code rows}, matched by vendor name: only new rows
+     * are inserted, changed rows updated and rows no longer present deleted. IDs are set on the given rows.
+     */
+    public Result syncVendorRows(String reportId, List<DailyVendorReport> rows) {
+        List<DailyVendorReport> stored = jdbcTemplate.query("SELECT id, vendor_name, gross_revenue, total_load_sold, cogs, net_profit, " +
+                "vendor_id, prev_balance, topup, end_balance FROM daily_vendor_reports WHERE report_id = ?", (rs, i) -> {
+            DailyVendorReport vr = new DailyVendorReport();
+            vr.setId(rs.getLong(1));
+            vr.setVendorName(rs.getString(2));
+            vr.setGrossRevenue(rs.getDouble(3));
+            vr.setTotalLoadSold(rs.getDouble(4));
+            vr.setCogs(rs.getDouble(5));
+            vr.setNetProfit(rs.getDouble(6));
+            vr.setVendorId(rs.getObject(7, Long.class));
+            vr.setPrevBalance(rs.getObject(8, Double.class));
+            vr.setTopup(rs.getObject(9, Double.class));
+            vr.setEndBalance(rs.getObject(10, Double.class));
+            return vr;
+        }, reportId);
+
+        RowChanges<DailyVendorReport> changes = diffRows(stored, rows, DailyVendorReport::getVendorName,
+                DailyVendorReport::getId, DailyVendorReport::setId, BulkWriteRepository::sameVendorFigures);
+        List<DailyVendorReport> updates = changes.updates();
+        List<DailyVendorReport> inserts = changes.inserts();
+        int deleted = deleteByIds("daily_vendor_reports", changes.deletedIds());
+
+        jdbcTemplate.batchUpdate("UPDATE daily_vendor_reports SET gross_revenue = ?, total_load_sold = ?, cogs = ?, net_profit = ?, " +
+                        "vendor_id = ?, prev_balance = ?, topup = ?, end_balance = ? WHERE id = ?",
+                updates, BATCH_SIZE, (ps, vr) -> {
+                    setVendorFigures(ps, 1, vr);
+                    ps.setLong(9, vr.getId());
+                });
+        List<Number> ids = insertReturningIds(
+                "INSERT INTO daily_vendor_reports (report_id, vendor_name, gross_revenue, total_load_sold, cogs, net_profit, " +
+                        "vendor_id, prev_balance, topup, end_balance) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                inserts.size(), (ps, i) -> {
+                    DailyVendorReport vr = inserts.get(i);
+                    ps.setString(1, reportId);
+                    ps.setString(2, vr.getVendorName());
+                    setVendorFigures(ps, 3, vr);
+                });
+        for (int i = 0; i < inserts.size(); i++) {
+            inserts.get(i).setId(ids.get(i).longValue());
+        }
+
+        Result result = new Result(inserts.size(), updates.size(), changes.skipped(), deleted);
+        log.info("Report {}: vendor rows {}", reportId, result);
+        return result;
+    }
+
+    /** Cost-factor dependent figures of every vendor row of a day. */
+    public List<VendorCost> findVendorCosts(String reportId) {
+        return jdbcTemplate.query("SELECT id, total_load_sold, gross_revenue, cogs, net_profit FROM daily_vendor_reports WHERE report_id = ?",
+                (rs, i) -> new VendorCost(rs.getLong(1), rs.getDouble(2), rs.getDouble(3), rs.getDouble(4), rs.getDouble(5)),
+                reportId);
+    }
+
+    /** Writes re-costed vendor rows (COGS and net profit only) in one batch. */
+    public void updateVendorCosts(List<VendorCost> rows) {
+        jdbcTemplate.batchUpdate("UPDATE daily_vendor_reports SET cogs = ?, net_profit = ? WHERE id = ?",
+                rows, BATCH_SIZE, (ps, vc) -> {
+                    ps.setDouble(1, vc.cogs());
+                    ps.setDouble(2, vc.netProfit());
+                    ps.setLong(3, vc.id());
+                });
+    }
+
+    /** What a sync writes: rows to insert and update, how many were left as they were, and IDs to delete. */
+    record RowChanges<T>(List<T> inserts, List<T> updates, int skipped, List<Long> deletedIds) {}
+
+    /**
+     * Matches new rows to stored ones by name (in order, where a name repeats). A matched row takes the
+     * stored row's ID and is updated only if its figures differ; unmatched new rows are inserted and
+     * unmatched stored rows deleted.
+     */
+    static <T> RowChanges<T> diffRows(List<T> stored, List<T> rows, Function<T, String> name, Function<T, Long> id,
+                                      BiConsumer<T, Long> setId, BiPredicate<T, T> sameFigures) {
+        Map<String, Deque<T>> unmatched = new HashMap<>();
+        for (T old : stored) {
+            unmatched.computeIfAbsent(name.apply(old), k -> new ArrayDeque<>()).add(old);
+        }
+
+        List<T> inserts = new ArrayList<>();
+        List<T> updates = new ArrayList<>();
+        int skipped = 0;
+        for (T row : rows) {
+            Deque<T> matches = unmatched.get(name.apply(row));
+            T old = (matches == null) ? null : matches.pollFirst();
+            if (old == null) {
+                inserts.add(row);
+                continue;
+            }
+            setId.accept(row, id.apply(old));
+            if (sameFigures.test(old, row)) {
+                skipped++;
+            } else {
+                updates.add(row);
+            }
+        }
+        return new RowChanges<>(inserts, updates, skipped, leftoverIds(unmatched, id));
+    }
+
+    static boolean samePurchaseFigures(DailyPurchaseReport a, DailyPurchaseReport b) {
+        return a.getTotalLoadReceived() == b.getTotalLoadReceived() && a.getTotalCostPayable() == b.getTotalCostPayable();
+    }
+
+    static boolean sameVendorFigures(DailyVendorReport a, DailyVendorReport b) {
+        return a.getGrossRevenue() == b.getGrossRevenue() && a.getTotalLoadSold() == b.getTotalLoadSold()
+                && a.getCogs() == b.getCogs() && a.getNetProfit() == b.getNetProfit()
+                && Objects.equals(a.getVendorId(), b.getVendorId()) && Objects.equals(a.getPrevBalance(), b.getPrevBalance())
+                && Objects.equals(a.getTopup(), b.getTopup()) && Objects.equals(a.getEndBalance(), b.getEndBalance());
+    }
+
+    // Sets gross revenue through end balance (8 parameters) starting at parameter {@code first}
+    private static void setVendorFigures(PreparedStatement ps, int first, DailyVendorReport vr) throws SQLException {
+        ps.setDouble(first, vr.getGrossRevenue());
+        ps.setDouble(first + 1, vr.getTotalLoadSold());
+        ps.setDouble(first + 2, vr.getCogs());
+        ps.setDouble(first + 3, vr.getNetProfit());
+        ps.setObject(first + 4, vr.getVendorId(), Types.BIGINT);
+        ps.setObject(first + 5, vr.getPrevBalance(), Types.DOUBLE);
+        ps.setObject(first + 6, vr.getTopup(), Types.DOUBLE);
+        ps.setObject(first + 7, vr.getEndBalance(), Types.DOUBLE);
+    }
+
+    private static <T> List<Long> leftoverIds(Map<String, Deque<T>> unmatched, Function<T, Long> id) {
+        List<Long> ids = new ArrayList<>();
+        unmatched.values().forEach(rows -> rows.forEach(row -> ids.add(id.apply(row))));
+        return ids;
+    }
+
+    // table is one of our own constants, never user input
+    private int deleteByIds(String table, List<Long> ids) {
+        if (ids.isEmpty()) return 0;
+        return jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement("DELETE FROM " + table + " WHERE id = ANY(?)");
+            ps.setArray(1, con.createArrayOf("bigint", ids.toArray()));
+            return ps;
+        });
+    }
+
+    private interface RowSetter {
+        void set(PreparedStatement ps, int i) throws SQLException;
+    }
+
+    private List<Number> insertReturningIds(String sql, int count, RowSetter setter) {
+        if (count == 0) return List.of();
+        GeneratedKeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(con -> con.prepareStatement(sql, new String[]{"id"}), new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                setter.set(ps, i);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return count;
+            }
+        }, keys);
+        return keys.getKeyList().stream().map(k -> (Number) k.get("id")).toList();
+    }
+}
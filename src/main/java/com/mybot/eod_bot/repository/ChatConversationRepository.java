@@ -0,0 +1,19 @@
+package com.mybot.eod_bot.repository;
+
+import com.mybot.eod_bot.model.ChatConversation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+@Repository
+public interface ChatConversationRepository extends JpaRepository<ChatConversation, Long> {
+
+    @Transactional
+    @Modifying
+    @Query("delete from ChatConversation c where c.updatedAt < :cutoff")
+    int deleteIdleSince(Instant cutoff);
+}
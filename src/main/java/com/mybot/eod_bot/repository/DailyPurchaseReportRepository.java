@@ -1,9 +1,39 @@
 package com.mybot.eod_bot.repository; // <-- CORRECTED PACKAGE
 
 import com.mybot.eod_bot.model.DailyPurchaseReport;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
+
 @Repository
 public interface DailyPurchaseReportRepository extends JpaRepository<DailyPurchaseReport, Long> {
+
+    @Query("select p.distributorName as distributorName, p.totalLoadReceived as totalLoadReceived, " +
+            "p.totalCostPayable as totalCostPayable " +
+            "from DailyPurchaseReport p where p.dailyReport.date = :date order by p.id")
+    List<PurchaseLine> findLinesByDate(LocalDate date);
+
+    // For range exports: rows are read through a cursor, so call it inside a read-only transaction
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select p.dailyReport.date as date, p.distributorName as distributorName, " +
+            "p.totalLoadReceived as totalLoadReceived, p.totalCostPayable as totalCostPayable " +
+            "from DailyPurchaseReport p where p.dailyReport.date between :from and :to order by p.dailyReport.date, p.id")
+    Stream<DatedPurchaseLine> streamLinesBetween(LocalDate from, LocalDate to);
+
+    interface PurchaseLine {
+        String getDistributorName();
+        double getTotalLoadReceived();
+        double getTotalCostPayable();
+    }
+
+    interface DatedPurchaseLine extends PurchaseLine {
+        LocalDate getDate();
+    }
 }
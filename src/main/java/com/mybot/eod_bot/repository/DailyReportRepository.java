@@ -1,12 +1,17 @@
 package com.mybot.eod_bot.repository;
 
 import com.mybot.eod_bot.model.DailyReport;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
 import java.util.List; // <-- Import List
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface DailyReportRepository extends JpaRepository<DailyReport, String> { // ID is String
@@ -14,4 +19,31 @@ public interface DailyReportRepository extends JpaRepository<DailyReport, String
 
     // NEW: Find all reports between two dates
     List<DailyReport> findByDateBetween(LocalDate startDate, LocalDate endDate);
-}
\ No newline at end of file
+
+    // --- Read model: just the columns the reports print ---
+    @Query("select r.date as date, r.hasPurchaseData as hasPurchaseData, r.hasSalesData as hasSalesData, " +
+            "r.masterCostFactor as masterCostFactor, r.totalGrossRevenue as totalGrossRevenue, " +
+            "r.totalCogs as totalCogs, r.totalNetProfit as totalNetProfit " +
+            "from DailyReport r where r.date = :date")
+    Optional<DailySummary> findSummaryByDate(LocalDate date);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select r.date as date, r.hasPurchaseData as hasPurchaseData, r.hasSalesData as hasSalesData, " +
+            "r.masterCostFactor as masterCostFactor, r.totalGrossRevenue as totalGrossRevenue, " +
+            "r.totalCogs as totalCogs, r.totalNetProfit as totalNetProfit " +
+            "from DailyReport r where r.date between :from and :to order by r.date")
+    Stream<DailySummary> streamSummariesBetween(LocalDate from, LocalDate to);
+
+    @Query("select r.date from DailyReport r order by r.date")
+    List<LocalDate> findAllDates();
+
+    interface DailySummary {
+        LocalDate getDate();
+        boolean getHasPurchaseData();
+        boolean getHasSalesData();
+        double getMasterCostFactor();
+        double getTotalGrossRevenue();
+        double getTotalCogs();
+        double getTotalNetProfit();
+    }
+}
@@ -1,9 +1,41 @@
 package com.mybot.eod_bot.repository; // <-- CORRECTED PACKAGE
 
 import com.mybot.eod_bot.model.DailyVendorReport;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
+
 @Repository
 public interface DailyVendorReportRepository extends JpaRepository<DailyVendorReport, Long> {
+
+    @Query("select v.vendorName as vendorName, v.grossRevenue as grossRevenue, v.totalLoadSold as totalLoadSold, " +
+            "v.cogs as cogs, v.netProfit as netProfit " +
+            "from DailyVendorReport v where v.dailyReport.date = :date order by v.id")
+    List<VendorLine> findLinesByDate(LocalDate date);
+
+    // For range exports: rows are read through a cursor, so call it inside a read-only transaction
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select v.dailyReport.date as date, v.vendorName as vendorName, v.grossRevenue as grossRevenue, " +
+            "v.totalLoadSold as totalLoadSold, v.cogs as cogs, v.netProfit as netProfit " +
+            "from DailyVendorReport v where v.dailyReport.date between :from and :to order by v.dailyReport.date, v.id")
+    Stream<DatedVendorLine> streamLinesBetween(LocalDate from, LocalDate to);
+
+    interface VendorLine {
+        String getVendorName();
+        double getGrossRevenue();
+        double getTotalLoadSold();
+        double getCogs();
+        double getNetProfit();
+    }
+
+    interface DatedVendorLine extends VendorLine {
+        LocalDate getDate();
+    }
 }
@@ -3,6 +3,7 @@ package com.mybot.eod_bot.repository;
 import com.mybot.eod_bot.model.Distributor;
 import com.mybot.eod_bot.model.LapuSim;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -15,4 +16,17 @@ public interface LapuSimRepository extends JpaRepository<LapuSim, String> { // I
 
     // NEW: Delete all SIMs associated with a distributor
     void deleteAllByDistributor(Distributor distributor);
-}
\ No newline at end of file
+
+    // Only the numbers, for /list_sims
+    @Query("select s.lapuNo from LapuSim s where s.distributor.id = :distributorId order by s.lapuNo")
+    List<String> findLapuNosByDistributorId(Long distributorId);
+
+    // Just the two columns the routing index needs, without loading Distributor entities
+    @Query("select s.lapuNo as lapuNo, s.distributor.id as distributorId from LapuSim s")
+    List<SimAssignment> findAllAssignments();
+
+    interface SimAssignment {
+        String getLapuNo();
+        Long getDistributorId();
+    }
+}
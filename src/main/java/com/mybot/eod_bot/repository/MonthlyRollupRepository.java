@@ -0,0 +1,9 @@
+package com.mybot.eod_bot.repository;
+
+import com.mybot.eod_bot.model.MonthlyRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface MonthlyRollupRepository extends JpaRepository<MonthlyRollup, String> { // ID is "YYYY-MM"
+}
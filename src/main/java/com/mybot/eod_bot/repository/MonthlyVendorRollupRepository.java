@@ -0,0 +1,19 @@
+package com.mybot.eod_bot.repository;
+
+import com.mybot.eod_bot.model.MonthlyVendorRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface MonthlyVendorRollupRepository extends JpaRepository<MonthlyVendorRollup, Long> {
+    List<MonthlyVendorRollup> findByMonth(String month);
+
+    // One statement: a derived deleteBy loads each row and deletes it on its own
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from MonthlyVendorRollup r where r.month = ?1")
+    void deleteByMonth(String month);
+}
@@ -0,0 +1,18 @@
+package com.mybot.eod_bot.repository;
+
+import com.mybot.eod_bot.model.PricingVersion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface PricingVersionRepository extends JpaRepository<PricingVersion, Long> {
+
+    Optional<PricingVersion> findFirstByOrderByVersionDesc();
+
+    // Cheap check for a newer version without reading its rates
+    @Query("select max(p.version) from PricingVersion p")
+    Long findLatestVersion();
+}
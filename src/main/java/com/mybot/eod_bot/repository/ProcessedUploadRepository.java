@@ -0,0 +1,16 @@
+package com.mybot.eod_bot.repository;
+
+import com.mybot.eod_bot.model.ProcessedUpload;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+@Repository
+public interface ProcessedUploadRepository extends JpaRepository<ProcessedUpload, Long> {
+
+    Optional<ProcessedUpload> findByFileUniqueIdAndReportDate(String fileUniqueId, LocalDate reportDate);
+
+    Optional<ProcessedUpload> findFirstByContentSha256AndReportDateOrderByProcessedAtDesc(String contentSha256, LocalDate reportDate);
+}
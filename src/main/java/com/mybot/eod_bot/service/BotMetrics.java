@@ -0,0 +1,142 @@
+package com.mybot.eod_bot.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Names and records the bot's metrics (served at /actuator/prometheus). Timers carry an
+ * {@code outcome} tag so slow and failing calls can be told apart; the queues, caches and
+ * ledger are exposed as gauges read at scrape time.
+ */
+@Service
+public class BotMetrics {
+
+    private final MeterRegistry registry;
+    private final DistributionSummary downloadBytes;
+    private final DistributionSummary parseRows;
+    private final Counter skippedRows;
+    private final Counter unassignedSims;
+    private final Counter malformedCells;
+
+    public BotMetrics(MeterRegistry registry,
+                      UploadJobQueue uploadJobQueue,
+                      ConversationService conversationService,
+                      UploadLedgerService uploadLedgerService,
+                      PricingService pricingService) {
+        this.registry = registry;
+        this.downloadBytes = DistributionSummary.builder("eodbot.telegram.download.size")
+                .description("Size of files downloaded from Telegram").baseUnit("bytes").register(registry);
+        this.parseRows = DistributionSummary.builder("eodbot.parse.rows")
+                .description("Data rows per parsed statement").register(registry);
+        this.skippedRows = Counter.builder("eodbot.parse.skipped.rows")
+                .description("Statement rows skipped as malformed").register(registry);
+        this.unassignedSims = Counter.builder("eodbot.parse.unassigned.sims")
+                .description("Statement rows whose SIM is not assigned to a distributor").register(registry);
+        this.malformedCells = Counter.builder("eodbot.parse.malformed.cells")
+                .description("Numeric statement cells counted as 0").register(registry);
+
+        gauge("eodbot.uploads.pending", "Uploads waiting for a worker", () -> uploadJobQueue.stats().pending());
+        gauge("eodbot.uploads.running", "Uploads being processed", () -> uploadJobQueue.stats().running());
+        gauge("eodbot.uploads.failed", "Uploads that failed since startup", () -> uploadJobQueue.stats().failed());
+        gauge("eodbot.uploads.duplicates", "Statements answered from the processed-uploads ledger", uploadLedgerService::duplicates);
+        gauge("eodbot.conversations.active", "Chats in a multi-step conversation", () -> conversationService.stats().size());
+        gauge("eodbot.pricing.version", "Pricing version in force", () -> pricingService.current().version());
+    }
+
+    /** Registers a gauge read from {@code value} at scrape time. */
+    public void gauge(String name, String description, Supplier<Number> value) {
+        Gauge.builder(name, value).description(description).register(registry);
+    }
+
+    /**
+     * One handled update.
+     * @param type message, command, callback or document
+     * @param command the command for commands, otherwise "none"
+     */
+    public void update(String type, String command, boolean ok, long nanos) {
+        Timer.builder("eodbot.updates")
+                .description("Time to handle an update from Telegram")
+                .tag("type", type)
+                .tag("command", command)
+                .tag("outcome", ok ? "ok" : "error")
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * One call to the Telegram Bot API.
+     * @param outcome ok, throttled (HTTP 429) or error
+     */
+    public void telegramCall(String method, String outcome, long nanos) {
+        Timer.builder("eodbot.telegram.calls")
+                .description("Latency of Telegram Bot API calls")
+                .tag("method", method)
+                .tag("outcome", outcome)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** One file download from Telegram's file server, recorded when the download is closed. */
+    public void download(long bytes, boolean ok, long nanos) {
+        Timer.builder("eodbot.telegram.download")
+                .description("Time to download a file from Telegram")
+                .tag("outcome", ok ? "ok" : "error")
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        if (ok) downloadBytes.record(bytes);
+    }
+
+    public interface ParseCall {
+        ExcelParserService.PurchaseParseResult parse() throws Exception;
+    }
+
+    /** Runs and times a statement parse, counting what it read. */
+    public ExcelParserService.PurchaseParseResult parse(ParseCall call) throws Exception {
+        long started = System.nanoTime();
+        boolean ok = false;
+        try {
+            ExcelParserService.PurchaseParseResult result = call.parse();
+            parseRows.record(result.rows);
+            skippedRows.increment(result.skippedRows);
+            unassignedSims.increment(result.unassignedSims.size());
+            malformedCells.increment(result.malformedCells);
+            ok = true;
+            return result;
+        } finally {
+            Timer.builder("eodbot.parse.duration")
+                    .description("Time to parse a purchase statement")
+                    .tag("outcome", ok ? "ok" : "error")
+                    .register(registry)
+                    .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Times the current transaction from now until it completes, commit or rollback included.
+     * Does nothing outside a transaction.
+     */
+    public void timeTransaction(String operation) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+        long started = System.nanoTime();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                Timer.builder("eodbot.report.transactions")
+                        .description("Duration of report write transactions")
+                        .tag("operation", operation)
+                        .tag("outcome", status == STATUS_COMMITTED ? "committed" : "rolled_back")
+                        .register(registry)
+                        .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            }
+        });
+    }
+}
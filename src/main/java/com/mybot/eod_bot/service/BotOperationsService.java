@@ -1,8 +1,8 @@
 package com.mybot.eod_bot.service;
 
 import com.mybot.eod_bot.model.Distributor;
-import com.mybot.eod_bot.model.LapuSim;
 import com.mybot.eod_bot.model.Vendor;
+import com.mybot.eod_bot.repository.BulkWriteRepository;
 import com.mybot.eod_bot.repository.DistributorRepository;
 import com.mybot.eod_bot.repository.LapuSimRepository;
 import com.mybot.eod_bot.repository.VendorRepository;
@@ -10,6 +10,8 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -26,32 +28,42 @@ public class BotOperationsService {
     private final DistributorRepository distributorRepository;
     private final VendorRepository vendorRepository;
     private final LapuSimRepository lapuSimRepository;
+    private final BulkWriteRepository bulkWriteRepository;
+    private final SimRoutingIndex simRoutingIndex;
+    private final VendorBalanceCache vendorBalanceCache;
+    private final PricingService pricingService;
+    private final ClusterCoordinator clusterCoordinator;
 
     @Transactional
     public Distributor saveNewDistributor(Distributor dist) {
         log.info("Saving new distributor: {}", dist.getName());
-        return distributorRepository.save(dist);
+        Distributor saved = distributorRepository.save(dist);
+        repriceAfterCommit("added distributor " + saved.getName());
+        return saved;
     }
 
     @Transactional
     public Vendor saveNewVendor(Vendor vendor) {
         log.info("Saving new vendor: {}", vendor.getName());
-        return vendorRepository.save(vendor);
+        Vendor saved = vendorRepository.save(vendor);
+        repriceAfterCommit("added vendor " + saved.getName());
+        return saved;
     }
 
     @Transactional
-    public List<LapuSim> saveBatchSims(Distributor assignedDist, String[] simNumbers) {
+    public BulkWriteRepository.Result saveBatchSims(Distributor assignedDist, String[] simNumbers) {
         log.info("Assigning {} SIMs to {}", simNumbers.length, assignedDist.getName());
-        List<LapuSim> simsToSave = new ArrayList<>();
+        List<String> lapuNos = new ArrayList<>();
         for (String num : simNumbers) {
             if (num.trim().isEmpty()) continue; // Skip empty entries
-
-            LapuSim sim = new LapuSim();
-            sim.setLapuNo(num.trim());
-            sim.setDistributor(assignedDist);
-            simsToSave.add(sim);
+            lapuNos.add(num.trim());
         }
-        return lapuSimRepository.saveAll(simsToSave);
+        // One lookup and one batched upsert instead of a SELECT + INSERT per SIM
+        BulkWriteRepository.Result result = bulkWriteRepository.upsertSims(assignedDist.getId(), lapuNos);
+
+        clusterCoordinator.bump(SimRoutingIndex.EPOCH);
+        afterCommit(() -> simRoutingIndex.assign(assignedDist, lapuNos));
+        return result;
     }
 
     @Transactional
@@ -61,6 +73,8 @@ public class BotOperationsService {
             throw new RuntimeException("SIM `" + lapuNo + "` not found in database.");
         }
         lapuSimRepository.deleteById(lapuNo);
+        clusterCoordinator.bump(SimRoutingIndex.EPOCH);
+        afterCommit(() -> simRoutingIndex.unassign(lapuNo));
     }
 
     @Transactional
@@ -70,11 +84,32 @@ public class BotOperationsService {
 
         log.info("Deleting distributor: {}", dist.getName());
         distributorRepository.delete(dist);
+        repriceAfterCommit("deleted distributor " + dist.getName());
+        clusterCoordinator.bump(SimRoutingIndex.EPOCH);
+        afterCommit(() -> simRoutingIndex.removeDistributor(dist.getId()));
     }
 
     @Transactional
     public void confirmDeleteVendor(Vendor vendor) {
         log.info("Deleting vendor: {}", vendor.getName());
         vendorRepository.delete(vendor);
+        repriceAfterCommit("deleted vendor " + vendor.getName());
+        afterCommit(() -> vendorBalanceCache.forgetVendor(vendor.getId()));
+    }
+
+    // The new pricing version commits with the change; only then does it come into force
+    private void repriceAfterCommit(String reason) {
+        PricingSnapshot next = pricingService.prepare(reason);
+        afterCommit(() -> pricingService.publish(next));
+    }
+
+    // In-memory indexes must only see changes that actually reached the database
+    private void afterCommit(Runnable action) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 }
@@ -0,0 +1,40 @@
+package com.mybot.eod_bot.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+
+/**
+ * "Today" for the business, in {@code eodbot.business-zone} rather than the server's time zone,
+ * so every node files an upload made just after midnight under the same day.
+ */
+@Slf4j
+@Service
+public class BusinessClock {
+
+    private final Clock clock;
+
+    @Autowired
+    public BusinessClock(@Value("${eodbot.business-zone:}") String zone) {
+        this(Clock.system(zone.isBlank() ? ZoneId.systemDefault() : ZoneId.of(zone)));
+        log.info("Business days run in {}", clock.getZone());
+    }
+
+    BusinessClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    public LocalDate today() {
+        return LocalDate.now(clock);
+    }
+
+    public YearMonth thisMonth() {
+        return YearMonth.now(clock);
+    }
+}
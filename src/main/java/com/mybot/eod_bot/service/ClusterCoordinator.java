@@ -0,0 +1,180 @@
+package com.mybot.eod_bot.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Lets several instances of the bot share one database, with {@code eodbot.cluster.enabled=true}.
+ * Coordination goes through Postgres only:
+ * <ul>
+ *   <li>a session advisory lock per chat, so a chat's updates are handled one at a time across nodes;</li>
+ *   <li>rows in cluster_claims for work exactly one node may do (an update, an upload);</li>
+ *   <li>epochs in cache_epochs, so a node notices that data it keeps in memory changed elsewhere.</li>
+ * </ul>
+ * The month lock is taken on a single node too, where upload workers and chat lanes also run in parallel.
+ */
+@Slf4j
+@Service
+public class ClusterCoordinator {
+
+    // First key of the two-int advisory locks taken inside transactions (chat locks use the bigint space)
+    private static final int MONTH_LOCKS = 1;
+    private static final long PURGE_INTERVAL_NANOS = Duration.ofMinutes(1).toNanos();
+    private static final long CHAT_LOCK_POLL_MILLIS = 50;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSource dataSource;
+    private final boolean enabled;
+    private final String nodeId;
+    private final Duration chatLockTimeout;
+    private volatile long lastPurge = System.nanoTime();
+
+    public ClusterCoordinator(JdbcTemplate jdbcTemplate,
+                              DataSource dataSource,
+                              @Value("${eodbot.cluster.enabled:false}") boolean enabled,
+                              @Value("${eodbot.cluster.node-id:}") String nodeId,
+                              @Value("${eodbot.cluster.chat-lock-timeout:PT60S}") Duration chatLockTimeout,
+                              @Value("${eodbot.receive-mode:polling}") String receiveMode,
+                              @Value("${eodbot.conversation.store:memory}") String conversationStore) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSource = dataSource;
+        this.enabled = enabled;
+        this.nodeId = nodeId.isBlank() ? ManagementFactory.getRuntimeMXBean().getName() : nodeId;
+        this.chatLockTimeout = chatLockTimeout;
+        if (enabled) {
+            // Telegram hands updates to one long-polling consumer only; conversations must outlive a node
+            if (!"webhook".equalsIgnoreCase(receiveMode)) {
+                throw new IllegalStateException("eodbot.cluster.enabled needs eodbot.receive-mode=webhook");
+            }
+            if (!"jdbc".equalsIgnoreCase(conversationStore)) {
+                throw new IllegalStateException("eodbot.cluster.enabled needs eodbot.conversation.store=jdbc");
+            }
+            log.info("Cluster mode: node {}", this.nodeId);
+        }
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    // --- Per-chat lock ---
+
+    /**
+     * Runs {@code work} holding the chat's lock, which no other node can take meanwhile.
+     * The lock lives on a connection of its own, outside any transaction {@code work} opens.
+     * Without clustering this just runs {@code work}: the chat's lane already orders its updates.
+     */
+    public <T> T withChatLock(long chatId, Supplier<T> work) {
+        if (!enabled) return work.get();
+        try (Connection connection = dataSource.getConnection()) {
+            lockChat(connection, chatId);
+            try {
+                return work.get();
+            } finally {
+                try (PreparedStatement ps = connection.prepareStatement("SELECT pg_advisory_unlock(?)")) {
+                    ps.setLong(1, chatId);
+                    ps.execute();
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot lock chat " + chatId + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void lockChat(Connection connection, long chatId) throws SQLException {
+        long deadline = System.nanoTime() + chatLockTimeout.toNanos();
+        try (PreparedStatement ps = connection.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+            ps.setLong(1, chatId);
+            while (true) {
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    if (rs.getBoolean(1)) return;
+                }
+                if (System.nanoTime() - deadline > 0) {
+                    throw new IllegalStateException("Chat " + chatId + " has been busy on another node for " + chatLockTimeout.toSeconds() + " s");
+                }
+                try {
+                    Thread.sleep(CHAT_LOCK_POLL_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted waiting for chat " + chatId);
+                }
+            }
+        }
+    }
+
+    // --- Month lock ---
+
+    /**
+     * Serialises writers of a month's rollups until the current transaction ends, so two days of the
+     * same month saved at once (on any node) cannot overwrite each other's rollup deltas.
+     */
+    public void lockMonth(YearMonth month) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("The month lock is only held inside a transaction");
+        }
+        jdbcTemplate.query("SELECT pg_advisory_xact_lock(?, ?)", rs -> {}, MONTH_LOCKS, month.getYear() * 100 + month.getMonthValue());
+    }
+
+    // --- Claims ---
+
+    /**
+     * Claims {@code key} for this node for {@code ttl}. Without clustering there is nothing to claim
+     * against and this returns true.
+     * @return false if another node (or this one) holds an unexpired claim on it
+     */
+    public boolean claim(String key, Duration ttl) {
+        if (!enabled) return true;
+        purgeIfDue();
+        // Expiry is taken from the database clock, the one clock all nodes share
+        int claimed = jdbcTemplate.update(
+                "INSERT INTO cluster_claims (claim_key, node_id, expires_at) VALUES (?, ?, now() + make_interval(secs => ?)) " +
+                        "ON CONFLICT (claim_key) DO UPDATE SET node_id = EXCLUDED.node_id, expires_at = EXCLUDED.expires_at " +
+                        "WHERE cluster_claims.expires_at < now()",
+                key, nodeId, (double) ttl.toSeconds());
+        return claimed == 1;
+    }
+
+    /** Gives up a claim this node holds. */
+    public void release(String key) {
+        if (!enabled) return;
+        jdbcTemplate.update("DELETE FROM cluster_claims WHERE claim_key = ? AND node_id = ?", key, nodeId);
+    }
+
+    private void purgeIfDue() {
+        long now = System.nanoTime();
+        if (now - lastPurge < PURGE_INTERVAL_NANOS) return;
+        lastPurge = now;
+        int purged = jdbcTemplate.update("DELETE FROM cluster_claims WHERE expires_at < now()");
+        if (purged > 0) log.debug("Purged {} expired claim(s)", purged);
+    }
+
+    // --- Cache epochs ---
+
+    /** Marks {@code name} as changed, in the caller's transaction. A no-op without clustering. */
+    public void bump(String name) {
+        if (!enabled) return;
+        jdbcTemplate.update("INSERT INTO cache_epochs (name, epoch) VALUES (?, 1) " +
+                "ON CONFLICT (name) DO UPDATE SET epoch = cache_epochs.epoch + 1", name);
+    }
+
+    /** @return how many times {@code name} has changed (0 if never) */
+    public long epoch(String name) {
+        List<Long> epoch = jdbcTemplate.queryForList("SELECT epoch FROM cache_epochs WHERE name = ?", Long.class, name);
+        return epoch.isEmpty() ? 0 : epoch.get(0);
+    }
+}
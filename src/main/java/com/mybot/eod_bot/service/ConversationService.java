@@ -1,30 +1,47 @@
 package com.mybot.eod_bot.service; // <-- CORRECTED PACKAGE
 
+import com.mybot.eod_bot.model.ChatSession;
+import com.mybot.eod_bot.model.ChatState;
+import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Manages the "state" of a chat conversation in memory.
+ * Manages the "state" of a chat conversation.
  * This allows the bot to ask multi-step questions.
+ * Where sessions live (memory or database) is up to the {@link ConversationStateStore}.
  */
 @Service
+@RequiredArgsConstructor
 public class ConversationService {
-    // Map<ChatID, State> (e.g., "AWAIT_DIST_NAME")
-    private final Map<Long, String> userState = new ConcurrentHashMap<>();
-    // Map<ChatID, TemporaryObject> (e.g., a half-built Distributor)
-    private final Map<Long, Object> userTempData = new ConcurrentHashMap<>();
+    // ChatID -> session (e.g., AWAIT_DIST_NAME with nothing collected yet)
+    private final ConversationStateStore store;
+
+    /** @return the chat's session, or null if it is not in a conversation */
+    public ChatSession get(long chatId) {
+        return store.get(chatId);
+    }
+
+    public ChatState getState(long chatId) {
+        ChatSession session = store.get(chatId);
+        return session == null ? null : session.getState();
+    }
+
+    /** Starts (or replaces) the chat's conversation. */
+    public void save(long chatId, ChatSession session) {
+        store.put(chatId, session);
+    }
+
+    /** Moves a conversation to its next step, keeping what it has collected so far. */
+    public void moveTo(long chatId, ChatSession session, ChatState next) {
+        session.setState(next);
+        store.put(chatId, session);
+    }
 
-    public void setState(long chatId, String state) { userState.put(chatId, state); }
-    public String getState(long chatId) { return userState.get(chatId); }
     public void clearState(long chatId) {
-        userState.remove(chatId);
-        userTempData.remove(chatId);
+        store.remove(chatId);
     }
-    public void setTempData(long chatId, Object data) { userTempData.put(chatId, data); }
 
-    @SuppressWarnings("unchecked")
-    public <T> T getTempData(long chatId, Class<T> type) {
-        return (T) userTempData.get(chatId);
+    public ConversationStateStore.Stats stats() {
+        return store.stats();
     }
 }
@@ -0,0 +1,22 @@
+package com.mybot.eod_bot.service;
+
+import com.mybot.eod_bot.model.ChatSession;
+
+/**
+ * Where {@link ConversationService} keeps each chat's session.
+ * Picked with {@code eodbot.conversation.store}: {@code memory} (default) or {@code jdbc}.
+ * Sessions idle for longer than {@code eodbot.conversation.idle-ttl} are evicted.
+ */
+public interface ConversationStateStore {
+
+    record Stats(int size, long hits, long misses, long evictions) {}
+
+    /** @return the chat's session, or null if it has none or it expired */
+    ChatSession get(long chatId);
+
+    void put(long chatId, ChatSession session);
+
+    void remove(long chatId);
+
+    Stats stats();
+}
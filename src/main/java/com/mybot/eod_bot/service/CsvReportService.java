@@ -1,25 +1,94 @@
 package com.mybot.eod_bot.service;
 
-import com.mybot.eod_bot.model.DailyReport;
+import com.mybot.eod_bot.model.MonthlyDistributorRollup;
+import com.mybot.eod_bot.model.MonthlyVendorRollup;
+import com.mybot.eod_bot.repository.DailyPurchaseReportRepository;
+import com.mybot.eod_bot.repository.DailyReportRepository;
+import com.mybot.eod_bot.repository.DailyVendorReportRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.io.File;
-import java.io.FileWriter;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.util.List;
-import java.util.Map;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
+/**
+ * Renders reports as CSV straight into memory or a pipe; nothing is written to disk.
+ * Any write error fails the export instead of leaving a half-written file behind.
+ */
+@Slf4j
 @Service
 public class CsvReportService {
 
+    private static final int PIPE_BUFFER = 64 * 1024;
+
+    private final DailyReportRepository dailyReportRepository;
+    private final DailyVendorReportRepository vendorReportRepository;
+    private final DailyPurchaseReportRepository purchaseReportRepository;
+    private final TransactionTemplate readOnlyTx;
+    private final Duration exportTimeout;
+    private final ExecutorService exportWriters;
+    private final ScheduledExecutorService exportDeadlines;
+
+    public CsvReportService(DailyReportRepository dailyReportRepository,
+                            DailyVendorReportRepository vendorReportRepository,
+                            DailyPurchaseReportRepository purchaseReportRepository,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${eodbot.export.timeout:PT10M}") Duration exportTimeout) {
+        this.dailyReportRepository = dailyReportRepository;
+        this.vendorReportRepository = vendorReportRepository;
+        this.purchaseReportRepository = purchaseReportRepository;
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+        // Also bounds each query, for a cursor that stalls in the database rather than in the pipe
+        this.readOnlyTx.setTimeout((int) Math.max(1, exportTimeout.toSeconds()));
+        this.exportTimeout = exportTimeout;
+        AtomicInteger counter = new AtomicInteger();
+        this.exportWriters = Executors.newFixedThreadPool(2, r -> {
+            Thread t = new Thread(r, "csv-export-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.exportDeadlines = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "csv-export-deadline");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
     /**
-     * Creates a temporary CSV file for a single day's report
+     * CSV for a single day's report. A day is a few dozen rows, so it is rendered in memory.
      */
-    public File generateDailyReportCsv(DailyReport report) throws IOException {
-        File tempFile = File.createTempFile("daily_report_" + report.getDate(), ".csv");
-        try (CSVPrinter printer = new CSVPrinter(new FileWriter(tempFile), CSVFormat.DEFAULT)) {
+    public InputStream dailyReportCsv(ReportService.DailyView view) throws IOException {
+        DailyReportRepository.DailySummary report = view.summary();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        try (CSVPrinter printer = printer(out)) {
 
             // P&L Section
             printer.printRecord("P&L Summary", "Amount");
@@ -31,90 +100,229 @@ public class CsvReportService {
 
             // Per-Vendor Sales & Profit
             printer.printRecord("Vendor Sales & Profit", "Gross Revenue", "Total Load Sold", "COGS", "Net Profit");
-            if (report.getVendorReports() != null) {
-                report.getVendorReports().forEach(vr -> {
-                    try {
-                        printer.printRecord(
-                                vr.getVendorName(),
-                                vr.getGrossRevenue(),
-                                vr.getTotalLoadSold(),
-                                vr.getCogs(),
-                                vr.getNetProfit()
-                        );
-                    } catch (IOException e) {
-                        // Handle exception
-                    }
-                });
+            for (DailyVendorReportRepository.VendorLine vr : view.vendorLines()) {
+                printer.printRecord(
+                        vr.getVendorName(),
+                        vr.getGrossRevenue(),
+                        vr.getTotalLoadSold(),
+                        vr.getCogs(),
+                        vr.getNetProfit()
+                );
             }
             printer.printRecord(); // Empty line
 
             // Per-Distributor Purchases
             printer.printRecord("Distributor Purchases", "Total Load Received", "Total Cost Payable");
-            if (report.getPurchaseReports() != null) {
-                report.getPurchaseReports().forEach(pr -> {
-                    try {
-                        printer.printRecord(
-                                pr.getDistributorName(),
-                                pr.getTotalLoadReceived(),
-                                pr.getTotalCostPayable()
-                        );
-                    } catch (IOException e) {
-                        // Handle exception
-                    }
-                });
+            for (DailyPurchaseReportRepository.PurchaseLine pr : view.purchaseLines()) {
+                printer.printRecord(
+                        pr.getDistributorName(),
+                        pr.getTotalLoadReceived(),
+                        pr.getTotalCostPayable()
+                );
             }
         }
-        return tempFile;
+        return new ByteArrayInputStream(out.toByteArray());
     }
 
     /**
-     * Creates a temporary CSV file for a full month's aggregated report
+     * CSV for a full month's aggregated report, rendered in memory from the rollups.
      */
-    public File generateMonthlyReportCsv(List<DailyReport> reports, String month) throws IOException {
-        File tempFile = File.createTempFile("monthly_report_" + month, ".csv");
-
-        // Aggregate data
-        double totalProfit = 0, totalRevenue = 0, totalCogs = 0;
-        Map<String, Double> vendorProfits = new java.util.HashMap<>();
-        Map<String, Double> distCosts = new java.util.HashMap<>();
-
-        for (DailyReport report : reports) {
-            if (report.isHasPurchaseData() && report.isHasSalesData()) {
-                totalProfit += report.getTotalNetProfit();
-                totalRevenue += report.getTotalGrossRevenue();
-                totalCogs += report.getTotalCogs();
-
-                report.getVendorReports().forEach(vr ->
-                        vendorProfits.merge(vr.getVendorName(), vr.getNetProfit(), Double::sum)
-                );
-                report.getPurchaseReports().forEach(pr ->
-                        distCosts.merge(pr.getDistributorName(), pr.getTotalCostPayable(), Double::sum)
-                );
-            }
-        }
-
-        try (CSVPrinter printer = new CSVPrinter(new FileWriter(tempFile), CSVFormat.DEFAULT)) {
+    public InputStream monthlyReportCsv(MonthlyRollupService.MonthlyView view, String month) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        try (CSVPrinter printer = printer(out)) {
             // P&L Section
             printer.printRecord("Monthly P&L Summary", "Amount");
             printer.printRecord("Month", month);
-            printer.printRecord("Total Gross Revenue", totalRevenue);
-            printer.printRecord("Total COGS", totalCogs);
-            printer.printRecord("Total Net Profit", totalProfit);
+            printer.printRecord("Total Gross Revenue", view.totals().getTotalGrossRevenue());
+            printer.printRecord("Total COGS", view.totals().getTotalCogs());
+            printer.printRecord("Total Net Profit", view.totals().getTotalNetProfit());
             printer.printRecord(); // Empty line
 
             // Per-Vendor Sales & Profit
             printer.printRecord("Vendor Total Profit", "Net Profit");
-            for (Map.Entry<String, Double> entry : vendorProfits.entrySet()) {
-                printer.printRecord(entry.getKey(), entry.getValue());
+            for (MonthlyVendorRollup vr : view.vendors()) {
+                printer.printRecord(vr.getVendorName(), vr.getNetProfit());
             }
             printer.printRecord(); // Empty line
 
             // Per-Distributor Purchases
             printer.printRecord("Distributor Total Cost", "Total Cost Payable");
-            for (Map.Entry<String, Double> entry : distCosts.entrySet()) {
-                printer.printRecord(entry.getKey(), entry.getValue());
+            for (MonthlyDistributorRollup dr : view.distributors()) {
+                printer.printRecord(dr.getDistributorName(), dr.getTotalCostPayable());
+            }
+        }
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    /**
+     * CSV of every day, vendor row and distributor row between two dates (inclusive), for exports
+     * that can span years. Rows are streamed from the database by a writer thread into a pipe,
+     * so neither the rows nor the file are ever held in full. Nothing is queried until the
+     * returned stream is first read; the caller reads (uploads) it and must close it. Closing it
+     * early, or reading past {@code eodbot.export.timeout}, stops the writer and rolls back its
+     * transaction. If writing fails, reading the stream fails too.
+     */
+    public InputStream rangeExportCsv(LocalDate from, LocalDate to) throws IOException {
+        PipedInputStream in = new PipedInputStream(PIPE_BUFFER);
+        return new ExportStream(in, new PipedOutputStream(in), from, to);
+    }
+
+    private void writeRange(CSVPrinter printer, LocalDate from, LocalDate to) {
+        try {
+            printer.printRecord("Export", from + " to " + to);
+            printer.printRecord(); // Empty line
+
+            printer.printRecord("Date", "Purchases", "Sales", "Cost Factor", "Gross Revenue", "COGS", "Net Profit");
+            try (Stream<DailyReportRepository.DailySummary> days = dailyReportRepository.streamSummariesBetween(from, to)) {
+                for (Iterator<DailyReportRepository.DailySummary> it = days.iterator(); it.hasNext(); ) {
+                    DailyReportRepository.DailySummary d = it.next();
+                    printer.printRecord(d.getDate(), d.getHasPurchaseData(), d.getHasSalesData(), d.getMasterCostFactor(),
+                            d.getTotalGrossRevenue(), d.getTotalCogs(), d.getTotalNetProfit());
+                }
+            }
+            printer.printRecord(); // Empty line
+
+            printer.printRecord("Date", "Vendor", "Gross Revenue", "Total Load Sold", "COGS", "Net Profit");
+            try (Stream<DailyVendorReportRepository.DatedVendorLine> rows = vendorReportRepository.streamLinesBetween(from, to)) {
+                for (Iterator<DailyVendorReportRepository.DatedVendorLine> it = rows.iterator(); it.hasNext(); ) {
+                    DailyVendorReportRepository.DatedVendorLine vr = it.next();
+                    printer.printRecord(vr.getDate(), vr.getVendorName(), vr.getGrossRevenue(), vr.getTotalLoadSold(),
+                            vr.getCogs(), vr.getNetProfit());
+                }
+            }
+            printer.printRecord(); // Empty line
+
+            printer.printRecord("Date", "Distributor", "Total Load Received", "Total Cost Payable");
+            try (Stream<DailyPurchaseReportRepository.DatedPurchaseLine> rows = purchaseReportRepository.streamLinesBetween(from, to)) {
+                for (Iterator<DailyPurchaseReportRepository.DatedPurchaseLine> it = rows.iterator(); it.hasNext(); ) {
+                    DailyPurchaseReportRepository.DatedPurchaseLine pr = it.next();
+                    printer.printRecord(pr.getDate(), pr.getDistributorName(), pr.getTotalLoadReceived(), pr.getTotalCostPayable());
+                }
+            }
+        } catch (IOException e) {
+            // Usually the reader went away (upload failed or was cancelled); ends the transaction and the cursor
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static CSVPrinter printer(OutputStream out) throws IOException {
+        return new CSVPrinter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)), CSVFormat.DEFAULT);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        exportWriters.shutdownNow();
+        exportDeadlines.shutdownNow();
+    }
+
+    /**
+     * Read side of an export pipe. Starts the writer on the first read and stops it when closed
+     * or past the deadline. Turns a writer failure into an IOException at the point the reader
+     * would otherwise see a (truncated) end of file.
+     */
+    private final class ExportStream extends FilterInputStream {
+        private final PipedOutputStream out;
+        private final LocalDate from;
+        private final LocalDate to;
+        private volatile Throwable failure;
+        private volatile boolean started;
+        private volatile boolean closed;
+        private Future<?> writer;          // Guarded by this
+        private ScheduledFuture<?> deadline;
+
+        ExportStream(PipedInputStream in, PipedOutputStream out, LocalDate from, LocalDate to) {
+            super(in);
+            this.out = out;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public int read() throws IOException {
+            start();
+            try {
+                return checkEnd(super.read());
+            } catch (IOException e) {
+                throw failed(e);
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            start();
+            try {
+                return checkEnd(super.read(b, off, len));
+            } catch (IOException e) {
+                throw failed(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (this) {
+                closed = true;
+                if (writer != null) writer.cancel(false); // Never runs if still queued
+                if (deadline != null) deadline.cancel(false);
+            }
+            // A writer blocked on a full pipe, or at its next row, fails on the closed pipe and rolls back
+            super.close();
+        }
+
+        private void start() throws IOException {
+            if (started) return;
+            synchronized (this) {
+                if (closed) throw new IOException("Stream closed");
+                if (started) return;
+                started = true;
+                writer = exportWriters.submit(this::write);
+                deadline = exportDeadlines.schedule(this::expire, exportTimeout.toNanos(), TimeUnit.NANOSECONDS);
             }
         }
-        return tempFile;
+
+        private void write() {
+            try {
+                CSVPrinter printer = printer(out);
+                readOnlyTx.executeWithoutResult(status -> writeRange(printer, from, to));
+                printer.close(); // Flushes and ends the file for the reader
+            } catch (Exception e) {
+                Throwable cause = (e instanceof UncheckedIOException u) ? u.getCause() : e;
+                // Record the failure before closing the pipe, so the reader gets an error and not a clean EOF
+                if (failure == null) failure = cause;
+                if (closed) {
+                    log.warn("CSV export {}..{} stopped before it finished", from, to);
+                } else {
+                    log.error("CSV export {}..{} failed: {}", from, to, cause.getMessage(), cause);
+                }
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                    // Reader already gone
+                }
+            }
+        }
+
+        private void expire() {
+            failure = new IOException("took longer than " + exportTimeout);
+            log.warn("CSV export {}..{} took longer than {}; stopping it", from, to, exportTimeout);
+            try {
+                close();
+            } catch (IOException ignored) {
+                // Closing a pipe's read side does not fail
+            }
+        }
+
+        private int checkEnd(int result) throws IOException {
+            if (result == -1 && failure != null) {
+                throw new IOException("CSV export failed: " + failure.getMessage(), failure);
+            }
+            return result;
+        }
+
+        // A read of a pipe closed by the deadline reports why
+        private IOException failed(IOException e) {
+            Throwable cause = failure;
+            if (cause == null || e.getCause() == cause) return e;
+            return new IOException("CSV export failed: " + cause.getMessage(), cause);
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,55 +1,137 @@
 package com.mybot.eod_bot.service;
 
 import com.mybot.eod_bot.model.DailyPurchaseReport;
-import com.mybot.eod_bot.model.Distributor;
-import com.mybot.eod_bot.model.LapuSim;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 // --- NEW JSOUP (HTML) IMPORTS ---
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.StreamParser;
 import org.jsoup.select.Elements;
 // --- REMOVED APACHE POI (EXCEL) IMPORTS ---
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.ArrayList;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 @Slf4j
 @Service
 public class ExcelParserService { // File name is the same, logic is new
 
-    // This container class is unchanged
+    /**
+     * DOM loads the whole file into a Jsoup tree before reading any row.
+     * STREAM reads the first table row by row and drops each row once it is aggregated.
+     */
+    public enum ParseMode { DOM, STREAM }
+
+    @Value("${eodbot.parser.mode:STREAM}")
+    private ParseMode parseMode = ParseMode.STREAM;
+
+    // Rows aggregated per fork/join task; smaller statements never leave the parsing thread
+    private static final int CHUNK_ROWS = 4096;
+
+    // Threads aggregating the chunks of large statements (0 = one per CPU, 1 = no pool)
+    @Value("${eodbot.parser.threads:0}")
+    private int parserThreads = 0;
+    private ForkJoinPool pool;
+
     public static class PurchaseParseResult {
         public final Map<String, DailyPurchaseReport> purchaseReportsMap;
         public final double totalLoadReceived;
         public final double totalCostPayable;
         public final double masterCostFactor;
         public final List<String> unassignedSims;
+        public final int rows;           // Data rows read, header excluded
+        public final int skippedRows;    // Rows with too few cells or unreadable values
+        public final int malformedCells; // Numeric cells that were counted as 0
+        public final long pricingVersion; // Pricing the costs were computed with
 
-        public PurchaseParseResult(Map<String, DailyPurchaseReport> purchaseReportsMap, double totalLoadReceived, double totalCostPayable, double masterCostFactor, List<String> unassignedSims) {
+        public PurchaseParseResult(Map<String, DailyPurchaseReport> purchaseReportsMap, double totalLoadReceived, double totalCostPayable, double masterCostFactor, List<String> unassignedSims, int rows, int skippedRows, int malformedCells, long pricingVersion) {
             this.purchaseReportsMap = purchaseReportsMap;
             this.totalLoadReceived = totalLoadReceived;
             this.totalCostPayable = totalCostPayable;
             this.masterCostFactor = masterCostFactor;
             this.unassignedSims = unassignedSims;
+            this.rows = rows;
+            this.skippedRows = skippedRows;
+            this.malformedCells = malformedCells;
+            this.pricingVersion = pricingVersion;
+        }
+    }
+
+    public PurchaseParseResult parse(File file, SimRoutingIndex simIndex, PricingSnapshot pricing) throws Exception {
+        return parse(file, simIndex, pricing, parseMode);
+    }
+
+    public PurchaseParseResult parse(File file, SimRoutingIndex simIndex, PricingSnapshot pricing, ParseMode mode) throws Exception {
+        log.info("Parsing {} ({} bytes) in {} mode with pricing version {}", file.getName(), file.length(), mode, pricing.version());
+        try (InputStream in = new FileInputStream(file)) {
+            return parse(in, simIndex.snapshot(), pricing, mode);
+        }
+    }
+
+    /**
+     * Parses a statement as it arrives, e.g. straight from a download, without a copy on disk.
+     * {@code in} is left open for the caller to read on from and close; in STREAM mode reading
+     * stops after the first table.
+     */
+    public PurchaseParseResult parse(InputStream in, String name, SimRoutingIndex simIndex, PricingSnapshot pricing) throws Exception {
+        log.info("Parsing {} from a stream in {} mode with pricing version {}", name, parseMode, pricing.version());
+        return parse(new KeptOpen(in), simIndex.snapshot(), pricing, parseMode);
+    }
+
+    // The readers the parsers wrap around a stream close it when they are done; this one stays open
+    private static final class KeptOpen extends FilterInputStream {
+        KeptOpen(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
         }
     }
 
-    // --- THIS IS THE NEW HTML PARSING LOGIC ---
-    public PurchaseParseResult parse(File file, Map<String, LapuSim> simMap) throws Exception {
-        Map<String, DailyPurchaseReport> purchaseReportsMap = new HashMap<>();
-        List<String> unassignedSims = new ArrayList<>();
-        double totalLoadReceived = 0;
-        double totalCostPayable = 0;
+    private PurchaseParseResult parse(InputStream in, SimRoutingIndex.Snapshot routes, PricingSnapshot pricing, ParseMode mode) throws IOException {
+        return (mode == ParseMode.DOM) ? parseDom(in, routes, pricing) : parseStream(in, routes, pricing);
+    }
+
+    private synchronized ForkJoinPool aggregationPool() {
+        int threads = (parserThreads > 0) ? parserThreads : Runtime.getRuntime().availableProcessors();
+        if (threads <= 1) return null;
+        if (pool == null) {
+            pool = new ForkJoinPool(threads);
+        }
+        return pool;
+    }
 
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (pool != null) pool.shutdownNow();
+    }
+
+    // --- DOM PATH: the whole file is parsed into a Jsoup Document first ---
+    private PurchaseParseResult parseDom(InputStream in, SimRoutingIndex.Snapshot routes, PricingSnapshot pricing) throws IOException {
         // Use Jsoup to parse the file as HTML
         // This will read the file you downloaded
-        Document doc = Jsoup.parse(file, "UTF-8");
+        Document doc = Jsoup.parse(in, "UTF-8", "");
 
         // Find the first <table> on the page.
         // This assumes the data is in the first table.
@@ -64,61 +146,228 @@ public class ExcelParserService { // File name is the same, logic is new
         }
 
         // Find header columns from the first row
-        Map<String, Integer> headers = findHeaders(rows.get(0));
-
-        // Ensure all required headers are present
-        if (!headers.containsKey("LAPU NO") || !headers.containsKey("OPEN BAL") ||
-                !headers.containsKey("TOTAL AMOUNT") || !headers.containsKey("CLOSE BAL")) {
-            log.error("Missing headers. Found: {}", headers);
-            throw new RuntimeException("Invalid file format. Missing required headers: LAPU NO, OPEN BAL, TOTAL AMOUNT, or CLOSE BAL");
-        }
+        RowAggregator aggregator = new RowAggregator(findHeaders(rows.get(0)), routes, pricing, aggregationPool());
 
         // Start from row 1 (skipping header)
         for (int i = 1; i < rows.size(); i++) {
-            Elements cells = rows.get(i).select("td"); // Get all cells in this row
-            if (cells.size() < headers.size()) {
-                log.warn("Skipping malformed row {}. Expected >= {} cells, got {}", i, headers.size(), cells.size());
-                continue; // Skip rows that don't have enough columns
-            }
+            aggregator.accept(i, rows.get(i).select("td")); // Get all cells in this row
+        }
+        return aggregator.result();
+    }
 
-            try {
-                // Read data using header map
-                long openBal = parseLongFromText(cells.get(headers.get("OPEN BAL")).text());
-                long totalAmount = parseLongFromText(cells.get(headers.get("TOTAL AMOUNT")).text());
-                long closeBal = parseLongFromText(cells.get(headers.get("CLOSE BAL")).text());
+    // --- STREAM PATH: rows of the first table are read and discarded one at a time ---
+    private PurchaseParseResult parseStream(InputStream in, SimRoutingIndex.Snapshot routes, PricingSnapshot pricing) throws IOException {
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+             StreamParser streamer = new StreamParser(Parser.htmlParser()).parse(reader, "")) {
 
-                String lapuNo = cells.get(headers.get("LAPU NO")).text().trim();
-                lapuNo = lapuNo.split("\\.")[0]; // Clean "1234.0" to "1234"
+            Element table = null;
+            RowAggregator aggregator = null;
+            int i = 0;
 
-                double loadReceived = (double) closeBal - openBal + totalAmount;
-                if (loadReceived <= 0) continue;
+            // Each <tr> is handed over once it is complete (closing tag seen)
+            Element row;
+            while ((row = streamer.selectNext("tr")) != null) {
+                if (table == null) {
+                    table = row.closest("table");
+                } else if (!isInside(row, table)) {
+                    break; // Only the first table holds statement data
+                }
 
-                LapuSim sim = simMap.get(lapuNo);
-                if (sim == null) {
-                    String desc = headers.containsKey("DESC") ? cells.get(headers.get("DESC")).text() : "N/A";
-                    unassignedSims.add(lapuNo + " (" + desc + ")");
-                    continue;
+                if (aggregator == null) {
+                    aggregator = new RowAggregator(findHeaders(row), routes, pricing, aggregationPool());
+                } else {
+                    aggregator.accept(i, row.select("td"));
                 }
+                i++;
+                row.remove(); // Keep the in-memory tree to a single row
+            }
+            streamer.stop();
 
-                Distributor dist = sim.getDistributor();
-                double payableFactor = (dist.getBaseGet() == 0) ? 0 : (dist.getBasePay() / dist.getBaseGet());
-                double costPayable = loadReceived * payableFactor;
+            if (table == null && streamer.document().selectFirst("table") == null) {
+                throw new RuntimeException("No <table> found in the uploaded file.");
+            }
+            if (i < 2) { // Need at least 1 header row and 1 data row
+                throw new RuntimeException("No <tr> (table rows) found in the table.");
+            }
+            return aggregator.result();
+        }
+    }
 
-                totalLoadReceived += loadReceived;
+    private boolean isInside(Element row, Element table) {
+        for (Element parent = row.parent(); parent != null; parent = parent.parent()) {
+            if (parent == table) return true;
+        }
+        return false;
+    }
+
+    /** The cell texts of one data row, taken on the parsing thread so chunks never touch Jsoup. */
+    private record RawRow(int index, String lapuNo, String openBal, String totalAmount, String closeBal, String desc) {}
+
+    /**
+     * Collects data rows into chunks as they arrive and aggregates each full chunk as a fork/join task,
+     * so both the DOM and the stream path share the same row logic. With one thread, or for
+     * statements smaller than a chunk, every chunk runs on the calling thread instead.
+     * Loads are whole rupees summed as longs per distributor ID and chunks are merged in order,
+     * so the result is the same however the chunks were scheduled.
+     */
+    private static class RowAggregator {
+        private final Map<String, Integer> headers;
+        private final int minCells; // Up to the rightmost column read
+        private final SimRoutingIndex.Snapshot routes;
+        private final PricingSnapshot pricing;
+        private final ForkJoinPool pool; // null: aggregate on the calling thread
+        private final List<ForkJoinTask<ChunkTotals>> chunks = new ArrayList<>();
+        private List<RawRow> chunk = new ArrayList<>(CHUNK_ROWS);
+        private int rows = 0;
+        private int shortRows = 0;
+
+        RowAggregator(Map<String, Integer> headers, SimRoutingIndex.Snapshot routes, PricingSnapshot pricing, ForkJoinPool pool) {
+            // Ensure all required headers are present
+            if (!headers.containsKey("LAPU NO") || !headers.containsKey("OPEN BAL") ||
+                    !headers.containsKey("TOTAL AMOUNT") || !headers.containsKey("CLOSE BAL")) {
+                log.error("Missing headers. Found: {}", headers);
+                throw new RuntimeException("Invalid file format. Missing required headers: LAPU NO, OPEN BAL, TOTAL AMOUNT, or CLOSE BAL");
+            }
+            this.headers = headers;
+            this.minCells = headers.values().stream().mapToInt(Integer::intValue).max().getAsInt() + 1;
+            this.routes = routes;
+            this.pricing = pricing;
+            this.pool = pool;
+        }
+
+        void accept(int i, Elements cells) {
+            rows++;
+            if (cells.size() < minCells) {
+                log.debug("Skipping malformed row {}. Expected >= {} cells, got {}", i, minCells, cells.size());
+                shortRows++;
+                return; // Skip rows that don't have enough columns
+            }
+            chunk.add(new RawRow(i,
+                    cells.get(headers.get("LAPU NO")).text(),
+                    cells.get(headers.get("OPEN BAL")).text(),
+                    cells.get(headers.get("TOTAL AMOUNT")).text(),
+                    cells.get(headers.get("CLOSE BAL")).text(),
+                    headers.containsKey("DESC") ? cells.get(headers.get("DESC")).text() : "N/A"));
+            if (chunk.size() == CHUNK_ROWS) {
+                submit(false);
+            }
+        }
+
+        private void submit(boolean last) {
+            ChunkTask task = new ChunkTask(chunk, routes);
+            // The last (partial) chunk runs here while the pool finishes the others
+            if (pool == null || last) task.invoke();
+            else pool.execute(task);
+            chunks.add(task);
+            chunk = new ArrayList<>(CHUNK_ROWS);
+        }
+
+        PurchaseParseResult result() {
+            if (!chunk.isEmpty()) submit(true);
+
+            // Merge in chunk order, distributors by ID: the same result on any number of threads
+            Map<Long, DistributorSum> byDistributor = new TreeMap<>();
+            List<String> unassignedSims = new ArrayList<>();
+            int skippedRows = shortRows;
+            int malformedCells = 0;
+            String firstMalformed = null;
+            for (ForkJoinTask<ChunkTotals> task : chunks) {
+                ChunkTotals totals = task.join();
+                totals.sums.forEach((id, sum) -> byDistributor.merge(id, sum, DistributorSum::add));
+                unassignedSims.addAll(totals.unassignedSims);
+                skippedRows += totals.skippedRows;
+                malformedCells += totals.decoder.getMalformedCount();
+                if (firstMalformed == null) firstMalformed = totals.decoder.getFirstMalformed();
+            }
+
+            Map<String, DailyPurchaseReport> purchaseReportsMap = new LinkedHashMap<>(); // In distributor ID order
+            long totalLoadReceived = 0;
+            double totalCostPayable = 0;
+            for (DistributorSum sum : byDistributor.values()) {
+                double costPayable = sum.load * pricing.payableFactor(sum.route.distributorId);
+                totalLoadReceived += sum.load;
                 totalCostPayable += costPayable;
 
-                DailyPurchaseReport report = purchaseReportsMap.computeIfAbsent(dist.getName(), k -> new DailyPurchaseReport());
-                report.setDistributorName(dist.getName());
-                report.setTotalLoadReceived(report.getTotalLoadReceived() + loadReceived);
+                DailyPurchaseReport report = purchaseReportsMap.computeIfAbsent(sum.route.distributorName, k -> new DailyPurchaseReport());
+                report.setDistributorName(sum.route.distributorName);
+                report.setTotalLoadReceived(report.getTotalLoadReceived() + sum.load);
                 report.setTotalCostPayable(report.getTotalCostPayable() + costPayable);
+            }
 
-            } catch (Exception e) {
-                log.warn("Skipping row {}: {}", i, e.getMessage());
+            if (skippedRows > 0) {
+                log.warn("Skipped {} malformed row(s)", skippedRows);
+            }
+            if (malformedCells > 0) {
+                log.warn("Could not parse {} numeric cell(s), counted as 0. First: '{}'", malformedCells, firstMalformed);
             }
+            double masterCostFactor = (totalLoadReceived == 0) ? 0 : (totalCostPayable / totalLoadReceived);
+            return new PurchaseParseResult(purchaseReportsMap, totalLoadReceived, totalCostPayable, masterCostFactor, unassignedSims,
+                    rows, skippedRows, malformedCells, pricing.version());
+        }
+    }
+
+    /** One distributor's load within a chunk (then across chunks), in whole rupees. */
+    private static final class DistributorSum {
+        final SimRoutingIndex.Route route;
+        long load;
+
+        DistributorSum(SimRoutingIndex.Route route) {
+            this.route = route;
+        }
+
+        DistributorSum add(DistributorSum other) {
+            load += other.load;
+            return this;
         }
+    }
 
-        double masterCostFactor = (totalLoadReceived == 0) ? 0 : (totalCostPayable / totalLoadReceived);
-        return new PurchaseParseResult(purchaseReportsMap, totalLoadReceived, totalCostPayable, masterCostFactor, unassignedSims);
+    /** What one chunk of rows adds up to. Confined to the thread that computes it. */
+    private static final class ChunkTotals {
+        final Map<Long, DistributorSum> sums = new HashMap<>();
+        final List<String> unassignedSims = new ArrayList<>();
+        final NumericCellDecoder decoder = new NumericCellDecoder();
+        int skippedRows = 0;
+    }
+
+    private static final class ChunkTask extends RecursiveTask<ChunkTotals> {
+        private final List<RawRow> rows;
+        private final SimRoutingIndex.Snapshot routes;
+
+        ChunkTask(List<RawRow> rows, SimRoutingIndex.Snapshot routes) {
+            this.rows = rows;
+            this.routes = routes;
+        }
+
+        @Override
+        protected ChunkTotals compute() {
+            ChunkTotals totals = new ChunkTotals();
+            NumericCellDecoder decoder = totals.decoder;
+            for (RawRow row : rows) {
+                try {
+                    // Read data using header map
+                    long openBal = decoder.decodeLong(row.openBal());
+                    long totalAmount = decoder.decodeLong(row.totalAmount());
+                    long closeBal = decoder.decodeLong(row.closeBal());
+
+                    String lapuNo = decoder.decodeLapuNo(row.lapuNo()); // Clean "1234.0" to "1234"
+
+                    long loadReceived = Math.addExact(Math.subtractExact(closeBal, openBal), totalAmount);
+                    if (loadReceived <= 0) continue;
+
+                    SimRoutingIndex.Route route = routes.lookup(lapuNo);
+                    if (route == null) {
+                        totals.unassignedSims.add(lapuNo + " (" + row.desc() + ")");
+                        continue;
+                    }
+                    totals.sums.computeIfAbsent(route.distributorId, id -> new DistributorSum(route)).load += loadReceived;
+
+                } catch (Exception e) {
+                    log.debug("Skipping row {}: {}", row.index(), e.getMessage());
+                    totals.skippedRows++;
+                }
+            }
+            return totals;
+        }
     }
 
     // Helper to find column indices from header names in HTML
@@ -156,23 +405,4 @@ public class ExcelParserService { // File name is the same, logic is new
         log.info("Found headers in HTML table: {}", headers);
         return headers;
     }
-
-    // Helper to parse text like "1,234.00" or "5000" into a long
-    private long parseLongFromText(String text) {
-        if (text == null || text.isEmpty()) {
-            return 0L;
-        }
-        // Remove commas and anything after a decimal point
-        String cleanedText = text.replaceAll(",", "").split("\\.")[0];
-        if (cleanedText.isEmpty()) {
-            return 0L;
-        }
-        try {
-            return Long.parseLong(cleanedText);
-        } catch (NumberFormatException e) {
-            log.warn("Could not parse long from text: '{}'", text);
-            return 0L;
-        }
-    }
 }
-
@@ -0,0 +1,98 @@
+package com.mybot.eod_bot.service;
+
+import com.mybot.eod_bot.model.ChatSession;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps sessions in this process, least recently used first, bounded in count and idle time.
+ * Sessions are lost on restart; use the jdbc store to keep them.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "eodbot.conversation.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryConversationStateStore implements ConversationStateStore {
+
+    private final long idleTtlNanos;
+    private final int maxEntries;
+
+    // Access order: the eldest entry is always the least recently used one. Guarded by this.
+    private final LinkedHashMap<Long, Entry> entries;
+    private long hits, misses, evictions;
+
+    private static final class Entry {
+        final ChatSession session;
+        long lastAccess;
+
+        Entry(ChatSession session, long now) {
+            this.session = session;
+            this.lastAccess = now;
+        }
+    }
+
+    public InMemoryConversationStateStore(@Value("${eodbot.conversation.idle-ttl:PT6H}") Duration idleTtl,
+                                          @Value("${eodbot.conversation.max-entries:10000}") int maxEntries) {
+        this.idleTtlNanos = idleTtl.toNanos();
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                if (size() <= InMemoryConversationStateStore.this.maxEntries) return false;
+                evictions++;
+                log.warn("Conversation store full ({} chats); dropping the conversation of chat {}", size() - 1, eldest.getKey());
+                return true;
+            }
+        };
+        log.info("In-memory conversation store: idle TTL {}, up to {} chats", idleTtl, maxEntries);
+    }
+
+    @Override
+    public synchronized ChatSession get(long chatId) {
+        long now = System.nanoTime();
+        evictIdle(now);
+        Entry entry = entries.get(chatId);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        entry.lastAccess = now;
+        return entry.session;
+    }
+
+    @Override
+    public synchronized void put(long chatId, ChatSession session) {
+        long now = System.nanoTime();
+        evictIdle(now);
+        entries.put(chatId, new Entry(session, now));
+    }
+
+    @Override
+    public synchronized void remove(long chatId) {
+        entries.remove(chatId);
+    }
+
+    @Override
+    public synchronized Stats stats() {
+        evictIdle(System.nanoTime());
+        return new Stats(entries.size(), hits, misses, evictions);
+    }
+
+    // The map is in access order, so idle entries are all at the front
+    private void evictIdle(long now) {
+        for (Iterator<Map.Entry<Long, Entry>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Long, Entry> e = it.next();
+            if (now - e.getValue().lastAccess < idleTtlNanos) break;
+            it.remove();
+            evictions++;
+            log.info("Conversation of chat {} expired (state {})", e.getKey(), e.getValue().session.getState());
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.mybot.eod_bot.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.mybot.eod_bot.model.ChatConversation;
+import com.mybot.eod_bot.model.ChatSession;
+import com.mybot.eod_bot.repository.ChatConversationRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps sessions in the chat_conversations table as JSON, so they survive restarts.
+ * Every change is written through; recently used sessions are also cached so reading
+ * a chat's state does not cost a query per message. In a cluster nothing is cached: the chat's
+ * next message may have been handled by another node.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "eodbot.conversation.store", havingValue = "jdbc")
+public class JdbcConversationStateStore implements ConversationStateStore {
+
+    private static final long PURGE_INTERVAL_NANOS = Duration.ofMinutes(1).toNanos();
+
+    private final ChatConversationRepository repository;
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+    private final Duration idleTtl;
+    private final int maxCached;
+
+    // Recently used sessions, least recently used first. Guarded by itself.
+    private final LinkedHashMap<Long, Cached> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private volatile long lastPurge = System.nanoTime();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private record Cached(ChatSession session, Instant savedAt) {}
+
+    public JdbcConversationStateStore(ChatConversationRepository repository,
+                                      ObjectMapper objectMapper,
+                                      @Value("${eodbot.conversation.idle-ttl:PT6H}") Duration idleTtl,
+                                      @Value("${eodbot.conversation.max-entries:10000}") int maxCached,
+                                      ClusterCoordinator clusterCoordinator) {
+        this.repository = repository;
+        this.reader = objectMapper.readerFor(ChatSession.class);
+        this.writer = objectMapper.writerFor(ChatSession.class);
+        this.idleTtl = idleTtl;
+        this.maxCached = clusterCoordinator.enabled() ? 0 : maxCached;
+        log.info("JDBC conversation store: idle TTL {}, {} chats cached", idleTtl, this.maxCached);
+    }
+
+    @Override
+    public ChatSession get(long chatId) {
+        purgeIdleIfDue();
+        synchronized (cache) {
+            Cached cached = cache.get(chatId);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached.session();
+            }
+        }
+        ChatConversation row = repository.findById(chatId).orElse(null);
+        if (row == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (row.getUpdatedAt().isBefore(Instant.now().minus(idleTtl))) {
+            repository.deleteById(chatId);
+            evictions.incrementAndGet();
+            misses.incrementAndGet();
+            return null;
+        }
+        ChatSession session = read(row);
+        if (session == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        cache(chatId, session, row.getUpdatedAt());
+        hits.incrementAndGet();
+        return session;
+    }
+
+    @Override
+    public void put(long chatId, ChatSession session) {
+        purgeIdleIfDue();
+        ChatConversation row = new ChatConversation();
+        row.setChatId(chatId);
+        row.setState(session.getState() == null ? null : session.getState().name());
+        try {
+            row.setPayload(writer.writeValueAsString(session));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot store the session of chat " + chatId, e);
+        }
+        row.setUpdatedAt(Instant.now());
+        repository.save(row);
+        cache(chatId, session, row.getUpdatedAt());
+    }
+
+    @Override
+    public void remove(long chatId) {
+        synchronized (cache) {
+            cache.remove(chatId);
+        }
+        if (repository.existsById(chatId)) {
+            repository.deleteById(chatId);
+        }
+    }
+
+    @Override
+    public Stats stats() {
+        return new Stats((int) repository.count(), hits.get(), misses.get(), evictions.get());
+    }
+
+    private void cache(long chatId, ChatSession session, Instant savedAt) {
+        if (maxCached == 0) return;
+        synchronized (cache) {
+            cache.put(chatId, new Cached(session, savedAt));
+            if (cache.size() > maxCached) {
+                // Only the cached copy goes; the row stays and is read back on next use
+                Long eldest = cache.keySet().iterator().next();
+                cache.remove(eldest);
+            }
+        }
+    }
+
+    private ChatSession read(ChatConversation row) {
+        try {
+            return reader.readValue(row.getPayload());
+        } catch (JsonProcessingException e) {
+            // Written by an older version of the bot; the flow has to be started again
+            log.warn("Dropping unreadable session of chat {}: {}", row.getChatId(), e.getMessage());
+            repository.deleteById(row.getChatId());
+            return null;
+        }
+    }
+
+    private void purgeIdleIfDue() {
+        long now = System.nanoTime();
+        if (now - lastPurge < PURGE_INTERVAL_NANOS) return;
+        lastPurge = now;
+        Instant cutoff = Instant.now().minus(idleTtl);
+        int purged = repository.deleteIdleSince(cutoff);
+        if (purged > 0) {
+            evictions.addAndGet(purged);
+            log.info("Expired {} idle conversation(s)", purged);
+        }
+        // Drop the cached copies of exactly those rows
+        synchronized (cache) {
+            cache.values().removeIf(cached -> cached.savedAt().isBefore(cutoff));
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.mybot.eod_bot.service;
+
+import com.mybot.eod_bot.model.*;
+import com.mybot.eod_bot.repository.*;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps per-month totals (overall, per vendor, per distributor) up to date as days change,
+ * so a monthly report is a read of a few small rows instead of a month of daily reports.
+ * Like the original monthly report, only days with both purchase and sales data count.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MonthlyRollupService {
+
+    private final MonthlyRollupRepository rollupRepository;
+    private final MonthlyVendorRollupRepository vendorRollupRepository;
+    private final MonthlyDistributorRollupRepository distributorRollupRepository;
+    private final DailyReportRepository dailyReportRepository;
+    private final ClusterCoordinator clusterCoordinator;
+
+    /** What one day adds to its month. Taken before and after a change to work out the delta. */
+    public static class DayContribution {
+        public static final DayContribution NONE = new DayContribution(false, 0, 0, 0, Map.of(), Map.of());
+
+        final boolean complete;
+        final double grossRevenue;
+        final double cogs;
+        final double netProfit;
+        final Map<String, DailyVendorReport> vendors;
+        final Map<String, DailyPurchaseReport> distributors;
+
+        private DayContribution(boolean complete, double grossRevenue, double cogs, double netProfit,
+                                Map<String, DailyVendorReport> vendors, Map<String, DailyPurchaseReport> distributors) {
+            this.complete = complete;
+            this.grossRevenue = grossRevenue;
+            this.cogs = cogs;
+            this.netProfit = netProfit;
+            this.vendors = vendors;
+            this.distributors = distributors;
+        }
+
+        public static DayContribution of(DailyReport report) {
+            if (!report.isHasPurchaseData() || !report.isHasSalesData()) {
+                return NONE;
+            }
+            // Copy the values: the entities may be changed or deleted after this snapshot
+            Map<String, DailyVendorReport> vendors = new HashMap<>();
+            for (DailyVendorReport vr : report.getVendorReports()) {
+                addVendor(vendors, vr.getVendorName(), vr.getGrossRevenue(), vr.getTotalLoadSold(), vr.getCogs(), vr.getNetProfit());
+            }
+            Map<String, DailyPurchaseReport> distributors = new HashMap<>();
+            for (DailyPurchaseReport pr : report.getPurchaseReports()) {
+                addDistributor(distributors, pr.getDistributorName(), pr.getTotalLoadReceived(), pr.getTotalCostPayable());
+            }
+            return new DayContribution(true, report.getTotalGrossRevenue(), report.getTotalCogs(), report.getTotalNetProfit(),
+                    vendors, distributors);
+        }
+
+        /** Same as {@link #of(DailyReport)}, with the day's rows given as projections instead of read from the entity. */
+        public static DayContribution of(DailyReport report,
+                                         List<DailyVendorReportRepository.VendorLine> vendorLines,
+                                         List<DailyPurchaseReportRepository.PurchaseLine> purchaseLines) {
+            if (!report.isHasPurchaseData() || !report.isHasSalesData()) {
+                return NONE;
+            }
+            Map<String, DailyVendorReport> vendors = new HashMap<>();
+            for (DailyVendorReportRepository.VendorLine vr : vendorLines) {
+                addVendor(vendors, vr.getVendorName(), vr.getGrossRevenue(), vr.getTotalLoadSold(), vr.getCogs(), vr.getNetProfit());
+            }
+            Map<String, DailyPurchaseReport> distributors = new HashMap<>();
+            for (DailyPurchaseReportRepository.PurchaseLine pr : purchaseLines) {
+                addDistributor(distributors, pr.getDistributorName(), pr.getTotalLoadReceived(), pr.getTotalCostPayable());
+            }
+            return new DayContribution(true, report.getTotalGrossRevenue(), report.getTotalCogs(), report.getTotalNetProfit(),
+                    vendors, distributors);
+        }
+
+        private static void addVendor(Map<String, DailyVendorReport> vendors, String name,
+                                      double grossRevenue, double totalLoadSold, double cogs, double netProfit) {
+            DailyVendorReport copy = vendors.computeIfAbsent(name, k -> new DailyVendorReport());
+            copy.setGrossRevenue(copy.getGrossRevenue() + grossRevenue);
+            copy.setTotalLoadSold(copy.getTotalLoadSold() + totalLoadSold);
+            copy.setCogs(copy.getCogs() + cogs);
+            copy.setNetProfit(copy.getNetProfit() + netProfit);
+        }
+
+        private static void addDistributor(Map<String, DailyPurchaseReport> distributors, String name,
+                                           double totalLoadReceived, double totalCostPayable) {
+            DailyPurchaseReport copy = distributors.computeIfAbsent(name, k -> new DailyPurchaseReport());
+            copy.setTotalLoadReceived(copy.getTotalLoadReceived() + totalLoadReceived);
+            copy.setTotalCostPayable(copy.getTotalCostPayable() + totalCostPayable);
+        }
+    }
+
+    /** Everything the monthly report prints. */
+    public record MonthlyView(MonthlyRollup totals, List<MonthlyVendorRollup> vendors, List<MonthlyDistributorRollup> distributors) {}
+
+    @Transactional(readOnly = true)
+    public MonthlyView getMonth(YearMonth month) {
+        String id = month.toString();
+        return rollupRepository.findById(id)
+                .map(totals -> new MonthlyView(totals, vendorRollupRepository.findByMonth(id), distributorRollupRepository.findByMonth(id)))
+                .orElse(null);
+    }
+
+    /**
+     * Moves a month's rollups from a day's old contribution to its new one. The rows are read after
+     * taking the month's lock, so concurrent changes to other days of the month add up.
+     */
+    @Transactional
+    public void applyDayChange(YearMonth month, DayContribution before, DayContribution after) {
+        clusterCoordinator.lockMonth(month);
+        String id = month.toString();
+        MonthlyRollup totals = rollupRepository.findById(id).orElseGet(() -> new MonthlyRollup(id));
+        totals.setCompletedDays(totals.getCompletedDays() + (after.complete ? 1 : 0) - (before.complete ? 1 : 0));
+        totals.setTotalGrossRevenue(round(totals.getTotalGrossRevenue() + after.grossRevenue - before.grossRevenue));
+        totals.setTotalCogs(round(totals.getTotalCogs() + after.cogs - before.cogs));
+        totals.setTotalNetProfit(round(totals.getTotalNetProfit() + after.netProfit - before.netProfit));
+        rollupRepository.save(totals);
+
+        if (before.vendors.isEmpty() && after.vendors.isEmpty()
+                && before.distributors.isEmpty() && after.distributors.isEmpty()) {
+            return; // Day was and still is incomplete: nothing per vendor/distributor to move
+        }
+
+        Map<String, MonthlyVendorRollup> vendorRows = vendorRollupRepository.findByMonth(id).stream()
+                .collect(Collectors.toMap(MonthlyVendorRollup::getVendorName, Function.identity()));
+        for (String name : union(before.vendors.keySet(), after.vendors.keySet())) {
+            DailyVendorReport old = before.vendors.get(name);
+            DailyVendorReport now = after.vendors.get(name);
+            MonthlyVendorRollup row = vendorRows.computeIfAbsent(name, k -> new MonthlyVendorRollup(id, k));
+            if (old != null) {
+                row.setDays(row.getDays() - 1);
+                row.setGrossRevenue(row.getGrossRevenue() - old.getGrossRevenue());
+                row.setTotalLoadSold(row.getTotalLoadSold() - old.getTotalLoadSold());
+                row.setCogs(row.getCogs() - old.getCogs());
+                row.setNetProfit(row.getNetProfit() - old.getNetProfit());
+            }
+            if (now != null) {
+                row.setDays(row.getDays() + 1);
+                row.setGrossRevenue(row.getGrossRevenue() + now.getGrossRevenue());
+                row.setTotalLoadSold(row.getTotalLoadSold() + now.getTotalLoadSold());
+                row.setCogs(row.getCogs() + now.getCogs());
+                row.setNetProfit(row.getNetProfit() + now.getNetProfit());
+            }
+            row.setGrossRevenue(round(row.getGrossRevenue()));
+            row.setTotalLoadSold(round(row.getTotalLoadSold()));
+            row.setCogs(round(row.getCogs()));
+            row.setNetProfit(round(row.getNetProfit()));
+            if (row.getDays() <= 0) {
+                if (row.getId() != null) vendorRollupRepository.delete(row);
+            } else {
+                vendorRollupRepository.save(row);
+            }
+        }
+
+        Map<String, MonthlyDistributorRollup> distRows = distributorRollupRepository.findByMonth(id).stream()
+                .collect(Collectors.toMap(MonthlyDistributorRollup::getDistributorName, Function.identity()));
+        for (String name : union(before.distributors.keySet(), after.distributors.keySet())) {
+            DailyPurchaseReport old = before.distributors.get(name);
+            DailyPurchaseReport now = after.distributors.get(name);
+            MonthlyDistributorRollup row = distRows.computeIfAbsent(name, k -> new MonthlyDistributorRollup(id, k));
+            if (old != null) {
+                row.setDays(row.getDays() - 1);
+                row.setTotalLoadReceived(row.getTotalLoadReceived() - old.getTotalLoadReceived());
+                row.setTotalCostPayable(row.getTotalCostPayable() - old.getTotalCostPayable());
+            }
+            if (now != null) {
+                row.setDays(row.getDays() + 1);
+                row.setTotalLoadReceived(row.getTotalLoadReceived() + now.getTotalLoadReceived());
+                row.setTotalCostPayable(row.getTotalCostPayable() + now.getTotalCostPayable());
+            }
+            row.setTotalLoadReceived(round(row.getTotalLoadReceived()));
+            row.setTotalCostPayable(round(row.getTotalCostPayable()));
+            if (row.getDays() <= 0) {
+                if (row.getId() != null) distributorRollupRepository.delete(row);
+            } else {
+                distributorRollupRepository.save(row);
+            }
+        }
+    }
+
+    /** Recomputes a month from its daily reports. Used to seed the rollups and to repair them. */
+    @Transactional
+    public void rebuildMonth(YearMonth month) {
+        clusterCoordinator.lockMonth(month);
+        String id = month.toString();
+        vendorRollupRepository.deleteByMonth(id);
+        distributorRollupRepository.deleteByMonth(id);
+        rollupRepository.deleteById(id);
+        rollupRepository.flush();
+
+        applyDayChange(month, DayContribution.NONE, DayContribution.NONE); // Creates the (empty) month row
+        for (DailyReport report : dailyReportRepository.findByDateBetween(month.atDay(1), month.atEndOfMonth())) {
+            applyDayChange(month, DayContribution.NONE, DayContribution.of(report));
+        }
+        log.info("Rebuilt monthly rollups for {}", id);
+    }
+
+    // Seeds the rollups once for data that was recorded before they existed
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void backfillIfEmpty() {
+        if (rollupRepository.count() > 0) return;
+
+        TreeSet<YearMonth> months = dailyReportRepository.findAllDates().stream()
+                .map(YearMonth::from)
+                .collect(Collectors.toCollection(TreeSet::new));
+        if (months.isEmpty()) return;
+
+        log.info("No monthly rollups found; building them for {} month(s)", months.size());
+        months.forEach(this::rebuildMonth);
+    }
+
+    // Running sums kept to the daily rows' two decimals, so binary drift can't build up over edits
+    private static double round(double value) {
+        return ReportService.roundAmount(value);
+    }
+
+    private static TreeSet<String> union(Set<String> a, Set<String> b) {
+        TreeSet<String> all = new TreeSet<>(a);
+        all.addAll(b);
+        return all;
+    }
+}
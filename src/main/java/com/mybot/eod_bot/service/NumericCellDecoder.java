@@ -0,0 +1,84 @@
+package com.mybot.eod_bot.service;
+
+/**
+ * Reads statement cells like "1,23,456.00", "-500" or "" directly from the cell text,
+ * without regex or intermediate Strings.
+ * A decoder belongs to a single parse: it is not thread-safe, and it counts
+ * malformed cells so the parser can log them once instead of once per row.
+ */
+public class NumericCellDecoder {
+
+    private int malformedCount = 0;
+    private String firstMalformed; // One sample for the summary warning
+
+    /**
+     * Parses the integer part of an amount. Grouping commas are ignored (Indian or western),
+     * anything after the first '.' is dropped, and blanks count as 0.
+     * Malformed values also count as 0 and are recorded.
+     */
+    public long decodeLong(CharSequence text) {
+        if (text == null) return 0L;
+
+        int start = 0;
+        int end = text.length();
+        while (start < end && isBlank(text.charAt(start))) start++;
+        while (end > start && isBlank(text.charAt(end - 1))) end--;
+        if (start == end) return 0L;
+
+        char first = text.charAt(start);
+        boolean signed = (first == '-' || first == '+');
+        boolean negative = (first == '-');
+        if (signed) start++;
+
+        long value = 0;
+        boolean sawDigit = false;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == ',') continue;
+            if (c == '.') break; // Paise are not tracked
+
+            int digit = Character.digit(c, 10);
+            if (digit < 0 || value > (Long.MAX_VALUE - digit) / 10) {
+                return malformed(text);
+            }
+            value = value * 10 + digit;
+            sawDigit = true;
+        }
+
+        if (!sawDigit && signed) {
+            return malformed(text); // A lone "-" or "+"
+        }
+        return negative ? -value : value;
+    }
+
+    /** Cleans a LAPU number cell, e.g. " 1234.0 " becomes "1234". */
+    public String decodeLapuNo(String text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && isBlank(text.charAt(start))) start++;
+        while (end > start && isBlank(text.charAt(end - 1))) end--;
+
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == '.') {
+                end = i;
+                break;
+            }
+        }
+        return text.substring(start, end); // Returns the same instance when nothing is cut
+    }
+
+    public int getMalformedCount() { return malformedCount; }
+
+    public String getFirstMalformed() { return firstMalformed; }
+
+    private long malformed(CharSequence text) {
+        if (malformedCount++ == 0) {
+            firstMalformed = text.toString();
+        }
+        return 0L;
+    }
+
+    private static boolean isBlank(char c) {
+        return Character.isWhitespace(c) || c == '\u00A0'; // Jsoup keeps &nbsp; as U+00A0
+    }
+}
@@ -0,0 +1,123 @@
+package com.mybot.eod_bot.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.mybot.eod_bot.model.Distributor;
+import com.mybot.eod_bot.model.PricingVersion;
+import com.mybot.eod_bot.model.Vendor;
+import com.mybot.eod_bot.repository.DistributorRepository;
+import com.mybot.eod_bot.repository.PricingVersionRepository;
+import com.mybot.eod_bot.repository.VendorRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds the pricing snapshot in force. It is built from the distributor and vendor tables at
+ * startup and again whenever they change; each distinct set of rates is stored once in
+ * pricing_versions, so a report can be recomputed with the rates it was made with.
+ * In a cluster, a version stored by another node comes into force here the next time pricing is used.
+ */
+@Slf4j
+@Service
+public class PricingService {
+
+    private final DistributorRepository distributorRepository;
+    private final VendorRepository vendorRepository;
+    private final PricingVersionRepository pricingVersionRepository;
+    private final ClusterCoordinator clusterCoordinator;
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+
+    private volatile PricingSnapshot current;
+
+    // The stored form of a snapshot's rates
+    record Rates(Map<Long, PricingSnapshot.Rate> distributors, Map<Long, PricingSnapshot.Rate> vendors) {}
+
+    public PricingService(DistributorRepository distributorRepository,
+                          VendorRepository vendorRepository,
+                          PricingVersionRepository pricingVersionRepository,
+                          ClusterCoordinator clusterCoordinator,
+                          ObjectMapper objectMapper) {
+        this.distributorRepository = distributorRepository;
+        this.vendorRepository = vendorRepository;
+        this.pricingVersionRepository = pricingVersionRepository;
+        this.clusterCoordinator = clusterCoordinator;
+        this.reader = objectMapper.readerFor(Rates.class);
+        this.writer = objectMapper.writerFor(Rates.class);
+    }
+
+    @PostConstruct
+    public void load() {
+        current = prepare("startup");
+        log.info("Pricing version {}: {} distributor(s), {} vendor(s)",
+                current.version(), current.distributors().size(), current.vendors().size());
+    }
+
+    /** The pricing in force. Callers should hold on to it for one parse or one sales entry. */
+    public PricingSnapshot current() {
+        if (clusterCoordinator.enabled()) {
+            Long latest = pricingVersionRepository.findLatestVersion();
+            if (latest != null && latest > current.version()) {
+                pricingVersionRepository.findById(latest).map(this::read).ifPresent(this::publish);
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Builds the pricing from the tables as this transaction sees them and stores it as a new
+     * version, unless the rates are those of the latest version. Call it in the transaction that
+     * changed a rate and {@link #publish} the result after commit.
+     */
+    public PricingSnapshot prepare(String reason) {
+        Map<Long, PricingSnapshot.Rate> distributors = new HashMap<>();
+        for (Distributor dist : distributorRepository.findAll()) {
+            double factor = (dist.getBaseGet() == 0) ? 0 : (dist.getBasePay() / dist.getBaseGet());
+            distributors.put(dist.getId(), new PricingSnapshot.Rate(dist.getName(), factor));
+        }
+        Map<Long, PricingSnapshot.Rate> vendors = new HashMap<>();
+        for (Vendor vendor : vendorRepository.findAll()) {
+            vendors.put(vendor.getId(), new PricingSnapshot.Rate(vendor.getName(), 1 - (vendor.getDiscountPercent() / 100)));
+        }
+
+        PricingSnapshot latest = pricingVersionRepository.findFirstByOrderByVersionDesc().map(this::read).orElse(null);
+        if (latest != null && latest.sameRates(distributors, vendors)) {
+            return latest;
+        }
+
+        PricingVersion row = new PricingVersion();
+        row.setCreatedAt(Instant.now());
+        row.setReason(reason);
+        try {
+            row.setRates(writer.writeValueAsString(new Rates(distributors, vendors)));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot store pricing", e);
+        }
+        row = pricingVersionRepository.save(row);
+        log.info("Pricing version {} ({})", row.getVersion(), reason);
+        return new PricingSnapshot(row.getVersion(), distributors, vendors);
+    }
+
+    /** Makes a committed snapshot the one in force, unless a newer one already is. */
+    public synchronized void publish(PricingSnapshot next) {
+        if (current == null || next.version() > current.version()) {
+            current = next;
+        }
+    }
+
+    private PricingSnapshot read(PricingVersion row) {
+        try {
+            Rates rates = reader.readValue(row.getRates());
+            return new PricingSnapshot(row.getVersion(), rates.distributors(), rates.vendors());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Pricing version " + row.getVersion() + " is unreadable", e);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.mybot.eod_bot.service;
+
+import java.util.Map;
+
+/**
+ * The rates of one pricing version, immutable: distributor ID -> payable factor (basePay / baseGet)
+ * and vendor ID -> discount factor (1 - discount% / 100). Take one snapshot per parse or sales
+ * entry so every line of it is priced alike, and record its version with the report.
+ */
+public record PricingSnapshot(long version, Map<Long, Rate> distributors, Map<Long, Rate> vendors) {
+
+    public record Rate(String name, double factor) {}
+
+    public PricingSnapshot {
+        distributors = Map.copyOf(distributors);
+        vendors = Map.copyOf(vendors);
+    }
+
+    public double payableFactor(long distributorId) {
+        Rate rate = distributors.get(distributorId);
+        if (rate == null) {
+            throw new IllegalStateException("Distributor " + distributorId + " has no rate in pricing version " + version);
+        }
+        return rate.factor();
+    }
+
+    public double discountFactor(long vendorId) {
+        Rate rate = vendors.get(vendorId);
+        if (rate == null) {
+            throw new IllegalStateException("Vendor " + vendorId + " has no rate in pricing version " + version);
+        }
+        return rate.factor();
+    }
+
+    /** True if both snapshots price everyone the same, whatever their versions. */
+    boolean sameRates(Map<Long, Rate> otherDistributors, Map<Long, Rate> otherVendors) {
+        return distributors.equals(otherDistributors) && vendors.equals(otherVendors);
+    }
+}
@@ -0,0 +1,277 @@
+package com.mybot.eod_bot.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Files purchase statements for past days in one go (catching up after an outage).
+ * Statements are parsed in parallel on a small pool, then saved one day per transaction in date
+ * order, and every month touched has its rollups rebuilt once at the end.
+ */
+@Slf4j
+@Service
+public class PurchaseBackfillService {
+
+    // Limits on what a ZIP may unpack to
+    private static final int MAX_ZIP_ENTRIES = 400;
+    private static final int MAX_ZIP_PROBLEMS = 20; // Entries reported one by one; the rest are counted
+    private static final long MAX_ENTRY_BYTES = 50L * 1024 * 1024;
+
+    // 2025-10-30, 20251030, 30-10-2025, 30.10.2025 or 30_10_2025 anywhere in the file name
+    private static final Pattern ISO_DATE = Pattern.compile("(?<!\\d)(\\d{4})[-_.]?(\\d{2})[-_.]?(\\d{2})(?!\\d)");
+    private static final Pattern DAY_FIRST_DATE = Pattern.compile("(?<!\\d)(\\d{2})[-_.](\\d{2})[-_.](\\d{4})(?!\\d)");
+
+    private final ExcelParserService excelParserService;
+    private final SimRoutingIndex simRoutingIndex;
+    private final ReportService reportService;
+    private final MonthlyRollupService monthlyRollupService;
+    private final UploadLedgerService uploadLedgerService;
+    private final PricingService pricingService;
+    private final BotMetrics metrics;
+    private final BusinessClock businessClock;
+    private final ExecutorService parsers;
+
+    /**
+     * A statement to file: its name, where it came from (Telegram file_unique_id, or that of its ZIP
+     * plus the entry's hash), the day it belongs to and its downloaded bytes.
+     */
+    public record Statement(String name, String sourceId, LocalDate date, File file, String contentSha256) {}
+
+    /** What happened to one statement. {@code error} is null when it was saved. */
+    public record DayResult(String name, LocalDate date, int distributors, double totalLoad, double costFactor, String error) {
+        static DayResult failed(String name, LocalDate date, String error) {
+            return new DayResult(name, date, 0, 0, 0, error);
+        }
+    }
+
+    public record BatchResult(List<DayResult> days, Set<YearMonth> rebuiltMonths) {
+        public long saved() {
+            return days.stream().filter(d -> d.error() == null).count();
+        }
+    }
+
+    public PurchaseBackfillService(ExcelParserService excelParserService,
+                                   SimRoutingIndex simRoutingIndex,
+                                   ReportService reportService,
+                                   MonthlyRollupService monthlyRollupService,
+                                   UploadLedgerService uploadLedgerService,
+                                   PricingService pricingService,
+                                   BotMetrics metrics,
+                                   BusinessClock businessClock,
+                                   @Value("${eodbot.backfill.parse-threads:2}") int parseThreads) {
+        this.excelParserService = excelParserService;
+        this.simRoutingIndex = simRoutingIndex;
+        this.reportService = reportService;
+        this.monthlyRollupService = monthlyRollupService;
+        this.uploadLedgerService = uploadLedgerService;
+        this.pricingService = pricingService;
+        this.metrics = metrics;
+        this.businessClock = businessClock;
+        AtomicInteger counter = new AtomicInteger();
+        this.parsers = Executors.newFixedThreadPool(parseThreads, r -> {
+            Thread t = new Thread(r, "backfill-parser-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** @return the date in a statement's file name, or null if it has none */
+    public static LocalDate dateFromFileName(String fileName) {
+        try {
+            Matcher iso = ISO_DATE.matcher(fileName);
+            if (iso.find()) {
+                return LocalDate.of(Integer.parseInt(iso.group(1)), Integer.parseInt(iso.group(2)), Integer.parseInt(iso.group(3)));
+            }
+            Matcher dayFirst = DAY_FIRST_DATE.matcher(fileName);
+            if (dayFirst.find()) {
+                return LocalDate.of(Integer.parseInt(dayFirst.group(3)), Integer.parseInt(dayFirst.group(2)), Integer.parseInt(dayFirst.group(1)));
+            }
+        } catch (DateTimeException e) {
+            // e.g. 20251340: digits that look like a date but are not one
+        }
+        return null;
+    }
+
+    /**
+     * Unpacks the .xls statements of a ZIP into temp files, hashing each on the way. Entries that are
+     * not dated .xls statements are reported in {@code problems} (the first few by name, the rest
+     * as a count); the caller deletes the returned files.
+     */
+    public List<Statement> unzip(File zip, String sourceId, List<DayResult> problems) throws IOException {
+        List<Statement> statements = new ArrayList<>();
+        try {
+            unzipInto(zip, sourceId, statements, problems);
+        } catch (IOException e) {
+            statements.forEach(s -> s.file().delete());
+            throw e;
+        }
+        return statements;
+    }
+
+    private void unzipInto(File zip, String sourceId, List<Statement> statements, List<DayResult> problems) throws IOException {
+        int entries = 0;
+        int unreported = 0;
+        try (ZipInputStream in = new ZipInputStream(new FileInputStream(zip))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                // Every entry counts, so a ZIP of junk can't be walked without end
+                if (++entries > MAX_ZIP_ENTRIES) {
+                    throw new IOException("ZIP has more than " + MAX_ZIP_ENTRIES + " entries");
+                }
+                String name = new File(entry.getName()).getName(); // No directories from the archive
+                if (entry.isDirectory() || name.startsWith(".") || entry.getName().startsWith("__MACOSX")) continue;
+                boolean xls = name.toLowerCase().endsWith(".xls");
+                LocalDate date = xls ? dateFromFileName(name) : null;
+                String problem = !xls ? "not an .xls statement" : (date == null) ? "no date in the file name" : null;
+                if (problem != null) {
+                    if (problems.size() < MAX_ZIP_PROBLEMS) {
+                        problems.add(DayResult.failed(name, null, problem));
+                    } else {
+                        unreported++;
+                    }
+                    continue;
+                }
+                MessageDigest sha256 = sha256();
+                File file = File.createTempFile("backfill-", ".xls");
+                try (OutputStream out = Files.newOutputStream(file.toPath())) {
+                    copyLimited(new DigestInputStream(in, sha256), out, name);
+                } catch (IOException e) {
+                    file.delete();
+                    throw e;
+                }
+                String hash = HexFormat.of().formatHex(sha256.digest());
+                statements.add(new Statement(name, sourceId + "/" + hash, date, file, hash));
+            }
+        }
+        if (unreported > 0) {
+            problems.add(DayResult.failed("...", null, unreported + " more entries skipped (not dated .xls statements)"));
+        }
+    }
+
+    /**
+     * Parses the statements in parallel and saves them in date order, one transaction per day,
+     * then rebuilds the rollups of every month that changed. Statements already processed for
+     * their day, and second statements for a day, are skipped. Does not delete the files.
+     */
+    public BatchResult run(List<Statement> statements) {
+        long started = System.nanoTime();
+        List<Statement> ordered = new ArrayList<>(statements);
+        ordered.sort(Comparator.comparing(Statement::date).thenComparing(Statement::name));
+
+        List<DayResult> results = new ArrayList<>();
+        List<Statement> toSave = new ArrayList<>();
+        Set<LocalDate> dates = new HashSet<>();
+        for (Statement s : ordered) {
+            if (s.date().isAfter(businessClock.today())) {
+                results.add(DayResult.failed(s.name(), s.date(), "date is in the future"));
+            } else if (!dates.add(s.date())) {
+                results.add(DayResult.failed(s.name(), s.date(), "another statement in this batch is for the same day"));
+            } else if (uploadLedgerService.findByContent(s.contentSha256(), s.date()) != null) {
+                results.add(DayResult.failed(s.name(), s.date(), "already processed for this day"));
+            } else {
+                toSave.add(s);
+            }
+        }
+
+        // Parsing is the slow part and needs no database, so it runs ahead on the pool.
+        // The whole batch is priced alike, with today's rates.
+        PricingSnapshot pricing = pricingService.current();
+        List<CompletableFuture<ExcelParserService.PurchaseParseResult>> parsed = toSave.stream()
+                .map(s -> CompletableFuture.supplyAsync(() -> parse(s, pricing), parsers))
+                .toList();
+
+        Set<YearMonth> months = new TreeSet<>();
+        for (int i = 0; i < toSave.size(); i++) {
+            Statement s = toSave.get(i);
+            try {
+                ExcelParserService.PurchaseParseResult result = parsed.get(i).join();
+                reportService.backfillPurchases(s.date(), new ArrayList<>(result.purchaseReportsMap.values()),
+                        result.masterCostFactor, result.pricingVersion);
+                months.add(YearMonth.from(s.date()));
+                DayResult day = new DayResult(s.name(), s.date(), result.purchaseReportsMap.size(),
+                        result.totalLoadReceived, result.masterCostFactor, null);
+                results.add(day);
+                uploadLedgerService.record(s.sourceId(), s.date(), s.contentSha256(), s.name(),
+                        String.format("✅ Backfilled %s: %d distributor(s), load %.2f INR, cost factor %.6f",
+                                s.date(), day.distributors(), day.totalLoad(), day.costFactor()));
+            } catch (Exception e) {
+                Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+                log.warn("Backfill of {} for {} failed: {}", s.name(), s.date(), cause.getMessage());
+                results.add(DayResult.failed(s.name(), s.date(), cause.getMessage()));
+            }
+        }
+
+        for (YearMonth month : months) {
+            monthlyRollupService.rebuildMonth(month);
+        }
+        results.sort(Comparator.comparing(DayResult::date, Comparator.nullsFirst(Comparator.naturalOrder())));
+        log.info("Backfilled {} of {} statement(s) in {} ms; rebuilt {}", toSave.size(), statements.size(),
+                (System.nanoTime() - started) / 1_000_000, months);
+        return new BatchResult(results, months);
+    }
+
+    private ExcelParserService.PurchaseParseResult parse(Statement s, PricingSnapshot pricing) {
+        try {
+            return metrics.parse(() -> excelParserService.parse(s.file(), simRoutingIndex, pricing));
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static void copyLimited(InputStream in, OutputStream out, String name) throws IOException {
+        byte[] buffer = new byte[8192];
+        long total = 0;
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            total += n;
+            if (total > MAX_ENTRY_BYTES) {
+                throw new IOException(name + " unpacks to more than " + (MAX_ENTRY_BYTES >> 20) + " MB");
+            }
+            out.write(buffer, 0, n);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        parsers.shutdownNow();
+    }
+}
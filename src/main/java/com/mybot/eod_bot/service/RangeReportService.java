@@ -0,0 +1,96 @@
+package com.mybot.eod_bot.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reports over any date range, aggregated by the database (GROUP BY) rather than by loading
+ * daily entities. Like the monthly report, only days with both purchase and sales data count.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RangeReportService {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public enum Grouping {
+        DAY, WEEK, MONTH, VENDOR, DISTRIBUTOR;
+
+        public static Grouping parse(String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * One line of a report. For distributor lines {@code load} is the load received and {@code cost}
+     * the cost payable; otherwise {@code load} is the load sold and {@code cost} the COGS.
+     */
+    public record Row(String label, int days, double load, double grossRevenue, double cost, double netProfit) {}
+
+    /** Totals over the range plus the grouped lines (empty when no grouping was asked for). */
+    public record RangeReport(LocalDate from, LocalDate to, Row totals, Grouping grouping, List<Row> rows) {}
+
+    // Days that count: both halves of the day are in
+    private static final String COMPLETE_DAYS =
+            "r.date BETWEEN ? AND ? AND r.has_purchase_data AND r.has_sales_data";
+
+    private static final String TOTALS_SQL =
+            "SELECT COUNT(*), COALESCE(SUM(r.total_gross_revenue), 0), COALESCE(SUM(r.total_cogs), 0), " +
+                    "COALESCE(SUM(r.total_net_profit), 0) " +
+                    "FROM daily_reports r WHERE " + COMPLETE_DAYS;
+
+    // %s is the period expression: the day itself or date_trunc to its week/month
+    private static final String PERIOD_SQL =
+            "SELECT %s AS period, COUNT(*), SUM(r.total_gross_revenue), SUM(r.total_cogs), SUM(r.total_net_profit) " +
+                    "FROM daily_reports r WHERE " + COMPLETE_DAYS + " GROUP BY period ORDER BY period";
+
+    private static final String VENDOR_SQL =
+            "SELECT v.vendor_name, COUNT(*), SUM(v.total_load_sold), SUM(v.gross_revenue), " +
+                    "SUM(v.cogs), SUM(v.net_profit) " +
+                    "FROM daily_vendor_reports v JOIN daily_reports r ON r.id = v.report_id WHERE " + COMPLETE_DAYS +
+                    " GROUP BY v.vendor_name ORDER BY SUM(v.net_profit) DESC, v.vendor_name";
+
+    private static final String DISTRIBUTOR_SQL =
+            "SELECT p.distributor_name, COUNT(*), SUM(p.total_load_received), SUM(p.total_cost_payable) " +
+                    "FROM daily_purchase_reports p JOIN daily_reports r ON r.id = p.report_id WHERE " + COMPLETE_DAYS +
+                    " GROUP BY p.distributor_name ORDER BY SUM(p.total_cost_payable) DESC, p.distributor_name";
+
+    /**
+     * @param grouping how to break the totals down, or null for totals only
+     */
+    public RangeReport report(LocalDate from, LocalDate to, Grouping grouping) {
+        long started = System.nanoTime();
+        Date start = Date.valueOf(from), end = Date.valueOf(to);
+
+        Row totals = jdbcTemplate.queryForObject(TOTALS_SQL, (rs, i) ->
+                new Row("Total", rs.getInt(1), 0, rs.getDouble(2), rs.getDouble(3), rs.getDouble(4)), start, end);
+
+        List<Row> rows = (grouping == null) ? List.of() : switch (grouping) {
+            case DAY -> jdbcTemplate.query(PERIOD_SQL.formatted("r.date"), periodRow(), start, end);
+            case WEEK -> jdbcTemplate.query(PERIOD_SQL.formatted("CAST(date_trunc('week', r.date) AS date)"), periodRow(), start, end);
+            case MONTH -> jdbcTemplate.query(PERIOD_SQL.formatted("CAST(date_trunc('month', r.date) AS date)"), periodRow(), start, end);
+            case VENDOR -> jdbcTemplate.query(VENDOR_SQL, (rs, i) ->
+                    new Row(rs.getString(1), rs.getInt(2), rs.getDouble(3), rs.getDouble(4), rs.getDouble(5), rs.getDouble(6)), start, end);
+            case DISTRIBUTOR -> jdbcTemplate.query(DISTRIBUTOR_SQL, (rs, i) ->
+                    new Row(rs.getString(1), rs.getInt(2), rs.getDouble(3), 0, rs.getDouble(4), 0), start, end);
+        };
+
+        log.info("Range report {}..{} by {}: {} row(s) in {} ms", from, to, grouping, rows.size(),
+                (System.nanoTime() - started) / 1_000_000);
+        return new RangeReport(from, to, totals, grouping, rows);
+    }
+
+    private static RowMapper<Row> periodRow() {
+        return (rs, i) -> new Row(rs.getDate(1).toLocalDate().toString(), rs.getInt(2), 0,
+                rs.getDouble(3), rs.getDouble(4), rs.getDouble(5));
+    }
+}
@@ -2,17 +2,30 @@ package com.mybot.eod_bot.service; // <-- CORRECTED PACKAGE
 
 import com.mybot.eod_bot.model.*;
 import com.mybot.eod_bot.repository.*;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceContext;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class ReportService {
@@ -20,6 +33,31 @@ public class ReportService {
     private final DailyReportRepository reportRepository;
     private final DailyPurchaseReportRepository purchaseReportRepository;
     private final DailyVendorReportRepository vendorReportRepository;
+    private final BulkWriteRepository bulkWriteRepository;
+    private final MonthlyRollupService monthlyRollupService;
+    private final VendorBalanceCache vendorBalanceCache;
+    private final BotMetrics metrics;
+    private final TransactionTemplate transactionTemplate;
+
+    // Attempts at a day's save when another node (or lane) saved the same day in between
+    private static final int MAX_ATTEMPTS = 3;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /** Everything the daily report prints, read as projections in three queries. */
+    public record DailyView(DailyReportRepository.DailySummary summary,
+                            List<DailyVendorReportRepository.VendorLine> vendorLines,
+                            List<DailyPurchaseReportRepository.PurchaseLine> purchaseLines) {}
+
+    @Transactional(readOnly = true)
+    public DailyView getDailyView(LocalDate date) {
+        return reportRepository.findSummaryByDate(date)
+                .map(summary -> new DailyView(summary,
+                        vendorReportRepository.findLinesByDate(date),
+                        purchaseReportRepository.findLinesByDate(date)))
+                .orElse(null);
+    }
 
     // This annotation makes the whole method a single database transaction
     @Transactional
@@ -28,72 +66,198 @@ public class ReportService {
         return report.orElseGet(() -> reportRepository.save(new DailyReport(date)));
     }
 
-    @Transactional
-    public String updatePurchases(DailyReport report, List<DailyPurchaseReport> newPurchaseReports, double costFactor) {
-        // Clear old purchase data for this day
-        purchaseReportRepository.deleteAll(report.getPurchaseReports());
+    /** The day's cost factor, or 0 if the day has no row yet. Creates nothing: a save creates the day. */
+    @Transactional(readOnly = true)
+    public double costFactor(LocalDate date) {
+        return reportRepository.findByDate(date).map(DailyReport::getMasterCostFactor).orElse(0.0);
+    }
 
-        // Set new data
-        for (DailyPurchaseReport pr : newPurchaseReports) {
-            pr.setDailyReport(report);
-        }
-        purchaseReportRepository.saveAll(newPurchaseReports);
+    /**
+     * Saves a day's purchases. Only changed distributor rows are written. If the day already has
+     * sales, vendor COGS are re-costed at the new cost factor (rows whose figures move are updated)
+     * and the day's totals follow.
+     * @param pricingVersion the pricing version the distributor costs were computed with
+     */
+    public String updatePurchases(LocalDate date, List<DailyPurchaseReport> newPurchaseReports, double costFactor, long pricingVersion) {
+        return inDayTransaction("update_purchases", date, () -> savePurchases(date, newPurchaseReports, costFactor, pricingVersion, true));
+    }
+
+    /**
+     * Same as {@link #updatePurchases} but leaves the monthly rollups alone, for batches of past days:
+     * the caller rebuilds each affected month once at the end.
+     */
+    public String backfillPurchases(LocalDate date, List<DailyPurchaseReport> newPurchaseReports, double costFactor, long pricingVersion) {
+        return inDayTransaction("backfill_purchases", date, () -> savePurchases(date, newPurchaseReports, costFactor, pricingVersion, false));
+    }
+
+    private String savePurchases(LocalDate date, List<DailyPurchaseReport> newPurchaseReports, double costFactor, long pricingVersion,
+                                 boolean maintainRollups) {
+        DailyReport report = lockedDay(date);
+        MonthlyRollupService.DayContribution before = maintainRollups ? contribution(report) : null;
+        bulkWriteRepository.syncPurchaseRows(flushed(report), newPurchaseReports);
 
-        report.setPurchaseReports(newPurchaseReports);
         report.setMasterCostFactor(costFactor);
+        report.setPurchasePricingVersion(pricingVersion);
         report.setHasPurchaseData(true);
 
-        return checkAndCalculatePnl(report);
+        if (report.isHasSalesData()) {
+            List<BulkWriteRepository.VendorCost> costs = new ArrayList<>();
+            List<BulkWriteRepository.VendorCost> changed = new ArrayList<>();
+            for (BulkWriteRepository.VendorCost vc : bulkWriteRepository.findVendorCosts(report.getId())) {
+                double cogs = cogs(vc.totalLoadSold(), costFactor);
+                BulkWriteRepository.VendorCost recosted = new BulkWriteRepository.VendorCost(
+                        vc.id(), vc.totalLoadSold(), vc.grossRevenue(), cogs, netProfit(vc.grossRevenue(), cogs));
+                costs.add(recosted);
+                if (recosted.cogs() != vc.cogs() || recosted.netProfit() != vc.netProfit()) changed.add(recosted);
+            }
+            bulkWriteRepository.updateVendorCosts(changed);
+            setTotals(report, costs.stream().mapToDouble(BulkWriteRepository.VendorCost::grossRevenue).sum(),
+                    costs.stream().mapToDouble(BulkWriteRepository.VendorCost::cogs).sum());
+            log.info("Report {}: cost factor {}, re-costed {} of {} vendor row(s)", date, costFactor, changed.size(), costs.size());
+        }
+
+        return saveDay(report, before);
     }
 
-    @Transactional
-    public String updateSales(DailyReport report, List<DailyVendorReport> newVendorReports) {
-        // Clear old sales data for this day
-        vendorReportRepository.deleteAll(report.getVendorReports());
+    /**
+     * Saves a day's sales. Every line is costed at the day's current cost factor, whatever it was when
+     * entry started; only changed vendor rows are written and the totals come from the given lines.
+     * @param pricingVersion the pricing version the vendor discounts came from
+     */
+    public String updateSales(LocalDate date, List<DailyVendorReport> newVendorReports, long pricingVersion) {
+        return inDayTransaction("update_sales", date, () -> saveSales(date, newVendorReports, pricingVersion));
+    }
 
-        // Set new data
-        for (DailyVendorReport vr : newVendorReports) {
-            vr.setDailyReport(report);
-        }
-        vendorReportRepository.saveAll(newVendorReports);
+    private String saveSales(LocalDate date, List<DailyVendorReport> newVendorReports, long pricingVersion) {
+        DailyReport report = lockedDay(date);
+        MonthlyRollupService.DayContribution before = contribution(report);
+        newVendorReports.forEach(vr -> applyCostFactor(vr, report.getMasterCostFactor()));
+        bulkWriteRepository.syncVendorRows(flushed(report), newVendorReports);
+        vendorBalanceCache.onSalesSaved(date, newVendorReports);
 
-        report.setVendorReports(newVendorReports);
+        report.setSalesPricingVersion(pricingVersion);
         report.setHasSalesData(true);
+        setTotals(report, newVendorReports.stream().mapToDouble(DailyVendorReport::getGrossRevenue).sum(),
+                newVendorReports.stream().mapToDouble(DailyVendorReport::getCogs).sum());
 
-        return checkAndCalculatePnl(report);
+        return saveDay(report, before);
     }
 
-    @Transactional
-    public String checkAndCalculatePnl(DailyReport report) {
-        // If we don't have both pieces of data, just save and report progress.
-        if (!report.isHasPurchaseData() || !report.isHasSalesData()) {
-            reportRepository.save(report);
-            if (report.isHasPurchaseData()) {
-                return "✅ Purchases saved. Waiting for sales data to calculate P&L.";
-            } else {
-                return "✅ Sales saved. Waiting for purchase data to calculate P&L.";
+    /**
+     * Runs a save of one day in its own transaction. Saves of the same day queue on the day's row lock;
+     * if one still loses a race (both created the day at once, or the day's version moved on under it),
+     * it is redone from fresh reads, so neither write is lost. Any other failure, such as a row that
+     * breaks a constraint, is thrown at once. Inside a caller's transaction it runs once.
+     */
+    private String inDayTransaction(String operation, LocalDate date, Supplier<String> save) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            metrics.timeTransaction(operation);
+            return save.get();
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> {
+                    metrics.timeTransaction(operation);
+                    return save.get();
+                });
+            } catch (OptimisticLockingFailureException | DayInsertRaced e) {
+                if (attempt >= MAX_ATTEMPTS) throw e;
+                log.warn("{} for {} raced another save of the day (attempt {}); retrying: {}", operation, date, attempt, e.getMessage());
             }
         }
+    }
 
-        // --- We have both! Calculate P&L ---
-        double totalRevenue = report.getVendorReports().stream()
-                .mapToDouble(DailyVendorReport::getGrossRevenue).sum();
+    // The day row, locked before anything else of the day is touched (and before the month lock, always
+    // in that order), with its version bumped at commit even if no column of the row itself changes.
+    // A new day is inserted at once, so a concurrent insert fails here as a retryable conflict.
+    private DailyReport lockedDay(LocalDate date) {
+        String id = date.toString();
+        if (!reportRepository.existsById(id)) {
+            try {
+                reportRepository.saveAndFlush(new DailyReport(date));
+            } catch (DuplicateKeyException e) {
+                throw new DayInsertRaced("Day " + date + " was created by another save", e);
+            }
+        }
+        // PESSIMISTIC_FORCE_INCREMENT would not wait for the lock on Postgres (it runs FOR UPDATE NOWAIT)
+        DailyReport report = entityManager.find(DailyReport.class, id, LockModeType.PESSIMISTIC_WRITE);
+        entityManager.lock(report, LockModeType.OPTIMISTIC_FORCE_INCREMENT);
+        return report;
+    }
 
-        double totalCogs = report.getVendorReports().stream()
-                .mapToDouble(DailyVendorReport::getCogs).sum();
+    // Another save inserted the same day between the existence check and this one's insert
+    private static final class DayInsertRaced extends ConcurrencyFailureException {
+        DayInsertRaced(String msg, Throwable cause) {
+            super(msg, cause);
+        }
+    }
 
-        double totalProfit = totalRevenue - totalCogs;
+    /** Sets a vendor line's COGS and net profit from its load sold and the day's cost factor. */
+    public void applyCostFactor(DailyVendorReport vr, double costFactor) {
+        vr.setCogs(cogs(vr.getTotalLoadSold(), costFactor));
+        vr.setNetProfit(netProfit(vr.getGrossRevenue(), vr.getCogs()));
+    }
 
-        report.setTotalGrossRevenue(round(totalRevenue));
-        report.setTotalCogs(round(totalCogs));
-        report.setTotalNetProfit(round(totalProfit));
+    private double cogs(double totalLoadSold, double costFactor) {
+        return round(totalLoadSold * costFactor);
+    }
 
-        reportRepository.save(report);
+    private double netProfit(double grossRevenue, double cogs) {
+        return round(grossRevenue - cogs);
+    }
 
+    // The day row must be in the database before JDBC writes can reference it
+    private String flushed(DailyReport report) {
+        entityManager.flush();
+        return report.getId();
+    }
+
+    private void setTotals(DailyReport report, double grossRevenue, double cogs) {
+        report.setTotalGrossRevenue(round(grossRevenue));
+        report.setTotalCogs(round(cogs));
+        report.setTotalNetProfit(round(grossRevenue - cogs));
+    }
+
+    // What the day adds to its month. Read as projections: rows are written over JDBC, so the
+    // entity's collections would be stale (and loading them is what this avoids)
+    private MonthlyRollupService.DayContribution contribution(DailyReport report) {
+        if (!report.isHasPurchaseData() || !report.isHasSalesData()) {
+            return MonthlyRollupService.DayContribution.NONE;
+        }
+        return MonthlyRollupService.DayContribution.of(report,
+                vendorReportRepository.findLinesByDate(report.getDate()),
+                purchaseReportRepository.findLinesByDate(report.getDate()));
+    }
+
+    /**
+     * Saves the day row and moves the monthly rollups from the day's previous contribution
+     * ({@code before}, null to leave the rollups alone) to its new one. The P&L counts once both
+     * purchases and sales are in.
+     */
+    private String saveDay(DailyReport report, MonthlyRollupService.DayContribution before) {
+        reportRepository.save(report);
+        if (!report.isHasPurchaseData() || !report.isHasSalesData()) {
+            if (before != null) {
+                monthlyRollupService.applyDayChange(YearMonth.from(report.getDate()), before, MonthlyRollupService.DayContribution.NONE);
+            }
+            if (report.isHasPurchaseData()) {
+                return "✅ Purchases saved. Waiting for sales data to calculate P&L.";
+            } else {
+                return "✅ Sales saved. Waiting for purchase data to calculate P&L.";
+            }
+        }
+        if (before != null) {
+            monthlyRollupService.applyDayChange(YearMonth.from(report.getDate()), before, contribution(report));
+        }
         return "✅ P&L has been automatically calculated and saved!";
     }
 
     public double round(double value) {
+        return roundAmount(value);
+    }
+
+    /** {@link #round} for code that cannot depend on this service (the monthly rollups). */
+    static double roundAmount(double value) {
         return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP).doubleValue();
     }
 }
@@ -0,0 +1,260 @@
+package com.mybot.eod_bot.service;
+
+import com.mybot.eod_bot.model.DailyVendorReport;
+import com.mybot.eod_bot.model.Vendor;
+import com.mybot.eod_bot.repository.VendorRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVRecord;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Turns vendor balances (previous, top-up, end) into the day's vendor sales lines.
+ * Used one vendor at a time by /run_sales and for a whole batch by /bulk_sales.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SalesEntryService {
+
+    private final VendorRepository vendorRepository;
+    private final ReportService reportService;
+    private final VendorBalanceCache vendorBalanceCache;
+    private final PricingService pricingService;
+
+    private static final Pattern AMOUNT = Pattern.compile("[+-]?(\\d+(\\.\\d*)?|\\.\\d+)");
+
+    /**
+     * One entered line: a vendor's balances for the day.
+     * @param prevBalance null when left out, meaning the vendor's last recorded end balance
+     */
+    public record SaleInput(int lineNo, String vendorName, Double prevBalance, double topup, double endBalance) {}
+
+    /** Lines read from a paste or file, plus the problems found reading them. */
+    public record ParsedBatch(List<SaleInput> lines, List<String> errors) {}
+
+    /**
+     * Outcome of a bulk entry. Nothing is saved when there are errors.
+     * @param missingVendors vendors that exist but were not in the batch (they get no sales line for the day)
+     */
+    public record BatchResult(List<DailyVendorReport> reports, List<String> errors, List<String> missingVendors, String pnlStatus) {
+        public boolean saved() { return pnlStatus != null; }
+    }
+
+    /**
+     * The balance a vendor opens the day with, carried over from its last recorded end balance.
+     * @return null if no end balance was recorded for the vendor before that day
+     */
+    public VendorBalanceCache.Closing openingBalance(long vendorId, LocalDate date) {
+        return vendorBalanceCache.openingFor(vendorId, date);
+    }
+
+    /** Calculates one vendor's sales line from its balances, its discount in {@code pricing} and the day's cost factor. */
+    public DailyVendorReport computeSale(Vendor vendor, PricingSnapshot pricing, double prevBalance, double topup, double endBalance, double costFactor) {
+        double grossRevenue = (prevBalance + topup) - endBalance;
+        double discountFactor = pricing.discountFactor(vendor.getId());
+        double totalLoadSold = (discountFactor == 0) ? 0 : (grossRevenue / discountFactor);
+
+        DailyVendorReport vr = new DailyVendorReport();
+        vr.setVendorName(vendor.getName());
+        vr.setGrossRevenue(reportService.round(grossRevenue));
+        vr.setTotalLoadSold(reportService.round(totalLoadSold));
+        reportService.applyCostFactor(vr, costFactor);
+        vr.setVendorId(vendor.getId());
+        vr.setPrevBalance(prevBalance);
+        vr.setTopup(topup);
+        vr.setEndBalance(endBalance);
+        return vr;
+    }
+
+    // --- Reading a batch ---
+
+    /**
+     * Reads a pasted table, one vendor per line: {@code vendor, prev, topup, end}.
+     * Fields may be separated by commas, semicolons or tabs; with none of those, the trailing
+     * numbers are the amounts and everything before them is the vendor name.
+     * The prev field may be blank, {@code -} or left out to carry over the last end balance.
+     */
+    public ParsedBatch parseText(String text) {
+        List<SaleInput> lines = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        String[] rows = text.split("\\R");
+        for (int i = 0; i < rows.length; i++) {
+            String row = rows[i].trim();
+            if (row.isEmpty()) continue;
+            String[] fields = row.matches(".*[,;\\t].*") ? row.split("\\s*[,;\\t]\\s*") : splitOnLastNumbers(row);
+            addLine(i + 1, List.of(fields), lines, errors);
+        }
+        return new ParsedBatch(lines, errors);
+    }
+
+    /**
+     * Reads an uploaded CSV file with the columns vendor, prev, topup, end (a header row is optional).
+     * As with pasted lines, prev may be blank or left out.
+     */
+    public ParsedBatch parseCsv(Reader reader) throws IOException {
+        List<SaleInput> lines = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        CSVFormat format = CSVFormat.DEFAULT.builder().setIgnoreEmptyLines(true).setTrim(true).build();
+        for (CSVRecord record : format.parse(reader)) {
+            addLine((int) record.getRecordNumber(), record.toList(), lines, errors);
+        }
+        return new ParsedBatch(lines, errors);
+    }
+
+    private static String[] splitOnLastNumbers(String row) {
+        String[] words = row.split("\\s+");
+        int n = words.length;
+        // Up to three trailing amounts; with only two, prev was left out
+        int amounts = 0;
+        while (amounts < 3 && amounts < n - 1 && isAmountOrBlank(words[n - 1 - amounts])) amounts++;
+        if (amounts < 2) return words;
+        String[] fields = new String[amounts + 1];
+        fields[0] = String.join(" ", Arrays.copyOfRange(words, 0, n - amounts));
+        System.arraycopy(words, n - amounts, fields, 1, amounts);
+        return fields;
+    }
+
+    private static boolean isAmountOrBlank(String word) {
+        return word.equals("-") || isNumber(word);
+    }
+
+    private static boolean isNumber(String word) {
+        return AMOUNT.matcher(word).matches();
+    }
+
+    private static void addLine(int lineNo, List<String> fields, List<SaleInput> lines, List<String> errors) {
+        if (fields.size() >= 3 && lines.isEmpty() && errors.isEmpty() && isHeader(fields)) {
+            return; // Header row
+        }
+        if (fields.size() != 4 && fields.size() != 3) {
+            errors.add("Line " + lineNo + ": expected vendor, prev, topup, end but found " + fields.size() + " field(s)");
+            return;
+        }
+        String name = fields.get(0).trim();
+        if (name.isEmpty()) {
+            errors.add("Line " + lineNo + ": vendor name is empty");
+            return;
+        }
+        try {
+            // Three fields: vendor, topup, end
+            int topup = fields.size() - 2;
+            Double prev = (fields.size() == 3) ? null : parseOptionalAmount(fields.get(1));
+            lines.add(new SaleInput(lineNo, name, prev, parseAmount(fields.get(topup)), parseAmount(fields.get(topup + 1))));
+        } catch (IllegalArgumentException e) {
+            errors.add("Line " + lineNo + " (" + name + "): " + e.getMessage());
+        }
+    }
+
+    // Column titles, not amounts: a vendor whose name starts with "vendor" still has numbers after it
+    private static boolean isHeader(List<String> fields) {
+        if (!fields.get(0).trim().toLowerCase(Locale.ROOT).startsWith("vendor")) return false;
+        for (String field : fields.subList(1, fields.size())) {
+            if (isNumber(field.trim())) return false;
+        }
+        return true;
+    }
+
+    private static Double parseOptionalAmount(String field) {
+        String value = field.trim();
+        return (value.isEmpty() || value.equals("-")) ? null : parseAmount(value);
+    }
+
+    // Plain decimals only: Double.parseDouble would also take NaN, Infinity, hex and 1e3
+    private static double parseAmount(String field) {
+        String value = field.trim();
+        double amount = isNumber(value) ? Double.parseDouble(value) : Double.NaN;
+        if (!Double.isFinite(amount)) {
+            throw new NumberFormatException("not a number: '" + value + "'");
+        }
+        if (amount < 0) {
+            throw new IllegalArgumentException("balances and top-ups can't be negative: '" + value + "'");
+        }
+        return amount;
+    }
+
+    // --- Saving a batch ---
+
+    /**
+     * Validates a batch against the vendor list, computes every vendor's line in one pass and, if
+     * nothing is wrong, saves them all with a single {@link ReportService#updateSales} call.
+     */
+    public BatchResult submit(LocalDate date, ParsedBatch batch) {
+        List<String> errors = new ArrayList<>(batch.errors());
+        if (batch.lines().isEmpty() && errors.isEmpty()) {
+            errors.add("No vendor lines found");
+        }
+
+        Map<String, Vendor> vendorsByName = new HashMap<>();
+        for (Vendor vendor : vendorRepository.findAll()) {
+            vendorsByName.put(vendor.getName().toLowerCase(Locale.ROOT), vendor);
+        }
+
+        Set<String> seen = new HashSet<>();
+        List<Vendor> matched = new ArrayList<>();
+        for (SaleInput line : batch.lines()) {
+            String key = line.vendorName().toLowerCase(Locale.ROOT);
+            Vendor vendor = vendorsByName.get(key);
+            if (vendor == null) {
+                errors.add("Line " + line.lineNo() + ": unknown vendor '" + line.vendorName() + "'");
+            } else if (!seen.add(key)) {
+                errors.add("Line " + line.lineNo() + ": " + vendor.getName() + " appears more than once");
+            }
+            matched.add(vendor);
+        }
+
+        // Carry over the last end balance where prev was left out
+        double[] prevBalances = new double[batch.lines().size()];
+        for (int i = 0; i < batch.lines().size(); i++) {
+            SaleInput line = batch.lines().get(i);
+            Vendor vendor = matched.get(i);
+            if (line.prevBalance() != null) {
+                prevBalances[i] = line.prevBalance();
+            } else if (vendor != null) {
+                VendorBalanceCache.Closing opening = vendorBalanceCache.openingFor(vendor.getId(), date);
+                if (opening == null) {
+                    errors.add("Line " + line.lineNo() + ": no earlier end balance recorded for " + vendor.getName() + ", please give prev");
+                } else {
+                    prevBalances[i] = opening.endBalance();
+                }
+            }
+        }
+
+        List<String> missing = vendorsByName.entrySet().stream()
+                .filter(e -> !seen.contains(e.getKey()))
+                .map(e -> e.getValue().getName())
+                .sorted()
+                .toList();
+
+        if (!errors.isEmpty()) {
+            return new BatchResult(List.of(), errors, missing, null);
+        }
+
+        // For the lines returned; updateSales re-costs them at the factor it finds under the day's lock
+        double costFactor = reportService.costFactor(date);
+        PricingSnapshot pricing = pricingService.current();
+        List<DailyVendorReport> reports = new ArrayList<>(batch.lines().size());
+        for (int i = 0; i < batch.lines().size(); i++) {
+            SaleInput line = batch.lines().get(i);
+            reports.add(computeSale(matched.get(i), pricing, prevBalances[i], line.topup(), line.endBalance(), costFactor));
+        }
+
+        String pnlStatus = reportService.updateSales(date, reports, pricing.version());
+        log.info("Bulk sales for {}: {} vendor(s) saved, {} not included", date, reports.size(), missing.size());
+        return new BatchResult(reports, List.of(), missing, pnlStatus);
+    }
+}
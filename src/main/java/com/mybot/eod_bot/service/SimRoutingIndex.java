@@ -0,0 +1,247 @@
+package com.mybot.eod_bot.service;
+
+import com.mybot.eod_bot.model.Distributor;
+import com.mybot.eod_bot.repository.DistributorRepository;
+import com.mybot.eod_bot.repository.LapuSimRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-memory lapuNo -> distributor routing used by the statement parser.
+ * It is loaded once at startup and then patched by BotOperationsService after each commit,
+ * so uploads never have to load the SIM table. In a cluster, a change made on another node bumps
+ * the {@value #EPOCH} epoch and the index is rebuilt the next time it is used.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SimRoutingIndex {
+
+    private final LapuSimRepository lapuSimRepository;
+    private final DistributorRepository distributorRepository;
+    private final ClusterCoordinator clusterCoordinator;
+
+    public static final String EPOCH = "sim_routing";
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private volatile long builtAtEpoch = -1;
+    // One Route per distributor, shared by all its SIMs. Guarded by this
+    private final Map<Long, Route> routesByDistributor = new HashMap<>();
+
+    /**
+     * Where a SIM's purchases are billed. One instance is shared by all SIMs of a distributor.
+     * What the distributor charges comes from the {@link PricingSnapshot}, not from here.
+     */
+    public static final class Route {
+        public final long distributorId;
+        public final String distributorName;
+
+        Route(Distributor dist) {
+            this.distributorId = dist.getId();
+            this.distributorName = dist.getName();
+        }
+    }
+
+    /**
+     * Immutable view of the index. Numeric SIM numbers (the normal case) are kept as a sorted
+     * long[] with a parallel Route[], so there is no String or map entry per SIM.
+     */
+    public static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(new long[0], new Route[0], Map.of());
+
+        private final long[] numericKeys;
+        private final Route[] numericRoutes;
+        private final Map<String, Route> otherKeys; // e.g. numbers with a leading zero
+
+        private Snapshot(long[] numericKeys, Route[] numericRoutes, Map<String, Route> otherKeys) {
+            this.numericKeys = numericKeys;
+            this.numericRoutes = numericRoutes;
+            this.otherKeys = otherKeys;
+        }
+
+        public Route lookup(String lapuNo) {
+            long key = numericKey(lapuNo);
+            if (key < 0) {
+                return otherKeys.get(lapuNo);
+            }
+            int pos = Arrays.binarySearch(numericKeys, key);
+            return (pos < 0) ? null : numericRoutes[pos];
+        }
+
+        public int size() { return numericKeys.length + otherKeys.size(); }
+
+        public boolean isEmpty() { return size() == 0; }
+
+        // A copy with the given SIMs routed to {@code route}: new numeric keys are copied into place
+        // around their binary-search positions, and only non-numeric keys touch the side map
+        private Snapshot with(Route route, Collection<String> lapuNos) {
+            long[] added = new long[lapuNos.size()];
+            int n = 0;
+            Map<String, Route> others = null;
+            for (String lapuNo : lapuNos) {
+                long key = numericKey(lapuNo);
+                if (key >= 0) {
+                    added[n++] = key;
+                } else {
+                    if (others == null) others = new HashMap<>(otherKeys);
+                    others.put(lapuNo, route);
+                }
+            }
+            Arrays.sort(added, 0, n);
+
+            int fresh = 0;
+            for (int i = 0; i < n; i++) {
+                if ((i == 0 || added[i] != added[i - 1]) && Arrays.binarySearch(numericKeys, added[i]) < 0) fresh++;
+            }
+            long[] keys = new long[numericKeys.length + fresh];
+            Route[] routes = new Route[keys.length];
+            int from = 0; // Next old entry to copy
+            int to = 0;   // Next free slot
+            for (int i = 0; i < n; i++) {
+                if (i > 0 && added[i] == added[i - 1]) continue;
+                int pos = Arrays.binarySearch(numericKeys, from, numericKeys.length, added[i]);
+                int end = (pos < 0) ? -pos - 1 : pos;
+                System.arraycopy(numericKeys, from, keys, to, end - from);
+                System.arraycopy(numericRoutes, from, routes, to, end - from);
+                to += end - from;
+                keys[to] = added[i];
+                routes[to++] = route;
+                from = (pos < 0) ? end : pos + 1; // An indexed SIM is moved, not added
+            }
+            System.arraycopy(numericKeys, from, keys, to, numericKeys.length - from);
+            System.arraycopy(numericRoutes, from, routes, to, numericKeys.length - from);
+            return new Snapshot(keys, routes, (others == null) ? otherKeys : Map.copyOf(others));
+        }
+
+        // A copy without the SIM, or this snapshot if it isn't indexed
+        private Snapshot without(String lapuNo) {
+            long key = numericKey(lapuNo);
+            if (key < 0) {
+                if (!otherKeys.containsKey(lapuNo)) return this;
+                Map<String, Route> others = new HashMap<>(otherKeys);
+                others.remove(lapuNo);
+                return new Snapshot(numericKeys, numericRoutes, Map.copyOf(others));
+            }
+            int pos = Arrays.binarySearch(numericKeys, key);
+            if (pos < 0) return this;
+            long[] keys = new long[numericKeys.length - 1];
+            Route[] routes = new Route[keys.length];
+            System.arraycopy(numericKeys, 0, keys, 0, pos);
+            System.arraycopy(numericRoutes, 0, routes, 0, pos);
+            System.arraycopy(numericKeys, pos + 1, keys, pos, keys.length - pos);
+            System.arraycopy(numericRoutes, pos + 1, routes, pos, keys.length - pos);
+            return new Snapshot(keys, routes, otherKeys);
+        }
+
+        // A copy without the distributor's SIMs, compacted in one pass (the keys stay sorted)
+        private Snapshot withoutDistributor(long distributorId) {
+            long[] keys = new long[numericKeys.length];
+            Route[] routes = new Route[numericKeys.length];
+            int n = 0;
+            for (int i = 0; i < numericKeys.length; i++) {
+                if (numericRoutes[i].distributorId != distributorId) {
+                    keys[n] = numericKeys[i];
+                    routes[n++] = numericRoutes[i];
+                }
+            }
+            boolean otherKeysRouted = otherKeys.values().stream().anyMatch(route -> route.distributorId == distributorId);
+            if (n == numericKeys.length && !otherKeysRouted) return this;
+
+            Map<String, Route> others = otherKeys;
+            if (otherKeysRouted) {
+                Map<String, Route> kept = new HashMap<>(otherKeys);
+                kept.values().removeIf(route -> route.distributorId == distributorId);
+                others = Map.copyOf(kept);
+            }
+            return (n == numericKeys.length)
+                    ? new Snapshot(numericKeys, numericRoutes, others)
+                    : new Snapshot(Arrays.copyOf(keys, n), Arrays.copyOf(routes, n), others);
+        }
+
+        private static Snapshot of(Map<String, Route> routes) {
+            Map<String, Route> others = new HashMap<>();
+            long[] keys = new long[routes.size()];
+            int n = 0;
+            for (String lapuNo : routes.keySet()) {
+                long key = numericKey(lapuNo);
+                if (key < 0) others.put(lapuNo, routes.get(lapuNo));
+                else keys[n++] = key;
+            }
+            keys = Arrays.copyOf(keys, n);
+            Arrays.sort(keys);
+
+            Route[] values = new Route[n];
+            for (int i = 0; i < n; i++) {
+                values[i] = routes.get(Long.toString(keys[i]));
+            }
+            return new Snapshot(keys, values, Map.copyOf(others));
+        }
+
+        /** Returns the SIM number as a long, or -1 if it can't be stored without losing its exact text. */
+        private static long numericKey(String lapuNo) {
+            int len = lapuNo.length();
+            if (len == 0 || len > 18 || (lapuNo.charAt(0) == '0' && len > 1)) return -1;
+            long value = 0;
+            for (int i = 0; i < len; i++) {
+                char c = lapuNo.charAt(i);
+                if (c < '0' || c > '9') return -1;
+                value = value * 10 + (c - '0');
+            }
+            return value;
+        }
+    }
+
+    @PostConstruct
+    public synchronized void rebuild() {
+        long epoch = clusterCoordinator.enabled() ? clusterCoordinator.epoch(EPOCH) : 0; // Read before the tables
+        Map<Long, Route> distributors = new HashMap<>();
+        for (Distributor dist : distributorRepository.findAll()) {
+            distributors.put(dist.getId(), new Route(dist));
+        }
+
+        Map<String, Route> routes = new HashMap<>();
+        for (LapuSimRepository.SimAssignment sim : lapuSimRepository.findAllAssignments()) {
+            Route route = distributors.get(sim.getDistributorId());
+            if (route != null) routes.put(sim.getLapuNo(), route);
+        }
+
+        snapshot = Snapshot.of(routes);
+        routesByDistributor.clear();
+        routesByDistributor.putAll(distributors);
+        builtAtEpoch = epoch;
+        log.info("SIM routing index built: {} SIM(s) across {} distributor(s)", snapshot.size(), distributors.size());
+    }
+
+    /** The current index. Callers should hold on to it for the duration of one parse. */
+    public Snapshot snapshot() {
+        if (clusterCoordinator.enabled() && clusterCoordinator.epoch(EPOCH) != builtAtEpoch) {
+            rebuild(); // Changed on another node (or patched here, which is rebuilt once too)
+        }
+        return snapshot;
+    }
+
+    public boolean isEmpty() { return snapshot().isEmpty(); }
+
+    // Changes below copy only the arrays they touch; the index is rebuilt from the tables only on load
+
+    public synchronized void assign(Distributor dist, Collection<String> lapuNos) {
+        Route route = routesByDistributor.computeIfAbsent(dist.getId(), id -> new Route(dist));
+        snapshot = snapshot.with(route, lapuNos);
+    }
+
+    public synchronized void unassign(String lapuNo) {
+        snapshot = snapshot.without(lapuNo);
+    }
+
+    public synchronized void removeDistributor(long distributorId) {
+        routesByDistributor.remove(distributorId);
+        snapshot = snapshot.withoutDistributor(distributorId);
+    }
+}
@@ -0,0 +1,140 @@
+package com.mybot.eod_bot.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs slow upload work (download, parse, DB writes) off the Telegram polling thread.
+ * The queue is bounded across all chats, jobs of one chat run strictly in submission order,
+ * and jobs of different chats run in parallel on the worker pool.
+ */
+@Slf4j
+@Service
+public class UploadJobQueue {
+
+    private final int capacity;
+    private final ExecutorService workers;
+
+    // Pending jobs per chat. A chat is in this map while it has a job running or waiting.
+    private final Map<Long, Deque<Job>> chatQueues = new HashMap<>();
+    // Jobs not started yet across all chats, whether behind their chat's running job or waiting
+    // for a free worker in the pool's queue. Guarded by this.
+    private int pending = 0;
+
+    // --- Stats ---
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong totalWaitMillis = new AtomicLong();
+    private final AtomicLong totalRunMillis = new AtomicLong();
+    private final AtomicLong maxRunMillis = new AtomicLong();
+
+    private record Job(long chatId, String description, Runnable work, long enqueuedAt) {}
+
+    public record Stats(int pending, int running, long completed, long failed, long avgWaitMillis, long avgRunMillis, long maxRunMillis) {}
+
+    public UploadJobQueue(@Value("${eodbot.upload.workers:2}") int workerCount,
+                          @Value("${eodbot.upload.queue-capacity:20}") int capacity) {
+        this.capacity = capacity;
+        // Platform threads on Java 17. On Java 21 this can become Executors.newVirtualThreadPerTaskExecutor().
+        this.workers = Executors.newFixedThreadPool(workerCount, namedThreads("upload-worker-"));
+        log.info("Upload queue started with {} worker(s), capacity {}", workerCount, capacity);
+    }
+
+    /**
+     * Queues a job for a chat.
+     * @return how many jobs are ahead of it for that chat (0 = starts right away)
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public synchronized int submit(long chatId, String description, Runnable work) {
+        if (pending >= capacity) {
+            throw new RejectedExecutionException("Upload queue is full (" + capacity + " jobs waiting)");
+        }
+        Job job = new Job(chatId, description, work, System.nanoTime());
+        pending++;
+        Deque<Job> chatQueue = chatQueues.get(chatId);
+        if (chatQueue == null) {
+            // Nothing running for this chat; start as soon as a worker is free
+            chatQueues.put(chatId, new ArrayDeque<>());
+            workers.execute(() -> run(job));
+            return 0;
+        }
+        chatQueue.addLast(job);
+        return chatQueue.size();
+    }
+
+    private void run(Job job) {
+        leavePending();
+        long started = System.nanoTime();
+        long waitMillis = TimeUnit.NANOSECONDS.toMillis(started - job.enqueuedAt());
+        running.incrementAndGet();
+        try {
+            job.work().run();
+            completed.incrementAndGet();
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            log.error("Upload job '{}' for chat {} failed: {}", job.description(), job.chatId(), e.getMessage(), e);
+        } finally {
+            running.decrementAndGet();
+            long runMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            totalWaitMillis.addAndGet(waitMillis);
+            totalRunMillis.addAndGet(runMillis);
+            maxRunMillis.accumulateAndGet(runMillis, Math::max);
+            log.info("Upload job '{}' for chat {} done: waited {} ms, ran {} ms", job.description(), job.chatId(), waitMillis, runMillis);
+            startNext(job.chatId());
+        }
+    }
+
+    private synchronized void startNext(long chatId) {
+        Deque<Job> chatQueue = chatQueues.get(chatId);
+        Job next = (chatQueue == null) ? null : chatQueue.pollFirst();
+        if (next == null) {
+            chatQueues.remove(chatId);
+            return;
+        }
+        workers.execute(() -> run(next)); // Still pending until a worker picks it up
+    }
+
+    private synchronized void leavePending() {
+        pending--;
+    }
+
+    public synchronized Stats stats() {
+        long done = completed.get() + failed.get();
+        return new Stats(pending, running.get(), completed.get(), failed.get(),
+                done == 0 ? 0 : totalWaitMillis.get() / done,
+                done == 0 ? 0 : totalRunMillis.get() / done,
+                maxRunMillis.get());
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        workers.shutdown();
+        if (!workers.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("Upload workers did not finish in time; {} job(s) dropped", workers.shutdownNow().size());
+        }
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
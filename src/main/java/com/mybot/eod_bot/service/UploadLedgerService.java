@@ -0,0 +1,94 @@
+package com.mybot.eod_bot.service;
+
+import com.mybot.eod_bot.model.ProcessedUpload;
+import com.mybot.eod_bot.repository.ProcessedUploadRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ledger of processed purchase statements, so a statement sent again for the same day is answered
+ * with the earlier result instead of being downloaded, parsed and written again.
+ * A file is recognised by Telegram's file_unique_id before download, or by its SHA-256 after.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UploadLedgerService {
+
+    private final ProcessedUploadRepository repository;
+    private final ClusterCoordinator clusterCoordinator;
+
+    // How long a node's claim on an upload holds if it dies while processing
+    private static final Duration CLAIM_TTL = Duration.ofMinutes(30);
+
+    // file_unique_id/date of statements queued or being processed right now
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private final AtomicLong duplicates = new AtomicLong();
+
+    /** @return the earlier processing of this exact Telegram file for the day, or null */
+    public ProcessedUpload findByFile(String fileUniqueId, LocalDate reportDate) {
+        return counted(repository.findByFileUniqueIdAndReportDate(fileUniqueId, reportDate).orElse(null));
+    }
+
+    /** @return the latest earlier processing of a file with the same content for the day, or null */
+    public ProcessedUpload findByContent(String contentSha256, LocalDate reportDate) {
+        return counted(repository.findFirstByContentSha256AndReportDateOrderByProcessedAtDesc(contentSha256, reportDate).orElse(null));
+    }
+
+    private ProcessedUpload counted(ProcessedUpload found) {
+        if (found != null) duplicates.incrementAndGet();
+        return found;
+    }
+
+    /**
+     * Claims a file for processing, on every node of a cluster.
+     * @return false if the same file for the same day is already queued or being processed
+     */
+    public boolean begin(String fileUniqueId, LocalDate reportDate) {
+        String key = key(fileUniqueId, reportDate);
+        if (!inFlight.add(key)) return false;
+        if (!clusterCoordinator.claim("upload:" + key, CLAIM_TTL)) {
+            inFlight.remove(key);
+            return false;
+        }
+        return true;
+    }
+
+    /** Releases a claim taken by {@link #begin}, whether or not processing succeeded. */
+    public void finish(String fileUniqueId, LocalDate reportDate) {
+        String key = key(fileUniqueId, reportDate);
+        clusterCoordinator.release("upload:" + key);
+        inFlight.remove(key);
+    }
+
+    /** Records (or, when a file is processed again on purpose, replaces) the result for a file and day. */
+    public void record(String fileUniqueId, LocalDate reportDate, String contentSha256, String fileName, String result) {
+        ProcessedUpload upload = repository.findByFileUniqueIdAndReportDate(fileUniqueId, reportDate)
+                .orElseGet(ProcessedUpload::new);
+        upload.setFileUniqueId(fileUniqueId);
+        upload.setReportDate(reportDate);
+        upload.setContentSha256(contentSha256);
+        upload.setFileName(fileName);
+        upload.setResult(result);
+        upload.setProcessedAt(Instant.now());
+        repository.save(upload);
+        log.info("Recorded upload {} ({}) for {}", fileName, contentSha256, reportDate);
+    }
+
+    /** Uploads answered from the ledger since startup. */
+    public long duplicates() {
+        return duplicates.get();
+    }
+
+    private static String key(String fileUniqueId, LocalDate reportDate) {
+        return fileUniqueId + "/" + reportDate;
+    }
+}
@@ -0,0 +1,123 @@
+package com.mybot.eod_bot.service;
+
+import com.mybot.eod_bot.model.DailyVendorReport;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Each vendor's last recorded closing (end) balance, so the next day's sales entry can start
+ * from it instead of asking for "yesterday's end balance" again.
+ * Holds the latest closing per vendor; anything older is looked up in the database.
+ * In a cluster every lookup goes to the database, since sales may have been saved on another node.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class VendorBalanceCache {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ClusterCoordinator clusterCoordinator;
+
+    /** A vendor's end balance on a given day. */
+    public record Closing(LocalDate date, double endBalance) {}
+
+    private final Map<Long, Closing> latest = new ConcurrentHashMap<>();
+
+    private static final String LATEST_SQL =
+            "SELECT DISTINCT ON (v.vendor_id) v.vendor_id, r.date, v.end_balance " +
+                    "FROM daily_vendor_reports v JOIN daily_reports r ON r.id = v.report_id " +
+                    "WHERE v.vendor_id IS NOT NULL AND v.end_balance IS NOT NULL " +
+                    "ORDER BY v.vendor_id, r.date DESC, v.id DESC";
+
+    private static final String BEFORE_SQL =
+            "SELECT r.date, v.end_balance " +
+                    "FROM daily_vendor_reports v JOIN daily_reports r ON r.id = v.report_id " +
+                    "WHERE v.vendor_id = ? AND r.date < ? AND v.end_balance IS NOT NULL " +
+                    "ORDER BY r.date DESC, v.id DESC LIMIT 1";
+
+    @PostConstruct
+    public void load() {
+        latest.clear();
+        jdbcTemplate.query(LATEST_SQL, rs -> {
+            latest.put(rs.getLong(1), new Closing(rs.getDate(2).toLocalDate(), rs.getDouble(3)));
+        });
+        log.info("Loaded closing balances for {} vendor(s)", latest.size());
+    }
+
+    /**
+     * The balance a vendor opens the given day with: its latest closing before that day.
+     * @return null if the vendor has no recorded closing before the day
+     */
+    public Closing openingFor(long vendorId, LocalDate date) {
+        if (clusterCoordinator.enabled()) {
+            return closingBefore(vendorId, date);
+        }
+        Closing cached = latest.get(vendorId);
+        if (cached != null && cached.date().isBefore(date)) {
+            return cached;
+        }
+        if (cached == null) {
+            return null; // Nothing recorded for this vendor at all
+        }
+        // The latest closing is on or after this day (e.g. the day is being entered again)
+        return closingBefore(vendorId, date);
+    }
+
+    /**
+     * Records a day's saved sales lines. Inside a transaction this takes effect after commit,
+     * so the cache never shows balances that were rolled back.
+     */
+    public void onSalesSaved(LocalDate date, List<DailyVendorReport> reports) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(date, reports);
+                }
+            });
+        } else {
+            apply(date, reports);
+        }
+    }
+
+    private void apply(LocalDate date, List<DailyVendorReport> reports) {
+        Set<Long> present = new HashSet<>();
+        for (DailyVendorReport vr : reports) {
+            if (vr.getVendorId() == null || vr.getEndBalance() == null) continue;
+            present.add(vr.getVendorId());
+            Closing closing = new Closing(date, vr.getEndBalance());
+            latest.merge(vr.getVendorId(), closing, (old, now) -> now.date().isBefore(old.date()) ? old : now);
+        }
+        // The day's lines were replaced: a vendor left out of them now closes on an earlier day
+        for (Map.Entry<Long, Closing> e : List.copyOf(latest.entrySet())) {
+            if (e.getValue().date().equals(date) && !present.contains(e.getKey())) {
+                Closing previous = closingBefore(e.getKey(), date.plusDays(1));
+                if (previous == null) latest.remove(e.getKey());
+                else latest.put(e.getKey(), previous);
+            }
+        }
+    }
+
+    private Closing closingBefore(long vendorId, LocalDate date) {
+        List<Closing> before = jdbcTemplate.query(BEFORE_SQL,
+                (rs, i) -> new Closing(rs.getDate(1).toLocalDate(), rs.getDouble(2)), vendorId, Date.valueOf(date));
+        return before.isEmpty() ? null : before.get(0);
+    }
+
+    public void forgetVendor(long vendorId) {
+        latest.remove(vendorId);
+    }
+}
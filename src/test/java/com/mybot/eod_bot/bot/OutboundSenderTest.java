@@ -0,0 +1,300 @@
+package com.mybot.eod_bot.bot;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.ResponseParameters;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Sends through a scripted transport instead of Telegram. */
+class OutboundSenderTest {
+
+	private static final byte[] CSV = "date,load\n2025-10-30,1500\n".getBytes(StandardCharsets.UTF_8);
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	/** Fails the next sends with the queued errors, then records what it is given. */
+	private static final class ScriptedTransport implements OutboundSender.Transport {
+		final Deque<TelegramApiException> failures = new ArrayDeque<>();
+		final List<String> texts = new CopyOnWriteArrayList<>();
+		final List<byte[]> documents = new CopyOnWriteArrayList<>();
+		final AtomicInteger attempts = new AtomicInteger();
+		final CountDownLatch delivered = new CountDownLatch(1);
+
+		@Override
+		public synchronized void send(SendMessage message) throws TelegramApiException {
+			attempts.incrementAndGet();
+			if (!failures.isEmpty()) throw failures.poll();
+			texts.add(message.getText());
+			delivered.countDown();
+		}
+
+		@Override
+		public synchronized void send(SendDocument document) throws TelegramApiException {
+			attempts.incrementAndGet();
+			if (!failures.isEmpty()) throw failures.poll();
+			try {
+				documents.add(document.getDocument().getNewMediaStream().readAllBytes());
+			} catch (IOException e) {
+				throw new TelegramApiException(e);
+			}
+			delivered.countDown();
+		}
+	}
+
+	private final ScriptedTransport transport = new ScriptedTransport();
+	private final OutboundSender sender = new OutboundSender(transport, null, 1, 1, 100, 100, 100);
+
+	@AfterEach
+	void stop() throws InterruptedException {
+		sender.shutdown();
+	}
+
+	// --- Splitting ---
+
+	@Test
+	void leavesShortTextsWhole() {
+		assertEquals(List.of("hello"), OutboundSender.split("hello"));
+	}
+
+	@Test
+	void splitsLongTextsAtLineBreaks() {
+		String line = "x".repeat(99);
+		String text = String.join("\n", Collections.nCopies(100, line)); // 9,999 chars
+
+		List<String> parts = OutboundSender.split(text);
+
+		assertEquals(3, parts.size());
+		for (String part : parts) {
+			assertTrue(part.length() <= OutboundSender.MAX_TEXT);
+			assertFalse(part.startsWith("\n") || part.endsWith("\n"));
+		}
+		assertEquals(text, String.join("\n", parts));
+	}
+
+	@Test
+	void cutsALineLongerThanAMessage() {
+		String text = "y".repeat(OutboundSender.MAX_TEXT * 2 + 10);
+
+		List<String> parts = OutboundSender.split(text);
+
+		assertEquals(List.of(OutboundSender.MAX_TEXT, OutboundSender.MAX_TEXT, 10), parts.stream().map(String::length).toList());
+		assertEquals(text, String.join("", parts));
+	}
+
+	// --- Rate limits ---
+
+	@Test
+	void tokenBucketAllowsItsBurstThenRefillsAtItsRate() {
+		OutboundSender.TokenBucket bucket = new OutboundSender.TokenBucket(2, 3, 0);
+		for (int i = 0; i < 3; i++) {
+			assertTrue(bucket.available(0));
+			bucket.take();
+		}
+		assertFalse(bucket.available(0));
+		assertEquals(SECOND / 2, bucket.nanosUntilAvailable(0));
+
+		assertTrue(bucket.available(SECOND / 2));
+		bucket.take();
+		assertFalse(bucket.available(SECOND / 2));
+	}
+
+	@Test
+	void tokenBucketNeverStoresMoreThanItsBurst() {
+		OutboundSender.TokenBucket bucket = new OutboundSender.TokenBucket(1, 2, 0);
+		long later = 60 * SECOND;
+		bucket.take();
+		bucket.take();
+		for (int i = 0; i < 2; i++) {
+			assertTrue(bucket.available(later));
+			bucket.take();
+		}
+		assertFalse(bucket.available(later));
+	}
+
+	// --- Failures ---
+
+	@Test
+	void retriesATextAfterRetryAfter() throws Exception {
+		transport.failures.add(error(429, 0));
+
+		sender.sendText(1, "hello", "HTML");
+
+		assertTrue(transport.delivered.await(5, TimeUnit.SECONDS));
+		assertEquals(List.of("hello"), transport.texts);
+		assertEquals(2, transport.attempts.get());
+		assertEquals(1, sender.stats().throttled());
+	}
+
+	@Test
+	void holdsBackEveryChatAfterA429() throws Exception {
+		transport.failures.add(error(429, 1));
+
+		sender.sendText(1, "first", "HTML");
+		awaitTrue(() -> sender.stats().throttled() == 1);
+		long throttledAt = System.nanoTime();
+		sender.sendText(2, "second", "HTML");
+
+		awaitTrue(() -> transport.texts.contains("second"));
+		assertTrue(System.nanoTime() - throttledAt >= SECOND * 9 / 10, "another chat waited out the retry_after");
+		awaitTrue(() -> transport.texts.contains("first"));
+	}
+
+	@Test
+	void resendsADocumentFromAFreshStreamAfterA429() throws Exception {
+		transport.failures.add(error(429, 0));
+		AtomicInteger opened = new AtomicInteger();
+		AtomicInteger failed = new AtomicInteger();
+
+		sender.sendDocument(1, "export.csv", "export.csv", () -> {
+			opened.incrementAndGet();
+			return new ByteArrayInputStream(CSV);
+		}, failed::incrementAndGet);
+
+		assertTrue(transport.delivered.await(5, TimeUnit.SECONDS));
+		assertEquals(2, opened.get());
+		assertEquals(1, transport.documents.size());
+		assertEquals(new String(CSV, StandardCharsets.UTF_8), new String(transport.documents.get(0), StandardCharsets.UTF_8));
+		assertEquals(0, failed.get());
+	}
+
+	@Test
+	void resendsADocumentFromAFreshStreamAfterAServerError() throws Exception {
+		transport.failures.add(error(502, null));
+		List<TrackedStream> streams = new CopyOnWriteArrayList<>();
+
+		sender.sendDocument(1, "export.csv", "export.csv", () -> {
+			TrackedStream stream = new TrackedStream(CSV);
+			streams.add(stream);
+			return stream;
+		}, () -> {});
+
+		assertTrue(transport.delivered.await(10, TimeUnit.SECONDS));
+		assertEquals(2, streams.size());
+		assertEquals(CSV.length, transport.documents.get(0).length);
+		awaitClosed(streams);
+	}
+
+	@Test
+	void givesUpOnADocumentTelegramRejectsAndSaysSo() throws Exception {
+		transport.failures.add(error(400, null));
+		CountDownLatch failed = new CountDownLatch(1);
+		List<TrackedStream> streams = new CopyOnWriteArrayList<>();
+
+		sender.sendDocument(1, "export.csv", "export.csv", () -> {
+			TrackedStream stream = new TrackedStream(CSV);
+			streams.add(stream);
+			return stream;
+		}, failed::countDown);
+
+		assertTrue(failed.await(5, TimeUnit.SECONDS));
+		assertEquals(1, transport.attempts.get());
+		assertEquals(1, sender.stats().dropped());
+		awaitClosed(streams);
+	}
+
+	@Test
+	void givesUpOnADocumentThatCannotBeOpened() throws Exception {
+		CountDownLatch failed = new CountDownLatch(1);
+
+		sender.sendDocument(1, "export.csv", "export.csv", () -> {
+			throw new IOException("export failed");
+		}, failed::countDown);
+
+		assertTrue(failed.await(5, TimeUnit.SECONDS));
+		assertEquals(0, transport.attempts.get());
+	}
+
+	// --- Documents ---
+
+	@Test
+	void sendsTextsWhileDocumentsAreUploading() throws Exception {
+		CountDownLatch uploading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger secondOpened = new AtomicInteger();
+
+		sender.sendDocument(1, "export.csv", "export.csv", () -> {
+			uploading.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+			return new ByteArrayInputStream(CSV);
+		}, () -> {});
+		assertTrue(uploading.await(5, TimeUnit.SECONDS));
+		sender.sendDocument(2, "export.csv", "export.csv", () -> {
+			secondOpened.incrementAndGet();
+			return new ByteArrayInputStream(CSV);
+		}, () -> {});
+		sender.sendText(3, "hello", "HTML");
+
+		assertTrue(transport.delivered.await(5, TimeUnit.SECONDS));
+		assertEquals(List.of("hello"), transport.texts);
+		assertEquals(0, secondOpened.get()); // The one document thread is taken
+
+		release.countDown();
+		awaitTrue(() -> transport.documents.size() == 2);
+		assertEquals(1, secondOpened.get());
+	}
+
+	private static TelegramApiRequestException error(int code, Integer retryAfter) {
+		TelegramApiRequestException e = Mockito.mock(TelegramApiRequestException.class);
+		Mockito.when(e.getErrorCode()).thenReturn(code);
+		if (retryAfter != null) {
+			ResponseParameters parameters = Mockito.mock(ResponseParameters.class);
+			Mockito.when(parameters.getRetryAfter()).thenReturn(retryAfter);
+			Mockito.when(e.getParameters()).thenReturn(parameters);
+		}
+		return e;
+	}
+
+	private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + 5 * SECOND;
+		while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue(condition.getAsBoolean());
+	}
+
+	// The sender closes a stream right after the send returns, so give it a moment
+	private static void awaitClosed(List<TrackedStream> streams) throws InterruptedException {
+		long deadline = System.nanoTime() + 5 * SECOND;
+		while (!streams.stream().allMatch(s -> s.closed) && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue(streams.stream().allMatch(s -> s.closed), "every opened stream is closed");
+	}
+
+	private static final class TrackedStream extends ByteArrayInputStream {
+		volatile boolean closed;
+
+		TrackedStream(byte[] bytes) {
+			super(bytes);
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+}
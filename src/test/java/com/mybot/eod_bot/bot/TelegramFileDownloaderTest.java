@@ -0,0 +1,123 @@
+package com.mybot.eod_bot.bot;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Runs the downloader against a local stub of Telegram's file server. */
+class TelegramFileDownloaderTest {
+
+	private static final byte[] STATEMENT = "<table><tr><td>Lapu No</td></tr><tr><td>9000000001</td></tr></table>"
+			.getBytes(StandardCharsets.UTF_8);
+
+	private HttpServer server;
+	private final List<Integer> clientPorts = new CopyOnWriteArrayList<>();
+	private TelegramFileDownloader downloader;
+
+	@BeforeEach
+	void startStub() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/file/botTOKEN/", exchange -> {
+			clientPorts.add(exchange.getRemoteAddress().getPort());
+			String path = exchange.getRequestURI().getPath();
+			try (OutputStream out = exchange.getResponseBody()) {
+				switch (path.substring(path.lastIndexOf('/') + 1)) {
+					case "statement.xls" -> {
+						exchange.sendResponseHeaders(200, STATEMENT.length);
+						out.write(STATEMENT);
+					}
+					case "big.xls" -> {
+						exchange.sendResponseHeaders(200, 4096);
+						out.write(new byte[4096]);
+					}
+					case "chunked.xls" -> {
+						exchange.sendResponseHeaders(200, 0); // No Content-Length
+						for (int i = 0; i < 4; i++) out.write(new byte[1024]);
+					}
+					case "stalled.xls" -> {
+						exchange.sendResponseHeaders(200, 0);
+						out.write(STATEMENT, 0, 10);
+						out.flush();
+						sleep(5_000);
+					}
+					default -> exchange.sendResponseHeaders(404, -1);
+				}
+			} catch (IOException e) {
+				// The client hung up
+			}
+		});
+		server.start();
+		String prefix = "http://127.0.0.1:" + server.getAddress().getPort() + "/file/botTOKEN/";
+		downloader = new TelegramFileDownloader(prefix, Duration.ofSeconds(2), Duration.ofSeconds(1), 1024, null);
+	}
+
+	@AfterEach
+	void stopStub() {
+		downloader.shutdown();
+		server.stop(0);
+	}
+
+	@Test
+	void streamsFilesOverOneConnection() throws IOException {
+		for (int i = 0; i < 2; i++) {
+			try (InputStream in = downloader.open("documents/statement.xls")) {
+				assertArrayEquals(STATEMENT, in.readAllBytes());
+			}
+		}
+		assertEquals(2, clientPorts.size());
+		assertEquals(clientPorts.get(0), clientPorts.get(1), "second download should reuse the connection");
+	}
+
+	@Test
+	void refusesFileLargerThanLimitBeforeReadingIt() {
+		IOException e = assertThrows(IOException.class, () -> downloader.open("documents/big.xls"));
+		assertTrue(e.getMessage().contains("larger than"), e.getMessage());
+	}
+
+	@Test
+	void stopsReadingWhenBodyWithoutLengthPassesLimit() throws IOException {
+		try (InputStream in = downloader.open("documents/chunked.xls")) {
+			IOException e = assertThrows(IOException.class, in::readAllBytes);
+			assertTrue(e.getMessage().contains("larger than"), e.getMessage());
+		}
+	}
+
+	@Test
+	void failsWhenDataStopsArriving() throws IOException {
+		long started = System.nanoTime();
+		try (InputStream in = downloader.open("documents/stalled.xls")) {
+			assertThrows(HttpTimeoutException.class, in::readAllBytes);
+		}
+		assertTrue(System.nanoTime() - started < Duration.ofSeconds(4).toNanos(), "should not wait for the server");
+	}
+
+	@Test
+	void reportsMissingFile() {
+		IOException e = assertThrows(IOException.class, () -> downloader.open("documents/missing.xls"));
+		assertTrue(e.getMessage().contains("404"), e.getMessage());
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
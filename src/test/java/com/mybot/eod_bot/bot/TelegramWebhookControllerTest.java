@@ -0,0 +1,103 @@
+package com.mybot.eod_bot.bot;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/** POSTs recorded Telegram updates to the webhook endpoint, as Telegram would. */
+@WebMvcTest(controllers = TelegramWebhookController.class, properties = {
+		"eodbot.receive-mode=webhook",
+		"eodbot.webhook.path=/telegram/webhook",
+		"eodbot.webhook.secret-token=test-secret_123"
+})
+class TelegramWebhookControllerTest {
+
+	@Autowired
+	private MockMvc mvc;
+
+	@MockitoBean
+	private MyEodBot bot;
+
+	@Test
+	void handsCommandToBot() throws Exception {
+		deliver("update-command.json", "test-secret_123", 200);
+
+		Update update = received();
+		assertEquals(734190051, update.getUpdateId());
+		assertEquals(5120488371L, update.getMessage().getChatId());
+		assertEquals("/run_purchases 2025-10-30", update.getMessage().getText());
+	}
+
+	@Test
+	void handsDocumentToBot() throws Exception {
+		deliver("update-document.json", "test-secret_123", 200);
+
+		Update update = received();
+		assertEquals("statement_2025-10-30.xls", update.getMessage().getDocument().getFileName());
+		assertEquals("AgADuBUAAqtWIFQ", update.getMessage().getDocument().getFileUniqueId());
+	}
+
+	@Test
+	void handsCallbackToBot() throws Exception {
+		deliver("update-callback.json", "test-secret_123", 200);
+
+		Update update = received();
+		assertEquals("delete_dist_3", update.getCallbackQuery().getData());
+		assertEquals(5120488371L, update.getCallbackQuery().getMessage().getChatId());
+	}
+
+	@Test
+	void rejectsWrongSecretToken() throws Exception {
+		deliver("update-command.json", "guessed", 401);
+		verify(bot, never()).onUpdateReceived(any());
+	}
+
+	@Test
+	void rejectsMissingSecretToken() throws Exception {
+		mvc.perform(post("/telegram/webhook").contentType(MediaType.APPLICATION_JSON).content(recorded("update-command.json")))
+				.andExpect(status().isUnauthorized());
+		verify(bot, never()).onUpdateReceived(any());
+	}
+
+	@Test
+	void rejectsMalformedUpdate() throws Exception {
+		mvc.perform(post("/telegram/webhook").contentType(MediaType.APPLICATION_JSON)
+						.header(TelegramWebhookController.SECRET_HEADER, "test-secret_123")
+						.content("{\"update_id\": "))
+				.andExpect(status().isBadRequest());
+		verify(bot, never()).onUpdateReceived(any());
+	}
+
+	private void deliver(String file, String secretToken, int expectedStatus) throws Exception {
+		mvc.perform(post("/telegram/webhook").contentType(MediaType.APPLICATION_JSON)
+						.header(TelegramWebhookController.SECRET_HEADER, secretToken)
+						.content(recorded(file)))
+				.andExpect(status().is(expectedStatus));
+	}
+
+	private Update received() {
+		ArgumentCaptor<Update> captor = ArgumentCaptor.forClass(Update.class);
+		verify(bot).onUpdateReceived(captor.capture());
+		return captor.getValue();
+	}
+
+	private static String recorded(String file) throws IOException {
+		return new ClassPathResource("telegram/" + file).getContentAsString(StandardCharsets.UTF_8);
+	}
+}
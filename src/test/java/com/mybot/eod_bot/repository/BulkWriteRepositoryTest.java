@@ -0,0 +1,112 @@
+package com.mybot.eod_bot.repository;
+
+import com.mybot.eod_bot.model.DailyPurchaseReport;
+import com.mybot.eod_bot.model.DailyVendorReport;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/** How a sync splits a day's rows into inserts, updates and deletes. */
+class BulkWriteRepositoryTest {
+
+	@Test
+	void insertsUpdatesSkipsAndDeletesByName() {
+		List<DailyPurchaseReport> stored = List.of(purchase(1L, "Alpha", 1000, 970), purchase(2L, "Beta", 500, 490),
+				purchase(3L, "Gamma", 200, 196));
+		DailyPurchaseReport alpha = purchase(null, "Alpha", 1000, 970); // Same figures
+		DailyPurchaseReport beta = purchase(null, "Beta", 600, 588);    // Changed
+		DailyPurchaseReport delta = purchase(null, "Delta", 100, 98);   // New
+
+		BulkWriteRepository.RowChanges<DailyPurchaseReport> changes = purchaseChanges(stored, List.of(alpha, beta, delta));
+
+		assertEquals(List.of(delta), changes.inserts());
+		assertEquals(List.of(beta), changes.updates());
+		assertEquals(1, changes.skipped());
+		assertEquals(List.of(3L), changes.deletedIds()); // Gamma is gone
+		assertEquals(1L, alpha.getId());
+		assertEquals(2L, beta.getId());
+		assertNull(delta.getId());
+	}
+
+	@Test
+	void matchesRepeatedNamesInOrder() {
+		List<DailyPurchaseReport> stored = List.of(purchase(1L, "Alpha", 100, 97), purchase(2L, "Alpha", 200, 194),
+				purchase(3L, "Alpha", 300, 291));
+		DailyPurchaseReport first = purchase(null, "Alpha", 100, 97);
+		DailyPurchaseReport second = purchase(null, "Alpha", 250, 242.5);
+
+		BulkWriteRepository.RowChanges<DailyPurchaseReport> changes = purchaseChanges(stored, List.of(first, second));
+
+		assertEquals(1L, first.getId());
+		assertEquals(2L, second.getId());
+		assertEquals(List.of(second), changes.updates());
+		assertEquals(List.of(), changes.inserts());
+		assertEquals(List.of(3L), changes.deletedIds());
+	}
+
+	@Test
+	void writesNothingForAnUnchangedDay() {
+		List<DailyPurchaseReport> stored = List.of(purchase(1L, "Alpha", 1000, 970), purchase(2L, "Beta", 500, 490));
+
+		BulkWriteRepository.RowChanges<DailyPurchaseReport> changes = purchaseChanges(stored,
+				List.of(purchase(null, "Beta", 500, 490), purchase(null, "Alpha", 1000, 970)));
+
+		assertEquals(2, changes.skipped());
+		assertEquals(List.of(), changes.inserts());
+		assertEquals(List.of(), changes.updates());
+		assertEquals(List.of(), changes.deletedIds());
+	}
+
+	@Test
+	void updatesAVendorRowWhenOnlyItsBalancesChanged() {
+		DailyVendorReport stored = vendor(7L, "Acme", 100.0, 50.0, 30.0);
+		DailyVendorReport same = vendor(null, "Acme", 100.0, 50.0, 30.0);
+		DailyVendorReport carriedOver = vendor(null, "Acme", null, 50.0, 30.0); // Same P&L, prev no longer given
+
+		BulkWriteRepository.RowChanges<DailyVendorReport> unchanged = vendorChanges(List.of(stored), List.of(same));
+		BulkWriteRepository.RowChanges<DailyVendorReport> changed = vendorChanges(List.of(stored), List.of(carriedOver));
+
+		assertEquals(1, unchanged.skipped());
+		assertEquals(List.of(carriedOver), changed.updates());
+		assertEquals(7L, carriedOver.getId());
+	}
+
+	private static BulkWriteRepository.RowChanges<DailyPurchaseReport> purchaseChanges(List<DailyPurchaseReport> stored,
+	                                                                                    List<DailyPurchaseReport> rows) {
+		return BulkWriteRepository.diffRows(stored, rows, DailyPurchaseReport::getDistributorName,
+				DailyPurchaseReport::getId, DailyPurchaseReport::setId, BulkWriteRepository::samePurchaseFigures);
+	}
+
+	private static BulkWriteRepository.RowChanges<DailyVendorReport> vendorChanges(List<DailyVendorReport> stored,
+	                                                                                List<DailyVendorReport> rows) {
+		return BulkWriteRepository.diffRows(stored, rows, DailyVendorReport::getVendorName,
+				DailyVendorReport::getId, DailyVendorReport::setId, BulkWriteRepository::sameVendorFigures);
+	}
+
+	private static DailyPurchaseReport purchase(Long id, String distributorName, double loadReceived, double costPayable) {
+		DailyPurchaseReport pr = new DailyPurchaseReport();
+		pr.setId(id);
+		pr.setDistributorName(distributorName);
+		pr.setTotalLoadReceived(loadReceived);
+		pr.setTotalCostPayable(costPayable);
+		return pr;
+	}
+
+	private static DailyVendorReport vendor(Long id, String vendorName, Double prevBalance, Double topup, Double endBalance) {
+		DailyVendorReport vr = new DailyVendorReport();
+		vr.setId(id);
+		vr.setVendorName(vendorName);
+		vr.setVendorId(3L);
+		vr.setGrossRevenue(120);
+		vr.setTotalLoadSold(122.45);
+		vr.setCogs(118.78);
+		vr.setNetProfit(1.22);
+		vr.setPrevBalance(prevBalance);
+		vr.setTopup(topup);
+		vr.setEndBalance(endBalance);
+		return vr;
+	}
+}
@@ -0,0 +1,115 @@
+package com.mybot.eod_bot.service;
+
+import com.mybot.eod_bot.repository.DailyPurchaseReportRepository;
+import com.mybot.eod_bot.repository.DailyReportRepository;
+import com.mybot.eod_bot.repository.DailyVendorReportRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/** Range exports over stubbed repositories and a stubbed transaction manager. */
+class CsvReportServiceTest {
+
+	private static final LocalDate FROM = LocalDate.of(2025, 1, 1);
+	private static final LocalDate TO = LocalDate.of(2025, 12, 31);
+
+	private final DailyReportRepository dailyReportRepository = Mockito.mock(DailyReportRepository.class);
+	private final DailyVendorReportRepository vendorReportRepository = Mockito.mock(DailyVendorReportRepository.class);
+	private final DailyPurchaseReportRepository purchaseReportRepository = Mockito.mock(DailyPurchaseReportRepository.class);
+	private final PlatformTransactionManager transactionManager = Mockito.mock(PlatformTransactionManager.class);
+	private CsvReportService service;
+
+	@BeforeEach
+	void setUp() {
+		when(transactionManager.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
+		when(vendorReportRepository.streamLinesBetween(FROM, TO)).thenReturn(Stream.empty());
+		when(purchaseReportRepository.streamLinesBetween(FROM, TO)).thenReturn(Stream.empty());
+		service = new CsvReportService(dailyReportRepository, vendorReportRepository, purchaseReportRepository,
+				transactionManager, Duration.ofSeconds(2));
+	}
+
+	@AfterEach
+	void tearDown() {
+		service.shutdown();
+	}
+
+	@Test
+	void queriesNothingUntilTheExportIsRead() throws Exception {
+		DailyReportRepository.DailySummary day = day(FROM);
+		when(dailyReportRepository.streamSummariesBetween(FROM, TO)).thenReturn(Stream.of(day));
+
+		try (InputStream export = service.rangeExportCsv(FROM, TO)) {
+			Thread.sleep(100);
+			verifyNoInteractions(transactionManager, dailyReportRepository);
+
+			String csv = new String(export.readAllBytes(), StandardCharsets.UTF_8);
+			assertTrue(csv.startsWith("Export,2025-01-01 to 2025-12-31"), csv);
+			assertTrue(csv.contains("2025-01-01,true,true,0.97,"), csv);
+		}
+		verify(transactionManager).commit(any());
+	}
+
+	@Test
+	void neverQueriesAnExportClosedUnread() throws Exception {
+		service.rangeExportCsv(FROM, TO).close();
+
+		Thread.sleep(100);
+		verifyNoInteractions(transactionManager, dailyReportRepository);
+	}
+
+	@Test
+	void rollsBackWhenTheReaderClosesEarly() throws Exception {
+		DailyReportRepository.DailySummary day = day(FROM);
+		when(dailyReportRepository.streamSummariesBetween(FROM, TO)).thenReturn(Stream.generate(() -> day)); // Endless
+
+		try (InputStream export = service.rangeExportCsv(FROM, TO)) {
+			export.readNBytes(1024);
+		}
+
+		verify(transactionManager, timeout(5000)).rollback(any());
+		verify(transactionManager, never()).commit(any());
+	}
+
+	@Test
+	void rollsBackAndFailsTheReadWhenTheUploadStalls() throws Exception {
+		DailyReportRepository.DailySummary day = day(FROM);
+		when(dailyReportRepository.streamSummariesBetween(FROM, TO)).thenReturn(Stream.generate(() -> day)); // Endless
+
+		try (InputStream export = service.rangeExportCsv(FROM, TO)) {
+			export.readNBytes(1024);
+			verify(transactionManager, timeout(5000)).rollback(any()); // Past the 2 s deadline
+
+			IOException e = assertThrows(IOException.class, export::readAllBytes);
+			assertTrue(e.getMessage().contains("took longer than PT2S"), e.getMessage());
+		}
+		verify(transactionManager, never()).commit(any());
+	}
+
+	private static DailyReportRepository.DailySummary day(LocalDate date) {
+		DailyReportRepository.DailySummary day = Mockito.mock(DailyReportRepository.DailySummary.class);
+		when(day.getDate()).thenReturn(date);
+		when(day.getHasPurchaseData()).thenReturn(true);
+		when(day.getHasSalesData()).thenReturn(true);
+		when(day.getMasterCostFactor()).thenReturn(0.97);
+		return day;
+	}
+}
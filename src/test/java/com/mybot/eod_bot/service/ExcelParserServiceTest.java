@@ -0,0 +1,231 @@
+package com.mybot.eod_bot.service;
+
+import com.mybot.eod_bot.model.Distributor;
+import com.mybot.eod_bot.repository.DistributorRepository;
+import com.mybot.eod_bot.repository.LapuSimRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** Parses statements built in memory, routed through an index loaded from stubbed repositories. */
+class ExcelParserServiceTest {
+
+	private ExcelParserService parser;
+	private SimRoutingIndex routing;
+	private PricingSnapshot pricing;
+
+	@BeforeEach
+	void setUp() {
+		parser = new ExcelParserService();
+		routing = routing(Map.of("9000000001", 1L, "9000000002", 2L));
+		pricing = new PricingSnapshot(3, Map.of(
+				1L, new PricingSnapshot.Rate("Distributor 1", 0.97),
+				2L, new PricingSnapshot.Rate("Distributor 2", 0.98)), Map.of());
+	}
+
+	@AfterEach
+	void tearDown() {
+		parser.shutdown();
+	}
+
+	@ParameterizedTest
+	@EnumSource(ExcelParserService.ParseMode.class)
+	void parsesAndHashesAStatementAsItIsRead(ExcelParserService.ParseMode mode) throws Exception {
+		ReflectionTestUtils.setField(parser, "parseMode", mode);
+		StringBuilder html = new StringBuilder("<html><body><table>")
+				.append("<tr><th>LAPU NO</th><th>DESC</th><th>OPEN BAL</th><th>TOTAL AMOUNT</th><th>CLOSE BAL</th></tr>")
+				.append(row("9000000001.0", "1,000.00", "200.00", "1,300.00"))  // Loaded 500
+				.append(row("9000000002.0", "2,00,000.00", "0.00", "2,01,500.00")) // Loaded 1,500
+				.append(row("9000000003.0", "0.00", "0.00", "100.00"))         // Not assigned
+				.append("</table>");
+		// A footer well past the reader's buffer, which the STREAM parser never gets to
+		html.append("<p>Generated by the portal</p>").append("<!-- padding -->".repeat(4096)).append("</body></html>");
+		byte[] statement = html.toString().getBytes(StandardCharsets.UTF_8);
+
+		MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+		ExcelParserService.PurchaseParseResult result;
+		// The same sequence as a statement upload: parse from the download, then hash the rest of it
+		try (InputStream in = new DigestInputStream(new Download(statement), sha256)) {
+			result = parser.parse(in, "statement.xls", routing, pricing);
+			in.transferTo(OutputStream.nullOutputStream());
+		}
+
+		assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(statement)),
+				HexFormat.of().formatHex(sha256.digest()));
+		assertEquals(3, result.rows);
+		assertEquals(2000, result.totalLoadReceived, 1e-9);
+		assertEquals(500 * 0.97 + 1500 * 0.98, result.totalCostPayable, 1e-9);
+		assertEquals(500, result.purchaseReportsMap.get("Distributor 1").getTotalLoadReceived(), 1e-9);
+		assertEquals(1500, result.purchaseReportsMap.get("Distributor 2").getTotalLoadReceived(), 1e-9);
+		assertEquals(List.of("9000000003 (RETAILER)"), result.unassignedSims);
+		assertEquals(3, result.pricingVersion);
+	}
+
+	@ParameterizedTest
+	@EnumSource(ExcelParserService.ParseMode.class)
+	void skipsRowsShorterThanTheRightmostColumnRead(ExcelParserService.ParseMode mode) throws Exception {
+		ReflectionTestUtils.setField(parser, "parseMode", mode);
+		// A leading serial number column puts CLOSE BAL at index 5, past the five columns that are read
+		String html = "<table><tr><th>S NO</th><th>LAPU NO</th><th>DESC</th><th>OPEN BAL</th><th>TOTAL AMOUNT</th><th>CLOSE BAL</th></tr>"
+				+ "<tr><td>1</td><td>9000000001</td><td>RETAILER</td><td>0</td><td>0</td><td>700</td></tr>"
+				+ "<tr><td>2</td><td>9000000002</td><td>RETAILER</td><td>0</td><td>0</td></tr>" // Ragged
+				+ "<tr><td>3</td><td>9000000002</td><td>RETAILER</td><td>0</td><td>0</td><td>300</td></tr>"
+				+ "</table>";
+
+		ExcelParserService.PurchaseParseResult result;
+		try (InputStream in = new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8))) {
+			result = parser.parse(in, "ragged.xls", routing, pricing);
+		}
+
+		assertEquals(3, result.rows);
+		assertEquals(1, result.skippedRows);
+		assertEquals(1000, result.totalLoadReceived, 1e-9);
+	}
+
+	@ParameterizedTest
+	@EnumSource(ExcelParserService.ParseMode.class)
+	void chunkedAggregationMatchesTheSingleThreadedPath(ExcelParserService.ParseMode mode) throws Exception {
+		Map<String, Long> sims = new HashMap<>();
+		Map<Long, PricingSnapshot.Rate> rates = new HashMap<>();
+		for (long id = 1; id <= 12; id++) {
+			rates.put(id, new PricingSnapshot.Rate("Distributor " + id, 0.95 + id / 1000.0));
+		}
+		for (int sim = 0; sim < 900; sim++) {
+			sims.put(Long.toString(9000000000L + sim), 1 + (sim * 7L) % 12);
+		}
+		routing = routing(sims);
+		pricing = new PricingSnapshot(1, rates, Map.of());
+		byte[] statement = largeStatement(3 * 4096 + 1234, 1000);
+
+		ExcelParserService.PurchaseParseResult single = parse(statement, mode, 1);
+		ExcelParserService.PurchaseParseResult chunked = parse(statement, mode, 4);
+
+		assertEquals(3 * 4096 + 1234, chunked.rows);
+		assertEquals(single.rows, chunked.rows);
+		assertEquals(single.skippedRows, chunked.skippedRows);
+		assertEquals(single.malformedCells, chunked.malformedCells);
+		assertEquals(single.unassignedSims, chunked.unassignedSims);
+		// Exact equality: loads are summed as whole rupees and costed once per distributor
+		assertEquals(single.totalLoadReceived, chunked.totalLoadReceived);
+		assertEquals(single.totalCostPayable, chunked.totalCostPayable);
+		assertEquals(single.masterCostFactor, chunked.masterCostFactor);
+		assertEquals(List.copyOf(single.purchaseReportsMap.keySet()), List.copyOf(chunked.purchaseReportsMap.keySet()));
+		assertEquals(List.of("Distributor 1", "Distributor 2", "Distributor 3", "Distributor 4", "Distributor 5", "Distributor 6",
+				"Distributor 7", "Distributor 8", "Distributor 9", "Distributor 10", "Distributor 11", "Distributor 12"),
+				List.copyOf(chunked.purchaseReportsMap.keySet()));
+		single.purchaseReportsMap.forEach((name, report) -> {
+			assertEquals(report.getTotalLoadReceived(), chunked.purchaseReportsMap.get(name).getTotalLoadReceived());
+			assertEquals(report.getTotalCostPayable(), chunked.purchaseReportsMap.get(name).getTotalCostPayable());
+		});
+	}
+
+	private ExcelParserService.PurchaseParseResult parse(byte[] statement, ExcelParserService.ParseMode mode, int threads) throws Exception {
+		ExcelParserService service = new ExcelParserService();
+		ReflectionTestUtils.setField(service, "parseMode", mode);
+		ReflectionTestUtils.setField(service, "parserThreads", threads);
+		try (InputStream in = new ByteArrayInputStream(statement)) {
+			return service.parse(in, "large.xls", routing, pricing);
+		} finally {
+			service.shutdown();
+		}
+	}
+
+	/** Rows over {@code sims} SIMs (the last tenth unassigned), with some ragged rows and garbled amounts. */
+	private static byte[] largeStatement(int rows, int sims) {
+		Random random = new Random(7);
+		StringBuilder html = new StringBuilder("<table>")
+				.append("<tr><th>LAPU NO</th><th>DESC</th><th>OPEN BAL</th><th>TOTAL AMOUNT</th><th>CLOSE BAL</th></tr>");
+		for (int i = 0; i < rows; i++) {
+			String lapuNo = (9000000000L + random.nextInt(sims)) + ".0";
+			if (i % 997 == 0) {
+				html.append("<tr><td>").append(lapuNo).append("</td><td>RETAILER</td></tr>");
+				continue;
+			}
+			long open = random.nextInt(100_000);
+			long spent = random.nextInt(20_000);
+			long close = open - spent + random.nextInt(50_000);
+			html.append(row(lapuNo, amount(open), amount(spent), (i % 1009 == 0) ? "N/A" : amount(close)));
+		}
+		return html.append("</table>").toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String amount(long rupees) {
+		return String.format("%,d.00", rupees);
+	}
+
+	private static String row(String lapuNo, String open, String spent, String close) {
+		return "<tr><td>" + lapuNo + "</td><td>RETAILER</td><td>" + open + "</td><td>" + spent + "</td><td>" + close + "</td></tr>";
+	}
+
+	/** Like a response body from the network: unreadable once closed, unlike a byte array stream. */
+	private static final class Download extends FilterInputStream {
+		private boolean closed;
+
+		Download(byte[] bytes) {
+			super(new ByteArrayInputStream(bytes));
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (closed) throw new IOException("closed");
+			return super.read();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (closed) throw new IOException("closed");
+			return super.read(b, off, len);
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+
+	/** An index routing each SIM to the distributor with the given ID (named "Distributor &lt;id&gt;"). */
+	static SimRoutingIndex routing(Map<String, Long> sims) {
+		DistributorRepository distributorRepository = Mockito.mock(DistributorRepository.class);
+		Mockito.when(distributorRepository.findAll()).thenReturn(sims.values().stream().distinct()
+				.map(ExcelParserServiceTest::distributor).toList());
+
+		List<LapuSimRepository.SimAssignment> assignments = sims.entrySet().stream()
+				.map(sim -> (LapuSimRepository.SimAssignment) new LapuSimRepository.SimAssignment() {
+					public String getLapuNo() { return sim.getKey(); }
+					public Long getDistributorId() { return sim.getValue(); }
+				})
+				.toList();
+		LapuSimRepository lapuSimRepository = Mockito.mock(LapuSimRepository.class);
+		Mockito.when(lapuSimRepository.findAllAssignments()).thenReturn(assignments);
+
+		SimRoutingIndex index = new SimRoutingIndex(lapuSimRepository, distributorRepository, Mockito.mock(ClusterCoordinator.class));
+		index.rebuild();
+		return index;
+	}
+
+	static Distributor distributor(long id) {
+		Distributor dist = new Distributor();
+		dist.setId(id);
+		dist.setName("Distributor " + id);
+		return dist;
+	}
+}
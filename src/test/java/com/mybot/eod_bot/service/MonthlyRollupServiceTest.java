@@ -0,0 +1,201 @@
+package com.mybot.eod_bot.service;
+
+import com.mybot.eod_bot.model.DailyPurchaseReport;
+import com.mybot.eod_bot.model.DailyReport;
+import com.mybot.eod_bot.model.DailyVendorReport;
+import com.mybot.eod_bot.model.MonthlyDistributorRollup;
+import com.mybot.eod_bot.model.MonthlyRollup;
+import com.mybot.eod_bot.model.MonthlyVendorRollup;
+import com.mybot.eod_bot.repository.DailyReportRepository;
+import com.mybot.eod_bot.repository.MonthlyDistributorRollupRepository;
+import com.mybot.eod_bot.repository.MonthlyRollupRepository;
+import com.mybot.eod_bot.repository.MonthlyVendorRollupRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+/** The month's rollups as days change, over repositories that keep their rows in lists. */
+class MonthlyRollupServiceTest {
+
+	private static final YearMonth MONTH = YearMonth.of(2025, 10);
+
+	private final MonthlyRollupRepository rollupRepository = Mockito.mock(MonthlyRollupRepository.class);
+	private final MonthlyVendorRollupRepository vendorRollupRepository = Mockito.mock(MonthlyVendorRollupRepository.class);
+	private final MonthlyDistributorRollupRepository distributorRollupRepository = Mockito.mock(MonthlyDistributorRollupRepository.class);
+	private final MonthlyRollupService service = new MonthlyRollupService(rollupRepository, vendorRollupRepository,
+			distributorRollupRepository, Mockito.mock(DailyReportRepository.class), Mockito.mock(ClusterCoordinator.class));
+
+	private final AtomicLong ids = new AtomicLong();
+	private MonthlyRollup totals;
+	private final List<MonthlyVendorRollup> vendorRows = new ArrayList<>();
+	private final List<MonthlyDistributorRollup> distributorRows = new ArrayList<>();
+
+	@BeforeEach
+	void setUp() {
+		when(rollupRepository.findById(MONTH.toString())).thenAnswer(invocation -> Optional.ofNullable(totals));
+		when(rollupRepository.save(any())).thenAnswer(invocation -> totals = invocation.getArgument(0));
+
+		when(vendorRollupRepository.findByMonth(MONTH.toString())).thenAnswer(invocation -> List.copyOf(vendorRows));
+		when(vendorRollupRepository.save(any())).thenAnswer(invocation -> {
+			MonthlyVendorRollup row = invocation.getArgument(0);
+			if (row.getId() == null) {
+				row.setId(ids.incrementAndGet());
+				vendorRows.add(row);
+			}
+			return row;
+		});
+		doAnswer(invocation -> vendorRows.remove(invocation.<MonthlyVendorRollup>getArgument(0)))
+				.when(vendorRollupRepository).delete(any());
+
+		when(distributorRollupRepository.findByMonth(MONTH.toString())).thenAnswer(invocation -> List.copyOf(distributorRows));
+		when(distributorRollupRepository.save(any())).thenAnswer(invocation -> {
+			MonthlyDistributorRollup row = invocation.getArgument(0);
+			if (row.getId() == null) {
+				row.setId(ids.incrementAndGet());
+				distributorRows.add(row);
+			}
+			return row;
+		});
+		doAnswer(invocation -> distributorRows.remove(invocation.<MonthlyDistributorRollup>getArgument(0)))
+				.when(distributorRollupRepository).delete(any());
+	}
+
+	@Test
+	void addsACompletedDay() {
+		MonthlyRollupService.DayContribution day = contribution(1, 990, 970,
+				List.of(vendor("Acme", 990, 1000, 970)), List.of(purchase("Distributor 1", 1000, 970)));
+
+		service.applyDayChange(MONTH, MonthlyRollupService.DayContribution.NONE, day);
+
+		assertEquals(1, totals.getCompletedDays());
+		assertEquals(990, totals.getTotalGrossRevenue());
+		assertEquals(970, totals.getTotalCogs());
+		assertEquals(20, totals.getTotalNetProfit());
+		assertEquals(1, vendorRows.size());
+		assertEquals(1, vendorRows.get(0).getDays());
+		assertEquals(20, vendorRows.get(0).getNetProfit());
+		assertEquals(1, distributorRows.size());
+		assertEquals(970, distributorRows.get(0).getTotalCostPayable());
+	}
+
+	@Test
+	void movesAnEditedDayByItsDelta() {
+		MonthlyRollupService.DayContribution first = contribution(1, 500, 490, List.of(vendor("Acme", 500, 505, 490)), List.of());
+		MonthlyRollupService.DayContribution before = contribution(2, 990, 970, List.of(vendor("Acme", 990, 1000, 970)), List.of());
+		MonthlyRollupService.DayContribution after = contribution(2, 990, 980, List.of(vendor("Acme", 990, 1000, 980)), List.of());
+		service.applyDayChange(MONTH, MonthlyRollupService.DayContribution.NONE, first);
+		service.applyDayChange(MONTH, MonthlyRollupService.DayContribution.NONE, before);
+
+		service.applyDayChange(MONTH, before, after);
+
+		assertEquals(2, totals.getCompletedDays());
+		assertEquals(1490, totals.getTotalGrossRevenue());
+		assertEquals(1470, totals.getTotalCogs());
+		assertEquals(20, totals.getTotalNetProfit());
+		MonthlyVendorRollup acme = vendorRows.get(0);
+		assertEquals(2, acme.getDays()); // Edited, not counted again
+		assertEquals(1505, acme.getTotalLoadSold());
+		assertEquals(1470, acme.getCogs());
+	}
+
+	@Test
+	void dropsTheRowsOfADayThatIsNoLongerComplete() {
+		MonthlyRollupService.DayContribution acme = contribution(1, 100, 98, List.of(vendor("Acme", 100, 101, 98)),
+				List.of(purchase("Distributor 1", 101, 98)));
+		MonthlyRollupService.DayContribution both = contribution(2, 300, 294,
+				List.of(vendor("Acme", 100, 101, 98), vendor("Beta", 200, 202, 196)), List.of(purchase("Distributor 1", 303, 294)));
+		service.applyDayChange(MONTH, MonthlyRollupService.DayContribution.NONE, acme);
+		service.applyDayChange(MONTH, MonthlyRollupService.DayContribution.NONE, both);
+
+		service.applyDayChange(MONTH, both, MonthlyRollupService.DayContribution.NONE);
+
+		assertEquals(1, totals.getCompletedDays());
+		assertEquals(List.of("Acme"), vendorRows.stream().map(MonthlyVendorRollup::getVendorName).toList());
+		assertEquals(1, vendorRows.get(0).getDays());
+		assertEquals(1, distributorRows.get(0).getDays());
+		assertEquals(101, distributorRows.get(0).getTotalLoadReceived());
+	}
+
+	@Test
+	void keepsSumsToTwoDecimalsOverManyEdits() {
+		MonthlyRollupService.DayContribution fixed = contribution(1, 0.1, 0.07, List.of(vendor("Acme", 0.1, 0.1, 0.07)),
+				List.of(purchase("Distributor 1", 0.1, 0.07)));
+		service.applyDayChange(MONTH, MonthlyRollupService.DayContribution.NONE, fixed);
+
+		MonthlyRollupService.DayContribution current = MonthlyRollupService.DayContribution.NONE;
+		for (int i = 1; i <= 200; i++) {
+			double amount = i / 10.0 + 0.01;
+			MonthlyRollupService.DayContribution next = contribution(2, amount, 0.2, List.of(vendor("Acme", amount, 0.3, 0.2)),
+					List.of(purchase("Distributor 1", 0.3, 0.2)));
+			service.applyDayChange(MONTH, current, next);
+			current = next;
+		}
+		service.applyDayChange(MONTH, current, contribution(2, 0.2, 0.2, List.of(vendor("Acme", 0.2, 0.3, 0.2)),
+				List.of(purchase("Distributor 1", 0.3, 0.2))));
+
+		// Exactly the sum of the two days' rounded figures, as if the month had been rebuilt
+		assertEquals(0.3, totals.getTotalGrossRevenue());
+		assertEquals(0.27, totals.getTotalCogs());
+		assertEquals(0.03, totals.getTotalNetProfit());
+		assertEquals(0.3, vendorRows.get(0).getGrossRevenue());
+		assertEquals(0.4, vendorRows.get(0).getTotalLoadSold());
+		assertEquals(0.4, distributorRows.get(0).getTotalLoadReceived());
+		assertEquals(0.27, distributorRows.get(0).getTotalCostPayable());
+	}
+
+	@Test
+	void leavesAnIncompleteDayOutOfTheMonth() {
+		DailyReport purchasesOnly = new DailyReport(MONTH.atDay(3));
+		purchasesOnly.setHasPurchaseData(true);
+		purchasesOnly.getPurchaseReports().add(purchase("Distributor 1", 1000, 970));
+
+		service.applyDayChange(MONTH, MonthlyRollupService.DayContribution.NONE, MonthlyRollupService.DayContribution.of(purchasesOnly));
+
+		assertEquals(0, totals.getCompletedDays());
+		assertTrue(distributorRows.isEmpty());
+	}
+
+	private static MonthlyRollupService.DayContribution contribution(int dayOfMonth, double grossRevenue, double cogs,
+	                                                                 List<DailyVendorReport> vendors, List<DailyPurchaseReport> purchases) {
+		DailyReport report = new DailyReport(MONTH.atDay(dayOfMonth));
+		report.setHasPurchaseData(true);
+		report.setHasSalesData(true);
+		report.setTotalGrossRevenue(grossRevenue);
+		report.setTotalCogs(cogs);
+		report.setTotalNetProfit(ReportService.roundAmount(grossRevenue - cogs));
+		report.getVendorReports().addAll(vendors);
+		report.getPurchaseReports().addAll(purchases);
+		return MonthlyRollupService.DayContribution.of(report);
+	}
+
+	private static DailyVendorReport vendor(String vendorName, double grossRevenue, double loadSold, double cogs) {
+		DailyVendorReport vr = new DailyVendorReport();
+		vr.setVendorName(vendorName);
+		vr.setGrossRevenue(grossRevenue);
+		vr.setTotalLoadSold(loadSold);
+		vr.setCogs(cogs);
+		vr.setNetProfit(ReportService.roundAmount(grossRevenue - cogs));
+		return vr;
+	}
+
+	private static DailyPurchaseReport purchase(String distributorName, double loadReceived, double costPayable) {
+		DailyPurchaseReport pr = new DailyPurchaseReport();
+		pr.setDistributorName(distributorName);
+		pr.setTotalLoadReceived(loadReceived);
+		pr.setTotalCostPayable(costPayable);
+		return pr;
+	}
+}
@@ -0,0 +1,77 @@
+package com.mybot.eod_bot.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class NumericCellDecoderTest {
+
+	private final NumericCellDecoder decoder = new NumericCellDecoder();
+
+	@ParameterizedTest
+	@CsvSource(delimiter = '|', value = {
+			"1,23,456.00 | 123456",   // Indian grouping
+			"123,456.78  | 123456",   // Western grouping, paise dropped
+			"500         | 500",
+			"-500        | -500",
+			"+75.50      | 75",
+			"-1,00,000   | -100000",
+			".99         | 0",
+			"9223372036854775807 | 9223372036854775807",
+	})
+	void decodesAmounts(String text, long expected) {
+		assertEquals(expected, decoder.decodeLong(text));
+		assertEquals(0, decoder.getMalformedCount());
+	}
+
+	@Test
+	void countsBlanksAsZeroWithoutFlaggingThem() {
+		assertEquals(0, decoder.decodeLong(null));
+		assertEquals(0, decoder.decodeLong(""));
+		assertEquals(0, decoder.decodeLong("   "));
+		assertEquals(0, decoder.decodeLong("\u00A0")); // &nbsp; as Jsoup returns it
+		assertEquals(1200, decoder.decodeLong(" 1,200.00 "));
+		assertEquals(0, decoder.getMalformedCount());
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"N/A", "-", "+", "12a", "1 000", "9223372036854775808"})
+	void countsMalformedCellsAsZero(String text) {
+		assertEquals(0, decoder.decodeLong(text));
+		assertEquals(1, decoder.getMalformedCount());
+		assertEquals(text, decoder.getFirstMalformed());
+	}
+
+	@Test
+	void keepsTheFirstMalformedSample() {
+		assertNull(decoder.getFirstMalformed());
+		decoder.decodeLong("N/A");
+		decoder.decodeLong("100");
+		decoder.decodeLong("--");
+
+		assertEquals(2, decoder.getMalformedCount());
+		assertEquals("N/A", decoder.getFirstMalformed());
+	}
+
+	@ParameterizedTest
+	@CsvSource(delimiter = '|', value = {
+			"9876543210.0   | 9876543210",
+			"' 9876543210 ' | 9876543210",
+			"09876543210    | 09876543210", // Leading zero kept
+			"''             | ''",
+	})
+	void cleansLapuNumbers(String text, String expected) {
+		assertEquals(expected, decoder.decodeLapuNo(text));
+	}
+
+	@Test
+	void returnsACleanLapuNumberAsIs() {
+		String lapuNo = "9876543210";
+		assertSame(lapuNo, decoder.decodeLapuNo(lapuNo));
+	}
+}
@@ -0,0 +1,69 @@
+package com.mybot.eod_bot.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Unpacking a backfill ZIP; nothing past the archive is touched. */
+class PurchaseBackfillServiceTest {
+
+	private final PurchaseBackfillService service = new PurchaseBackfillService(Mockito.mock(ExcelParserService.class),
+			Mockito.mock(SimRoutingIndex.class), Mockito.mock(ReportService.class), Mockito.mock(MonthlyRollupService.class),
+			Mockito.mock(UploadLedgerService.class), Mockito.mock(PricingService.class), Mockito.mock(BotMetrics.class),
+			Mockito.mock(BusinessClock.class), 1);
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void countsEveryEntryTowardsTheLimit() throws IOException {
+		List<String> names = new ArrayList<>();
+		for (int i = 0; i < 401; i++) names.add("notes-" + i + ".txt");
+		File zip = zip(names);
+
+		IOException e = assertThrows(IOException.class, () -> service.unzip(zip, "zip", new ArrayList<>()));
+
+		assertEquals("ZIP has more than 400 entries", e.getMessage());
+	}
+
+	@Test
+	void reportsTheFirstProblemsAndCountsTheRest() throws IOException {
+		List<String> names = new ArrayList<>();
+		for (int i = 0; i < 50; i++) names.add("notes-" + i + ".txt");
+		names.add("statement.xls");
+		names.add("statement-2025-10-30.xls");
+		List<PurchaseBackfillService.DayResult> problems = new ArrayList<>();
+
+		List<PurchaseBackfillService.Statement> statements = service.unzip(zip(names), "zip", problems);
+
+		statements.forEach(s -> s.file().delete());
+		assertEquals(List.of("statement-2025-10-30.xls"), statements.stream().map(PurchaseBackfillService.Statement::name).toList());
+		assertEquals(21, problems.size());
+		assertEquals(new PurchaseBackfillService.DayResult("notes-0.txt", null, 0, 0, 0, "not an .xls statement"), problems.get(0));
+		assertEquals("31 more entries skipped (not dated .xls statements)", problems.get(20).error());
+	}
+
+	private File zip(List<String> names) throws IOException {
+		File zip = dir.resolve("statements.zip").toFile();
+		try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+			for (String name : names) {
+				out.putNextEntry(new ZipEntry(name));
+				out.write(1);
+				out.closeEntry();
+			}
+		}
+		return zip;
+	}
+}
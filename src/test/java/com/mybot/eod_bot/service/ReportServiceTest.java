@@ -0,0 +1,236 @@
+package com.mybot.eod_bot.service;
+
+import com.mybot.eod_bot.model.DailyPurchaseReport;
+import com.mybot.eod_bot.model.DailyReport;
+import com.mybot.eod_bot.model.DailyVendorReport;
+import com.mybot.eod_bot.repository.BulkWriteRepository;
+import com.mybot.eod_bot.repository.DailyPurchaseReportRepository;
+import com.mybot.eod_bot.repository.DailyReportRepository;
+import com.mybot.eod_bot.repository.DailyVendorReportRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** Day saves over stubbed repositories, with each transaction run straight through. */
+class ReportServiceTest {
+
+	private static final LocalDate DATE = LocalDate.of(2025, 10, 30);
+	private static final String ID = DATE.toString();
+
+	private final DailyReportRepository reportRepository = Mockito.mock(DailyReportRepository.class);
+	private final DailyPurchaseReportRepository purchaseReportRepository = Mockito.mock(DailyPurchaseReportRepository.class);
+	private final DailyVendorReportRepository vendorReportRepository = Mockito.mock(DailyVendorReportRepository.class);
+	private final BulkWriteRepository bulkWriteRepository = Mockito.mock(BulkWriteRepository.class);
+	private final MonthlyRollupService monthlyRollupService = Mockito.mock(MonthlyRollupService.class);
+	private final TransactionTemplate transactionTemplate = Mockito.mock(TransactionTemplate.class);
+	private final EntityManager entityManager = Mockito.mock(EntityManager.class);
+	private final ReportService service = new ReportService(reportRepository, purchaseReportRepository, vendorReportRepository,
+			bulkWriteRepository, monthlyRollupService, Mockito.mock(VendorBalanceCache.class), Mockito.mock(BotMetrics.class),
+			transactionTemplate);
+	private DailyReport day;
+
+	@BeforeEach
+	void setUp() {
+		ReflectionTestUtils.setField(service, "entityManager", entityManager);
+		when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+				invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+		day = new DailyReport(DATE);
+		when(reportRepository.existsById(ID)).thenReturn(true);
+		when(entityManager.find(DailyReport.class, ID, LockModeType.PESSIMISTIC_WRITE)).thenAnswer(invocation -> day);
+	}
+
+	// --- Retries ---
+
+	@Test
+	void retriesWhenAnotherSaveCreatedTheDayFirst() {
+		when(reportRepository.existsById(ID)).thenReturn(false, true);
+		when(reportRepository.saveAndFlush(any())).thenThrow(new DuplicateKeyException("daily_reports_pkey"));
+
+		String status = service.updatePurchases(DATE, List.of(purchase("Distributor 1", 1000, 970)), 0.97, 1);
+
+		assertEquals("✅ Purchases saved. Waiting for sales data to calculate P&L.", status);
+		verify(transactionTemplate, times(2)).execute(any());
+	}
+
+	@Test
+	void retriesWhenTheDaysVersionMovedOn() {
+		when(bulkWriteRepository.syncPurchaseRows(eq(ID), anyList()))
+				.thenThrow(new ObjectOptimisticLockingFailureException(DailyReport.class, ID))
+				.thenReturn(new BulkWriteRepository.Result(1, 0, 0, 0));
+
+		service.updatePurchases(DATE, List.of(purchase("Distributor 1", 1000, 970)), 0.97, 1);
+
+		verify(transactionTemplate, times(2)).execute(any());
+	}
+
+	@Test
+	void givesUpAfterThreeRaces() {
+		ObjectOptimisticLockingFailureException race = new ObjectOptimisticLockingFailureException(DailyReport.class, ID);
+		when(bulkWriteRepository.syncPurchaseRows(eq(ID), anyList())).thenThrow(race);
+
+		assertSame(race, assertThrows(ObjectOptimisticLockingFailureException.class,
+				() -> service.updatePurchases(DATE, List.of(), 0.97, 1)));
+		verify(transactionTemplate, times(3)).execute(any());
+	}
+
+	@Test
+	void throwsARowThatBreaksAConstraintAtOnce() {
+		when(bulkWriteRepository.syncPurchaseRows(eq(ID), anyList()))
+				.thenThrow(new DataIntegrityViolationException("null value in column \"distributor_name\""));
+
+		assertThrows(DataIntegrityViolationException.class,
+				() -> service.updatePurchases(DATE, List.of(purchase(null, 1000, 970)), 0.97, 1));
+		verify(transactionTemplate, times(1)).execute(any());
+	}
+
+	@Test
+	void throwsADuplicateRowAtOnce() {
+		// Only the day row's insert is an expected race; a duplicate among the day's own rows is not
+		when(bulkWriteRepository.syncVendorRows(eq(ID), anyList())).thenThrow(new DuplicateKeyException("daily_vendor_reports_pkey"));
+
+		assertThrows(DuplicateKeyException.class, () -> service.updateSales(DATE, List.of(), 1));
+		verify(transactionTemplate, times(1)).execute(any());
+	}
+
+	// --- Re-costing ---
+
+	@Test
+	void recostsOnlyTheVendorRowsWhoseFiguresMoveWithTheCostFactor() {
+		day.setHasSalesData(true);
+		day.setMasterCostFactor(0.97);
+		when(bulkWriteRepository.findVendorCosts(ID)).thenReturn(List.of(
+				new BulkWriteRepository.VendorCost(1, 1000, 990, 970, 20),
+				new BulkWriteRepository.VendorCost(2, 333.33, 330, 323.33, 6.67),
+				new BulkWriteRepository.VendorCost(3, 0, 0, 0, 0))); // No sales: nothing to re-cost
+
+		service.updatePurchases(DATE, List.of(purchase("Distributor 1", 1000, 980)), 0.98, 2);
+
+		verify(bulkWriteRepository).updateVendorCosts(List.of(
+				new BulkWriteRepository.VendorCost(1, 1000, 990, 980, 10),
+				new BulkWriteRepository.VendorCost(2, 333.33, 330, 326.66, 3.34))); // 333.33 * 0.98 = 326.6634
+		assertEquals(0.98, day.getMasterCostFactor());
+		assertEquals(2L, day.getPurchasePricingVersion());
+		assertEquals(1320, day.getTotalGrossRevenue());
+		assertEquals(1306.66, day.getTotalCogs());
+		assertEquals(13.34, day.getTotalNetProfit());
+	}
+
+	@Test
+	void writesNoVendorRowsWhenTheCostFactorStaysPut() {
+		day.setHasSalesData(true);
+		day.setMasterCostFactor(0.97);
+		when(bulkWriteRepository.findVendorCosts(ID)).thenReturn(List.of(
+				new BulkWriteRepository.VendorCost(1, 1000, 990, 970, 20),
+				new BulkWriteRepository.VendorCost(2, 333.33, 330, 323.33, 6.67)));
+
+		service.updatePurchases(DATE, List.of(purchase("Distributor 1", 1000, 970)), 0.97, 2);
+
+		verify(bulkWriteRepository).updateVendorCosts(List.of());
+		assertEquals(1320, day.getTotalGrossRevenue());
+		assertEquals(1293.33, day.getTotalCogs());
+		assertEquals(26.67, day.getTotalNetProfit());
+	}
+
+	@Test
+	void leavesVendorRowsAloneBeforeSalesAreIn() {
+		service.updatePurchases(DATE, List.of(purchase("Distributor 1", 1000, 970)), 0.97, 2);
+
+		verify(bulkWriteRepository, never()).findVendorCosts(any());
+		verify(bulkWriteRepository, never()).updateVendorCosts(anyList());
+		assertTrue(day.isHasPurchaseData());
+	}
+
+	@Test
+	void costsSalesAtTheDaysCurrentFactor() {
+		day.setHasPurchaseData(true);
+		day.setMasterCostFactor(0.98); // Moved since the lines were costed at 0.97
+		DailyVendorReport acme = vendorLine("Acme", 990, 1000, 970);
+		DailyVendorReport beta = vendorLine("Beta", 330, 333.33, 323.33);
+
+		String status = service.updateSales(DATE, List.of(acme, beta), 5);
+
+		assertEquals("✅ P&L has been automatically calculated and saved!", status);
+		verify(bulkWriteRepository).syncVendorRows(ID, List.of(acme, beta));
+		assertEquals(980, acme.getCogs());
+		assertEquals(10, acme.getNetProfit());
+		assertEquals(326.66, beta.getCogs());
+		assertEquals(3.34, beta.getNetProfit());
+		assertEquals(1306.66, day.getTotalCogs());
+		assertEquals(13.34, day.getTotalNetProfit());
+		assertEquals(5L, day.getSalesPricingVersion());
+	}
+
+	@Test
+	void movesTheMonthFromTheDaysOldContributionToItsNewOne() {
+		day.setHasPurchaseData(true);
+		day.setHasSalesData(true);
+		day.setMasterCostFactor(0.97);
+		day.setTotalGrossRevenue(990);
+		day.setTotalCogs(970);
+		day.setTotalNetProfit(20);
+		ArgumentCaptor<MonthlyRollupService.DayContribution> before = ArgumentCaptor.forClass(MonthlyRollupService.DayContribution.class);
+		ArgumentCaptor<MonthlyRollupService.DayContribution> after = ArgumentCaptor.forClass(MonthlyRollupService.DayContribution.class);
+		when(bulkWriteRepository.findVendorCosts(ID)).thenReturn(List.of(new BulkWriteRepository.VendorCost(1, 1000, 990, 970, 20)));
+
+		service.updatePurchases(DATE, List.of(purchase("Distributor 1", 1000, 980)), 0.98, 2);
+
+		verify(monthlyRollupService).applyDayChange(eq(YearMonth.of(2025, 10)), before.capture(), after.capture());
+		assertEquals(20, before.getValue().netProfit);
+		assertEquals(970, before.getValue().cogs);
+		assertEquals(10, after.getValue().netProfit);
+		assertEquals(980, after.getValue().cogs);
+	}
+
+	@Test
+	void backfillLeavesTheMonthAlone() {
+		day.setHasSalesData(true);
+		when(bulkWriteRepository.findVendorCosts(ID)).thenReturn(List.of());
+
+		service.backfillPurchases(DATE, List.of(purchase("Distributor 1", 1000, 980)), 0.98, 2);
+
+		verify(monthlyRollupService, never()).applyDayChange(any(), any(), any());
+	}
+
+	private static DailyVendorReport vendorLine(String vendorName, double grossRevenue, double loadSold, double cogs) {
+		DailyVendorReport vr = new DailyVendorReport();
+		vr.setVendorName(vendorName);
+		vr.setGrossRevenue(grossRevenue);
+		vr.setTotalLoadSold(loadSold);
+		vr.setCogs(cogs);
+		vr.setNetProfit(grossRevenue - cogs);
+		return vr;
+	}
+
+	private static DailyPurchaseReport purchase(String distributorName, double loadReceived, double costPayable) {
+		DailyPurchaseReport pr = new DailyPurchaseReport();
+		pr.setDistributorName(distributorName);
+		pr.setTotalLoadReceived(loadReceived);
+		pr.setTotalCostPayable(costPayable);
+		return pr;
+	}
+}
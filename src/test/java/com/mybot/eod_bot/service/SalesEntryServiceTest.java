@@ -0,0 +1,113 @@
+package com.mybot.eod_bot.service;
+
+import com.mybot.eod_bot.model.Vendor;
+import com.mybot.eod_bot.repository.VendorRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.Mockito;
+
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** Reading and saving bulk sales, over stubbed repositories and services. */
+class SalesEntryServiceTest {
+
+	private final VendorRepository vendorRepository = Mockito.mock(VendorRepository.class);
+	private final ReportService reportService = Mockito.mock(ReportService.class);
+	private final VendorBalanceCache vendorBalanceCache = Mockito.mock(VendorBalanceCache.class);
+	private final PricingService pricingService = Mockito.mock(PricingService.class);
+	private final SalesEntryService service = new SalesEntryService(vendorRepository, reportService, vendorBalanceCache, pricingService);
+
+	// --- Reading ---
+
+	@Test
+	void skipsAHeaderRow() throws Exception {
+		SalesEntryService.ParsedBatch pasted = service.parseText("Vendor, Prev, Topup, End\nAcme, 100, 50, 30");
+		SalesEntryService.ParsedBatch file = service.parseCsv(new StringReader("vendor,prev,topup,end\nAcme,100,50,30\n"));
+
+		for (SalesEntryService.ParsedBatch batch : List.of(pasted, file)) {
+			assertEquals(List.of(), batch.errors());
+			assertEquals(List.of(new SalesEntryService.SaleInput(2, "Acme", 100.0, 50, 30)), batch.lines());
+		}
+	}
+
+	@Test
+	void keepsAFirstVendorWhoseNameStartsWithVendor() throws Exception {
+		SalesEntryService.ParsedBatch pasted = service.parseText("Vendors Hub, 100, 50, 200\nAcme, 100, 50, 30");
+		SalesEntryService.ParsedBatch spaced = service.parseText("Vendor Point 50 20");
+		SalesEntryService.ParsedBatch file = service.parseCsv(new StringReader("Vendors Hub,,50,200\n"));
+
+		assertEquals(List.of("Vendors Hub", "Acme"), pasted.lines().stream().map(SalesEntryService.SaleInput::vendorName).toList());
+		assertEquals(List.of(new SalesEntryService.SaleInput(1, "Vendor Point", null, 50, 20)), spaced.lines());
+		assertEquals(List.of(new SalesEntryService.SaleInput(1, "Vendors Hub", null, 50, 200)), file.lines());
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"NaN", "Infinity", "-Infinity", "0x1p3", "1e3", "12d", "1.2.3"})
+	void rejectsAmountsThatAreNotPlainNumbers(String amount) {
+		SalesEntryService.ParsedBatch batch = service.parseText("Acme, 100, " + amount + ", 30");
+
+		assertEquals(List.of(), batch.lines());
+		assertEquals(List.of("Line 1 (Acme): not a number: '" + amount + "'"), batch.errors());
+	}
+
+	@Test
+	void rejectsAmountsTooLargeForADouble() {
+		String amount = "9".repeat(400);
+
+		SalesEntryService.ParsedBatch batch = service.parseText("Acme, 100, " + amount + ", 30");
+
+		assertEquals(List.of("Line 1 (Acme): not a number: '" + amount + "'"), batch.errors());
+	}
+
+	@Test
+	void rejectsNegativeAmounts() {
+		SalesEntryService.ParsedBatch batch = service.parseText("Acme, -100, 50, 30\nBeta, 100, 50, -0.5\nGamma, -, 50, 30");
+
+		assertEquals(List.of("Line 1 (Acme): balances and top-ups can't be negative: '-100'",
+				"Line 2 (Beta): balances and top-ups can't be negative: '-0.5'"), batch.errors());
+		assertEquals(List.of(new SalesEntryService.SaleInput(3, "Gamma", null, 50, 30)), batch.lines());
+	}
+
+	@Test
+	void takesPlainDecimals() {
+		SalesEntryService.ParsedBatch batch = service.parseText("Acme, 100.50, +50, .5");
+
+		assertEquals(List.of(new SalesEntryService.SaleInput(1, "Acme", 100.5, 50, 0.5)), batch.lines());
+	}
+
+	// --- Saving ---
+
+	@Test
+	void savesWithoutCreatingTheDayFirst() {
+		LocalDate date = LocalDate.of(2025, 10, 30);
+		when(vendorRepository.findAll()).thenReturn(List.of(vendor(1, "Acme")));
+		when(pricingService.current()).thenReturn(new PricingSnapshot(4, Map.of(), Map.of(1L, new PricingSnapshot.Rate("Acme", 0.98))));
+		when(reportService.costFactor(date)).thenReturn(0.97);
+		when(reportService.updateSales(eq(date), anyList(), eq(4L))).thenReturn("saved");
+
+		SalesEntryService.BatchResult result = service.submit(date, service.parseText("Acme, 100, 50, 30"));
+
+		assertEquals("saved", result.pnlStatus());
+		verify(reportService).applyCostFactor(any(), eq(0.97));
+		verify(reportService, never()).getOrCreateDailyReport(any());
+	}
+
+	private static Vendor vendor(long id, String name) {
+		Vendor vendor = new Vendor();
+		vendor.setId(id);
+		vendor.setName(name);
+		return vendor;
+	}
+}
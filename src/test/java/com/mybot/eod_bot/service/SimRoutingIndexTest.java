@@ -0,0 +1,190 @@
+package com.mybot.eod_bot.service;
+
+import com.mybot.eod_bot.model.Distributor;
+import com.mybot.eod_bot.repository.DistributorRepository;
+import com.mybot.eod_bot.repository.LapuSimRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** The index over stubbed repositories. */
+class SimRoutingIndexTest {
+
+	private final DistributorRepository distributorRepository = Mockito.mock(DistributorRepository.class);
+	private final LapuSimRepository lapuSimRepository = Mockito.mock(LapuSimRepository.class);
+	private final ClusterCoordinator clusterCoordinator = Mockito.mock(ClusterCoordinator.class);
+	private final SimRoutingIndex index = new SimRoutingIndex(lapuSimRepository, distributorRepository, clusterCoordinator);
+
+	@BeforeEach
+	void load() {
+		when(distributorRepository.findAll()).thenReturn(List.of(distributor(1, "Alpha"), distributor(2, "Beta")));
+		when(lapuSimRepository.findAllAssignments()).thenReturn(assignments(Map.of(
+				"9876543210", 1L,
+				"9000000001", 2L,
+				"09876543210", 2L,  // Leading zero: a different SIM than 9876543210
+				"SIM-A7", 1L,
+				"1234567890123456789", 2L, // Too long for the numeric keys
+				"9000000002", 3L)));       // Distributor that no longer exists
+		index.rebuild();
+	}
+
+	@Test
+	void looksUpNumericAndOtherKeys() {
+		SimRoutingIndex.Snapshot snapshot = index.snapshot();
+
+		assertEquals(5, snapshot.size());
+		assertEquals("Alpha", snapshot.lookup("9876543210").distributorName);
+		assertEquals("Beta", snapshot.lookup("9000000001").distributorName);
+		assertEquals("Beta", snapshot.lookup("09876543210").distributorName);
+		assertEquals("Alpha", snapshot.lookup("SIM-A7").distributorName);
+		assertEquals(2, snapshot.lookup("1234567890123456789").distributorId);
+	}
+
+	@Test
+	void findsNothingForUnknownOrUnroutableSims() {
+		SimRoutingIndex.Snapshot snapshot = index.snapshot();
+
+		assertNull(snapshot.lookup("9000000002"));
+		assertNull(snapshot.lookup("9876543211"));
+		assertNull(snapshot.lookup("0009876543210"));
+		assertNull(snapshot.lookup("0"));
+		assertNull(snapshot.lookup(""));
+	}
+
+	@Test
+	void assignAddsSimsSharingTheDistributorsRoute() {
+		SimRoutingIndex.Snapshot before = index.snapshot();
+
+		index.assign(distributor(1, "Alpha"), List.of("9000000003", "0900"));
+
+		SimRoutingIndex.Snapshot after = index.snapshot();
+		assertEquals(7, after.size());
+		assertSame(after.lookup("9876543210"), after.lookup("9000000003"));
+		assertSame(after.lookup("9876543210"), after.lookup("0900"));
+		assertNull(before.lookup("9000000003")); // Snapshots already handed out never change
+	}
+
+	@Test
+	void assignMovesASimToAnotherDistributor() {
+		index.assign(distributor(2, "Beta"), List.of("9876543210"));
+
+		assertEquals("Beta", index.snapshot().lookup("9876543210").distributorName);
+		assertEquals(5, index.snapshot().size());
+	}
+
+	@Test
+	void unassignRemovesOnlyThatSim() {
+		index.unassign("9876543210");
+		index.unassign("09876543210");
+		index.unassign("9999999999"); // Not indexed
+
+		SimRoutingIndex.Snapshot snapshot = index.snapshot();
+		assertEquals(3, snapshot.size());
+		assertNull(snapshot.lookup("9876543210"));
+		assertNull(snapshot.lookup("09876543210"));
+		assertEquals("Beta", snapshot.lookup("9000000001").distributorName);
+	}
+
+	@Test
+	void removeDistributorDropsAllItsSims() {
+		index.removeDistributor(1);
+
+		SimRoutingIndex.Snapshot snapshot = index.snapshot();
+		assertEquals(3, snapshot.size());
+		assertNull(snapshot.lookup("9876543210"));
+		assertNull(snapshot.lookup("SIM-A7"));
+	}
+
+	@Test
+	void assignTakesDuplicatesAndSimsAlreadyRoutedThere() {
+		index.assign(distributor(2, "Beta"), List.of("9000000001", "9000000005", "9000000005", "SIM-A7", "1"));
+
+		SimRoutingIndex.Snapshot snapshot = index.snapshot();
+		assertEquals(7, snapshot.size());
+		assertEquals("Beta", snapshot.lookup("9000000005").distributorName);
+		assertEquals("Beta", snapshot.lookup("SIM-A7").distributorName);
+		assertEquals("Beta", snapshot.lookup("1").distributorName);
+		assertEquals("Alpha", snapshot.lookup("9876543210").distributorName);
+	}
+
+	@Test
+	void matchesAPlainMapOverManyChanges() {
+		Map<String, Long> expected = new HashMap<>(Map.of("9876543210", 1L, "9000000001", 2L, "09876543210", 2L,
+				"SIM-A7", 1L, "1234567890123456789", 2L));
+		Random random = new Random(11);
+		for (int step = 0; step < 2000; step++) {
+			int op = random.nextInt(10);
+			if (op < 6) {
+				long id = 1 + random.nextInt(3);
+				List<String> sims = new ArrayList<>();
+				for (int i = random.nextInt(5); i >= 0; i--) sims.add(randomSim(random));
+				index.assign(distributor(id, "D" + id), sims);
+				sims.forEach(sim -> expected.put(sim, id));
+			} else if (op < 9) {
+				String sim = randomSim(random);
+				index.unassign(sim);
+				expected.remove(sim);
+			} else {
+				long id = 1 + random.nextInt(3);
+				index.removeDistributor(id);
+				expected.values().removeIf(distributorId -> distributorId == id);
+			}
+		}
+
+		SimRoutingIndex.Snapshot snapshot = index.snapshot();
+		assertEquals(expected.size(), snapshot.size());
+		expected.forEach((sim, id) -> assertEquals(id, snapshot.lookup(sim).distributorId, sim));
+	}
+
+	@Test
+	void rebuildsWhenAnotherNodeMovedTheEpoch() {
+		when(clusterCoordinator.enabled()).thenReturn(true);
+		when(clusterCoordinator.epoch(SimRoutingIndex.EPOCH)).thenReturn(4L);
+		index.snapshot();
+		index.snapshot();
+		verify(lapuSimRepository, times(2)).findAllAssignments(); // On load, then once for epoch 4
+
+		when(clusterCoordinator.epoch(SimRoutingIndex.EPOCH)).thenReturn(5L);
+		index.snapshot();
+		verify(lapuSimRepository, times(3)).findAllAssignments();
+	}
+
+	// Mostly numbers from a small range, so changes hit SIMs already indexed
+	private static String randomSim(Random random) {
+		int n = random.nextInt(200);
+		return switch (random.nextInt(4)) {
+			case 0 -> "0" + n;
+			case 1 -> "SIM-" + n;
+			default -> Long.toString(9000000000L + n);
+		};
+	}
+
+	private static Distributor distributor(long id, String name) {
+		Distributor dist = new Distributor();
+		dist.setId(id);
+		dist.setName(name);
+		return dist;
+	}
+
+	private static List<LapuSimRepository.SimAssignment> assignments(Map<String, Long> sims) {
+		return sims.entrySet().stream()
+				.map(sim -> (LapuSimRepository.SimAssignment) new LapuSimRepository.SimAssignment() {
+					public String getLapuNo() { return sim.getKey(); }
+					public Long getDistributorId() { return sim.getValue(); }
+				})
+				.toList();
+	}
+}
@@ -0,0 +1,72 @@
+package com.mybot.eod_bot.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** One worker and room for two waiting jobs. */
+class UploadJobQueueTest {
+
+	private final UploadJobQueue queue = new UploadJobQueue(1, 2);
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@AfterEach
+	void stop() throws InterruptedException {
+		release.countDown();
+		queue.shutdown();
+	}
+
+	@Test
+	void boundsJobsWaitingForAWorkerAcrossChats() throws Exception {
+		blockTheWorker();
+
+		// Each chat's first job: nothing ahead in its chat, but all wait for the one worker
+		assertEquals(0, queue.submit(1, "first", () -> {}));
+		assertEquals(0, queue.submit(2, "second", () -> {}));
+		assertEquals(2, queue.stats().pending());
+
+		assertThrows(RejectedExecutionException.class, () -> queue.submit(3, "third", () -> {}));
+	}
+
+	@Test
+	void countsAChatsJobsAsPendingUntilTheyStartThenRunsThemInOrder() throws Exception {
+		blockTheWorker();
+		List<String> ran = new CopyOnWriteArrayList<>();
+		CountDownLatch done = new CountDownLatch(2);
+
+		assertEquals(0, queue.submit(1, "a", () -> { ran.add("a"); done.countDown(); })); // Waits for the worker
+		assertEquals(1, queue.submit(1, "b", () -> { ran.add("b"); done.countDown(); })); // Waits behind "a"
+		assertThrows(RejectedExecutionException.class, () -> queue.submit(1, "c", () -> {}));
+
+		release.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(List.of("a", "b"), ran);
+		assertEquals(0, queue.stats().pending());
+	}
+
+	private void blockTheWorker() throws InterruptedException {
+		CountDownLatch running = new CountDownLatch(1);
+		queue.submit(0, "blocker", () -> {
+			running.countDown();
+			await(release);
+		});
+		assertTrue(running.await(5, TimeUnit.SECONDS));
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}